@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import iot.technology.client.toolkit.coap.service.CoapClientService;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CoapClientService#prettyPayload(Response)}, which formats every response printed by the CoAP commands.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoapPrettyPayloadBenchmark {
+
+	public enum Payload {
+		JSON(MediaTypeRegistry.APPLICATION_JSON,
+				"{\"deviceId\":\"869975031234567\",\"readings\":[{\"name\":\"temperature\",\"value\":21.5},"
+						+ "{\"name\":\"humidity\",\"value\":48}],\"battery\":87}"),
+		LINK_FORMAT(MediaTypeRegistry.APPLICATION_LINK_FORMAT,
+				"</sensors/temp>;rt=\"temperature-c\";if=\"sensor\";obs,</sensors/light>;rt=\"light-lux\";if=\"sensor\","
+						+ "</actuators/led>;rt=\"led\";if=\"actuator\",</.well-known/core>;ct=40"),
+		TEXT(MediaTypeRegistry.TEXT_PLAIN, "temperature=21.5 humidity=48 battery=87");
+
+		private final int contentFormat;
+		private final String text;
+
+		Payload(int contentFormat, String text) {
+			this.contentFormat = contentFormat;
+			this.text = text;
+		}
+	}
+
+	@Param
+	public Payload payload;
+
+	private Response response;
+
+	@Setup
+	public void setup() {
+		response = new Response(CoAP.ResponseCode.CONTENT);
+		response.getOptions().setContentFormat(payload.contentFormat);
+		response.setPayload(payload.text);
+	}
+
+	@Benchmark
+	public String prettyPayload() {
+		return CoapClientService.prettyPayload(response);
+	}
+}
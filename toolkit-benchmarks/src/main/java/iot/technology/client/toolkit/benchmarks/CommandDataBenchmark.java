@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import iot.technology.client.toolkit.common.rule.ProcessContext;
+import iot.technology.client.toolkit.common.rule.TkAbstractProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TkAbstractProcessor#convertCommandData(String)}, which splits every shell line before commons-cli parses it.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandDataBenchmark {
+
+	public enum Line {
+		SHORT("sub -t devices/+/telemetry -q 1"),
+		QUOTED("pub -t devices/dev-42/telemetry -q 1 -m '{\"temperature\": 21.5, \"humidity\": 48}'"),
+		LONG("add -imei 869975031234567 -name \"meter 42\" -productId 15034512 -deviceSn SN0000000042"
+				+ " -operator telecom -autoObserver 0 -tags 'building a' -desc \"third floor, east wing\"");
+
+		private final String data;
+
+		Line(String data) {
+			this.data = data;
+		}
+	}
+
+	@Param
+	public Line line;
+
+	private final TkAbstractProcessor processor = new TkAbstractProcessor() {
+		@Override
+		public boolean supports(ProcessContext context) {
+			return false;
+		}
+
+		@Override
+		public void handle(ProcessContext context) {
+		}
+	};
+
+	@Benchmark
+	public String[] convertCommandData() {
+		return processor.convertCommandData(line.data);
+	}
+}
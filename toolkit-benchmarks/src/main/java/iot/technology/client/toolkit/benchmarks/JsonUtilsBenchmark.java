@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import iot.technology.client.toolkit.common.utils.JsonUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JsonUtils} round-trips with a telemetry-sized body, as used for platform API requests and responses.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonUtilsBenchmark {
+
+	public static class Reading {
+
+		private String name;
+		private double value;
+		private String unit;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public void setValue(double value) {
+			this.value = value;
+		}
+
+		public String getUnit() {
+			return unit;
+		}
+
+		public void setUnit(String unit) {
+			this.unit = unit;
+		}
+	}
+
+	public static class Telemetry {
+
+		private String deviceId;
+		private long timestamp;
+		private Integer battery;
+		private List<Reading> readings;
+
+		public String getDeviceId() {
+			return deviceId;
+		}
+
+		public void setDeviceId(String deviceId) {
+			this.deviceId = deviceId;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public void setTimestamp(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		public Integer getBattery() {
+			return battery;
+		}
+
+		public void setBattery(Integer battery) {
+			this.battery = battery;
+		}
+
+		public List<Reading> getReadings() {
+			return readings;
+		}
+
+		public void setReadings(List<Reading> readings) {
+			this.readings = readings;
+		}
+	}
+
+	private Telemetry telemetry;
+	private String json;
+
+	@Setup
+	public void setup() {
+		telemetry = new Telemetry();
+		telemetry.setDeviceId("869975031234567");
+		telemetry.setTimestamp(1_697_500_000_000L);
+		telemetry.setBattery(87);
+		List<Reading> readings = new ArrayList<>();
+		String[][] sensors = {{"temperature", "C"}, {"humidity", "%"}, {"pressure", "hPa"}, {"co2", "ppm"}};
+		for (int i = 0; i < sensors.length; i++) {
+			Reading reading = new Reading();
+			reading.setName(sensors[i][0]);
+			reading.setValue(20.5 + i);
+			reading.setUnit(sensors[i][1]);
+			readings.add(reading);
+		}
+		telemetry.setReadings(readings);
+		json = JsonUtils.object2Json(telemetry);
+	}
+
+	@Benchmark
+	public String object2Json() {
+		return JsonUtils.object2Json(telemetry);
+	}
+
+	@Benchmark
+	public Telemetry jsonToObject() {
+		return JsonUtils.jsonToObject(json, Telemetry.class);
+	}
+
+	@Benchmark
+	public Telemetry roundTrip() {
+		return JsonUtils.jsonToObject(JsonUtils.object2Json(telemetry), Telemetry.class);
+	}
+
+	@Benchmark
+	public JsonNode stringToJsonNode() {
+		return JsonUtils.stringToJsonNode(json);
+	}
+
+	@Benchmark
+	public String convertPrettyJson() {
+		return JsonUtils.convertPrettyJson(json);
+	}
+}
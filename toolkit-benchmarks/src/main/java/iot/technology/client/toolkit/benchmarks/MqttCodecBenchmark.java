@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PUBLISH encoding through {@link MqttEncoder} and decoding through {@link MqttDecoder}, each in an
+ * {@link EmbeddedChannel} so the pooled allocator and the handler contexts are exercised like on a socket.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttCodecBenchmark {
+
+	private static final String TOPIC = "devices/dev-42/telemetry";
+
+	@Param({"64", "1024", "16384"})
+	public int payloadSize;
+
+	@Param({"0", "1"})
+	public int qos;
+
+	private EmbeddedChannel encoder;
+	private EmbeddedChannel decoder;
+	private MqttFixedHeader fixedHeader;
+	private MqttPublishVariableHeader variableHeader;
+	private ByteBuf payload;
+	private ByteBuf encoded;
+
+	@Setup
+	public void setup() {
+		encoder = new EmbeddedChannel(MqttEncoder.INSTANCE);
+		decoder = new EmbeddedChannel(new MqttDecoder(payloadSize + 1024));
+		fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.valueOf(qos), false, 0);
+		variableHeader = new MqttPublishVariableHeader(TOPIC, qos > 0 ? 1 : -1);
+
+		byte[] bytes = new byte[payloadSize];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		payload = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize).writeBytes(bytes);
+
+		encoder.writeOutbound(new MqttPublishMessage(fixedHeader, variableHeader, payload.retainedDuplicate()));
+		encoded = encoder.readOutbound();
+	}
+
+	@TearDown
+	public void tearDown() {
+		encoder.finishAndReleaseAll();
+		decoder.finishAndReleaseAll();
+		payload.release();
+		encoded.release();
+	}
+
+	@Benchmark
+	public int encode() {
+		encoder.writeOutbound(new MqttPublishMessage(fixedHeader, variableHeader, payload.retainedDuplicate()));
+		ByteBuf frame = encoder.readOutbound();
+		int length = frame.readableBytes();
+		frame.release();
+		return length;
+	}
+
+	@Benchmark
+	public int decode() {
+		decoder.writeInbound(encoded.retainedDuplicate());
+		MqttPublishMessage message = decoder.readInbound();
+		int length = message.payload().readableBytes();
+		message.release();
+		return length;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import iot.technology.client.toolkit.mqtt.service.core.MqttPacketIdAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link MqttPacketIdAllocator} against the synchronized wrap-around counter it replaced.
+ * Each operation takes an identifier and gives it back, the way an acknowledged QoS 1 publish does;
+ * the {@code Contended} variants share one allocator between four threads like a client used from several callers.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttPacketIdBenchmark {
+
+	private final MqttPacketIdAllocator allocator = new MqttPacketIdAllocator();
+
+	private final AtomicInteger nextMessageId = new AtomicInteger(1);
+
+	private int getNewMessageId() {
+		synchronized (nextMessageId) {
+			nextMessageId.compareAndSet(0xffff, 1);
+			return nextMessageId.getAndIncrement();
+		}
+	}
+
+	private int acquireRelease() {
+		int packetId = allocator.acquire();
+		allocator.release(packetId);
+		return packetId;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int allocator() {
+		return acquireRelease();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int synchronizedCounter() {
+		return getNewMessageId();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int allocatorContended() {
+		return acquireRelease();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int synchronizedCounterContended() {
+		return getNewMessageId();
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.core.MqttTopicTrie;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttSubscription;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Topic filter matching of received PUBLISH messages: {@link #trie} looks a topic up in a {@link MqttTopicTrie}, the
+ * way the channel handler routes messages, {@link #route} checks it against every subscription in turn as a baseline,
+ * and {@link #matches} checks a single filter.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttTopicMatchBenchmark {
+
+	private static final MqttHandler NOOP = (topic, qos, payload) -> {
+	};
+
+	private static final String[] FILTERS = {
+			"devices/+/telemetry",
+			"devices/+/events/#",
+			"factory/line1/+/temperature",
+			"factory/#",
+			"fleet/+/+/gps",
+			"home/livingroom/light/state",
+			"+/status",
+			"alerts/critical"
+	};
+
+	private static final int TOPICS = 1024;
+
+	private static final MqttTopicTrie.Visitor<Object> COUNT = (subscription, context) -> true;
+
+	private List<MqttSubscription> subscriptions;
+	private MqttTopicTrie subscriptionTrie;
+	private String[] topics;
+	private int next;
+
+	@State(Scope.Thread)
+	public static class SingleFilter {
+
+		@Param({"devices/+/telemetry", "factory/#", "home/livingroom/light/state"})
+		public String filter;
+
+		private MqttSubscription subscription;
+
+		@Setup
+		public void setup() {
+			subscription = new MqttSubscription(filter, NOOP, false, MqttQoS.AT_LEAST_ONCE);
+		}
+	}
+
+	@Setup
+	public void setup() {
+		subscriptions = new ArrayList<>(FILTERS.length);
+		for (String filter : FILTERS) {
+			subscriptions.add(new MqttSubscription(filter, NOOP, false, MqttQoS.AT_LEAST_ONCE));
+		}
+		subscriptionTrie = new MqttTopicTrie();
+		subscriptions.forEach(subscriptionTrie::put);
+
+		topics = new String[TOPICS];
+		for (int i = 0; i < TOPICS; i++) {
+			topics[i] = switch (i % 6) {
+				case 0 -> "devices/dev-" + i + "/telemetry";
+				case 1 -> "devices/dev-" + i + "/events/alarm/high";
+				case 2 -> "factory/line" + (i % 4) + "/sensor-" + i + "/temperature";
+				case 3 -> "fleet/region-" + (i % 8) + "/truck-" + i + "/gps";
+				case 4 -> "gateway-" + i + "/status";
+				default -> "home/livingroom/light/state";
+			};
+		}
+	}
+
+	private String nextTopic() {
+		return topics[next++ & (TOPICS - 1)];
+	}
+
+	@Benchmark
+	public int trie() {
+		return subscriptionTrie.match(nextTopic(), null, COUNT);
+	}
+
+	@Benchmark
+	public int route() {
+		String topic = nextTopic();
+		int matched = 0;
+		for (MqttSubscription subscription : subscriptions) {
+			if (subscription.matches(topic)) {
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	@Benchmark
+	public boolean matches(SingleFilter single) {
+		return single.subscription.matches(nextTopic());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import iot.technology.client.toolkit.common.utils.SignUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request signing of the NB-IoT platforms: {@link SignUtils#aepSignAlgorithm} for every telecom API call and
+ * {@link SignUtils#hmacEncrypt} behind the mobile API token.
+ *
+ * @author mushuwei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignUtilsBenchmark {
+
+	private static final String APPLICATION = "aBcDeFgHiJk";
+	private static final String SECRET = "0123456789abcdef0123456789";
+	private static final String ACCESS_KEY = Base64.getEncoder()
+			.encodeToString("toolkit-benchmark-access-key-0123456789".getBytes(StandardCharsets.UTF_8));
+
+	@State(Scope.Thread)
+	public static class Hmac {
+
+		@Param({"md5", "sha1", "sha256"})
+		public String signatureMethod;
+
+		private String encryptText;
+
+		@Setup
+		public void setup() {
+			encryptText = (System.currentTimeMillis() / 1000) + "\n" + signatureMethod + "\nproducts/15034512\n2018-10-31";
+		}
+	}
+
+	private Map<String, String> params;
+	private byte[] body;
+
+	@Setup
+	public void setup() {
+		params = new HashMap<>();
+		params.put("productId", "15034512");
+		params.put("pageNow", "1");
+		params.put("pageSize", "20");
+		params.put("searchValue", "869975031234567");
+		body = "{\"productId\":15034512,\"deviceId\":\"a1b2c3d4e5\",\"operator\":\"toolkit\",\"content\":{\"params\":{\"led\":1}}}"
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String aepSignAlgorithm() throws Exception {
+		return SignUtils.aepSignAlgorithm(params, 1_697_500_000_000L, APPLICATION, SECRET, body);
+	}
+
+	@Benchmark
+	public byte[] hmacEncrypt(Hmac hmac) throws Exception {
+		return SignUtils.hmacEncrypt(hmac.encryptText, ACCESS_KEY, hmac.signatureMethod);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the toolkit benchmarks with the GC profiler attached, so every result carries
+ * {@code gc.alloc.rate.norm} (bytes allocated per operation) and GC counts next to the score.
+ * <p>
+ * Takes the usual JMH command line, e.g. {@code java -jar benchmarks.jar MqttCodec -p payloadSize=1024}.
+ * Unless {@code -rf}/{@code -rff} is given, results are also written to {@code jmh-result.json}
+ * so two runs can be compared.
+ *
+ * @author mushuwei
+ */
+public final class ToolkitBenchmarks {
+
+	private ToolkitBenchmarks() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+		if (commandLine.shouldList()) {
+			new Runner(commandLine).list();
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class);
+		if (commandLine.getResult().hasValue() || commandLine.getResultFormat().hasValue()) {
+			new Runner(options.build()).run();
+			return;
+		}
+		new Runner(options
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json")
+				.build()).run();
+	}
+}
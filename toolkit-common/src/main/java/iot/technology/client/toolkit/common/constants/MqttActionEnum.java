@@ -26,6 +26,10 @@ public enum MqttActionEnum {
 
     UNSUB("unsub"),
 
+    REPLAY("replay"),
+
+    STATS("stats"),
+
     LIST("list"),
 
     DIS("dis"),
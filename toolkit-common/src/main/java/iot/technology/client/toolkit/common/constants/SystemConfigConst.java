@@ -38,6 +38,8 @@ public class SystemConfigConst {
 
 	public static final String MQTT_SETTINGS_FILE_NAME = SYS_MQTT_ROOT_PATH + File.separator + "settings.json";
 
+	public static final String SYS_MQTT_SESSION_PATH = SYS_MQTT_ROOT_PATH + File.separator + "sessions";
+
 	/**
 	 * toolkit nb settings and file name
 	 */
@@ -39,6 +39,8 @@ import java.util.concurrent.Callable;
 				MqttDescribeCommand.class,
 				MqttSettingsCommand.class,
 				MqttShellCommand.class,
+				MqttBenchCommand.class,
+				MqttBrokerCommand.class,
 		},
 		footerHeading = "%nCopyright (c) 2019-2023, ${bundle:general.copyright}",
 		footer = "%nDeveloped by mushuwei")
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.command.sub;
+
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchService;
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchSettings;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+import picocli.CommandLine;
+
+/**
+ * Connection and ramp-up options shared by the bench modes.
+ *
+ * @author mushuwei
+ */
+public abstract class AbstractMqttBenchCommand {
+
+	protected final MqttBenchService benchService = new MqttBenchService();
+
+	@CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "${bundle:general.help.description}")
+	boolean usageHelpRequested;
+
+	@CommandLine.Option(names = {"-H", "--host"}, description = "${bundle:mqtt.broker.desc}", defaultValue = "localhost")
+	String host;
+
+	@CommandLine.Option(names = {"-p", "--port"}, description = "${bundle:mqtt.port.desc}", defaultValue = "1883")
+	int port;
+
+	@CommandLine.Option(names = {"-u", "--username"}, description = "${bundle:mqtt.username.desc}")
+	String username;
+
+	@CommandLine.Option(names = {"-P", "--password"}, description = "${bundle:mqtt.password.desc}")
+	String password;
+
+	@CommandLine.Option(names = {"-i", "--client-id-prefix"}, description = "${bundle:mqtt.bench.client-id-prefix.desc}",
+			defaultValue = "toolkit-bench")
+	String clientIdPrefix;
+
+	@CommandLine.Option(names = {"-c", "--clients"}, description = "${bundle:mqtt.bench.clients.desc}", defaultValue = "100")
+	int clients;
+
+	@CommandLine.Option(names = {"-R", "--connect-rate"}, description = "${bundle:mqtt.bench.connect-rate.desc}", defaultValue = "100")
+	int connectRate;
+
+	@CommandLine.Option(names = {"-d", "--duration"}, description = "${bundle:mqtt.bench.duration.desc}", defaultValue = "60")
+	int duration;
+
+	@CommandLine.Option(names = {"-k", "--keepalive"}, description = "${bundle:mqtt.keepalive.desc}", defaultValue = "60")
+	int keepAlive;
+
+	@CommandLine.Option(names = {"--reconnect"}, description = "${bundle:mqtt.bench.reconnect.desc}")
+	boolean reconnect;
+
+	@CommandLine.Option(names = {"--reconnect-max-delay"}, description = "${bundle:mqtt.bench.reconnect-max-delay.desc}",
+			defaultValue = "30")
+	int reconnectMaxDelay;
+
+	@CommandLine.Option(names = {"--connect-limit"}, description = "${bundle:mqtt.bench.connect-limit.desc}", defaultValue = "0")
+	int connectLimit;
+
+	@CommandLine.Option(names = {"--threads"}, description = "${bundle:mqtt.bench.threads.desc}", defaultValue = "0")
+	int threads;
+
+	@CommandLine.Option(names = {"--transport"}, description = "${bundle:mqtt.bench.transport.desc}", defaultValue = "AUTO")
+	MqttTransport transport;
+
+	@CommandLine.Option(names = {"--mqtt5"}, description = "${bundle:mqtt.bench.mqtt5.desc}")
+	boolean mqtt5;
+
+	@CommandLine.Option(names = {"--topic-alias"}, description = "${bundle:mqtt.bench.topic-alias.desc}", defaultValue = "64")
+	int topicAliasMaximum;
+
+	@CommandLine.Option(names = {"--report-interval"}, description = "${bundle:mqtt.bench.report-interval.desc}", defaultValue = "1")
+	int reportInterval;
+
+	@CommandLine.Option(names = {"--tls"}, description = "${bundle:mqtt.bench.tls.desc}")
+	boolean tls;
+
+	@CommandLine.Option(names = {"--insecure"}, description = "${bundle:mqtt.bench.insecure.desc}")
+	boolean insecure;
+
+	@CommandLine.Option(names = {"--cafile"}, description = "${bundle:mqtt.bench.cafile.desc}")
+	String ca;
+
+	@CommandLine.Option(names = {"--cert"}, description = "${bundle:mqtt.bench.cert.desc}")
+	String clientCert;
+
+	@CommandLine.Option(names = {"--key"}, description = "${bundle:mqtt.bench.key.desc}")
+	String clientKey;
+
+	protected MqttBenchSettings toSettings() {
+		if (clients <= 0 || connectRate <= 0 || duration <= 0 || reportInterval <= 0 || reconnectMaxDelay <= 0) {
+			throw new IllegalArgumentException("clients, connect-rate, duration, report-interval and reconnect-max-delay must be > 0");
+		}
+		if (connectLimit < 0) {
+			throw new IllegalArgumentException("connect-limit must be >= 0");
+		}
+		if ((clientCert == null) != (clientKey == null)) {
+			throw new IllegalArgumentException("cert and key must be given together");
+		}
+		MqttBenchSettings settings = new MqttBenchSettings();
+		settings.setHost(host);
+		settings.setPort(port);
+		settings.setUsername(username);
+		settings.setPassword(password);
+		settings.setClientIdPrefix(clientIdPrefix);
+		settings.setClients(clients);
+		settings.setConnectRate(connectRate);
+		settings.setDuration(duration);
+		settings.setKeepAlive(keepAlive);
+		settings.setReconnect(reconnect);
+		settings.setReconnectMaxDelay(reconnectMaxDelay);
+		settings.setConnectLimit(connectLimit);
+		settings.setThreads(threads);
+		settings.setTransport(transport);
+		settings.setMqtt5(mqtt5);
+		settings.setTopicAliasMaximum(topicAliasMaximum);
+		settings.setReportInterval(reportInterval);
+		// any certificate option implies TLS
+		settings.setTls(tls || insecure || ca != null || clientCert != null);
+		settings.setInsecure(insecure);
+		settings.setCa(ca);
+		settings.setClientCert(clientCert);
+		settings.setClientKey(clientKey);
+		return settings;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.command.sub;
+
+import iot.technology.client.toolkit.common.constants.ExitCodeEnum;
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchLifetime;
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchSettings;
+import picocli.CommandLine;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @author mushuwei
+ */
+@CommandLine.Command(
+		name = "conn",
+		requiredOptionMarker = '*',
+		description = "${bundle:mqtt.bench.conn.description}",
+		optionListHeading = "%n${bundle:general.option}:%n",
+		sortOptions = false,
+		footerHeading = "%nCopyright (c) 2019-2023, ${bundle:general.copyright}",
+		footer = "%nDeveloped by mushuwei"
+)
+public class MqttBenchConnCommand extends AbstractMqttBenchCommand implements Callable<Integer> {
+
+	@CommandLine.Option(names = {"-t", "--topic"}, description = "${bundle:mqtt.bench.conn.topic.desc}", defaultValue = "toolkit/bench/%i/%n")
+	String topic;
+
+	@CommandLine.Option(names = {"-q", "--qos"}, description = "${bundle:mqtt.qos.desc}", defaultValue = "0")
+	int qos;
+
+	@CommandLine.Option(names = {"-n", "--subscriptions"}, description = "${bundle:mqtt.bench.conn.subscriptions.desc}", defaultValue = "0")
+	int subscriptions;
+
+	@CommandLine.Option(names = {"-l", "--lifetime"}, description = "${bundle:mqtt.bench.conn.lifetime.desc}", defaultValue = "1000")
+	long lifetimeMillis;
+
+	@CommandLine.Option(names = {"--lifetime-distribution"}, description = "${bundle:mqtt.bench.conn.lifetime-distribution.desc}",
+			defaultValue = "FIXED")
+	MqttBenchLifetime lifetime;
+
+	@Override
+	public Integer call() {
+		if (qos < 0 || qos > 2) {
+			throw new IllegalArgumentException("qos must be 0, 1 or 2");
+		}
+		if (subscriptions < 0 || lifetimeMillis < 0) {
+			throw new IllegalArgumentException("subscriptions and lifetime must be >= 0");
+		}
+		MqttBenchSettings settings = toSettings();
+		settings.setTopic(topic);
+		settings.setQos(qos);
+		settings.setSubscriptions(subscriptions);
+		settings.setLifetimeMillis(lifetimeMillis);
+		settings.setLifetime(lifetime);
+		benchService.churn(settings);
+		return ExitCodeEnum.SUCCESS.getValue();
+	}
+}
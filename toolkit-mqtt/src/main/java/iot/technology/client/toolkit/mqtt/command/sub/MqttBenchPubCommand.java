@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.command.sub;
+
+import iot.technology.client.toolkit.common.constants.ExitCodeEnum;
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchProbe;
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchSettings;
+import iot.technology.client.toolkit.mqtt.service.template.MqttPayloadTemplate;
+import picocli.CommandLine;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @author mushuwei
+ */
+@CommandLine.Command(
+		name = "pub",
+		requiredOptionMarker = '*',
+		description = "${bundle:mqtt.bench.pub.description}",
+		optionListHeading = "%n${bundle:general.option}:%n",
+		sortOptions = false,
+		footerHeading = "%nCopyright (c) 2019-2023, ${bundle:general.copyright}",
+		footer = "%nDeveloped by mushuwei"
+)
+public class MqttBenchPubCommand extends AbstractMqttBenchCommand implements Callable<Integer> {
+
+	@CommandLine.Option(names = {"-t", "--topic"}, description = "${bundle:mqtt.bench.topic.desc}", defaultValue = "toolkit/bench/%i")
+	String topic;
+
+	@CommandLine.Option(names = {"-q", "--qos"}, description = "${bundle:mqtt.qos.desc}", defaultValue = "0")
+	int qos;
+
+	@CommandLine.Option(names = {"-r", "--rate"}, description = "${bundle:mqtt.bench.rate.desc}", defaultValue = "1")
+	double rate;
+
+	@CommandLine.Option(names = {"-s", "--size"}, description = "${bundle:mqtt.bench.size.desc}", defaultValue = "64")
+	int payloadSize;
+
+	@CommandLine.Option(names = {"--template"}, description = "${bundle:mqtt.bench.template.desc}")
+	String template;
+
+	@CommandLine.Option(names = {"-b", "--batch"}, description = "${bundle:mqtt.bench.batch.desc}", defaultValue = "1")
+	int batchSize;
+
+	@CommandLine.Option(names = {"--coalesce"}, description = "${bundle:mqtt.bench.coalesce.desc}", defaultValue = "0")
+	int flushConsolidationLimit;
+
+	@CommandLine.Option(names = {"--probe"}, description = "${bundle:mqtt.bench.probe.desc}")
+	boolean probe;
+
+	@CommandLine.Option(names = {"--prepared"}, description = "${bundle:mqtt.bench.prepared.desc}")
+	boolean prepared;
+
+	@CommandLine.Option(names = {"--hlog"}, description = "${bundle:mqtt.bench.hlog.desc}")
+	String histogramLog;
+
+	@CommandLine.Option(names = {"--percentiles"}, description = "${bundle:mqtt.bench.percentiles.desc}")
+	boolean percentiles;
+
+	@Override
+	public Integer call() {
+		if (qos < 0 || qos > 2 || rate <= 0 || payloadSize < 0) {
+			throw new IllegalArgumentException("qos must be 0, 1 or 2, rate must be > 0 and size must be >= 0");
+		}
+		if (batchSize <= 0 || flushConsolidationLimit < 0) {
+			throw new IllegalArgumentException("batch must be > 0 and coalesce must be >= 0");
+		}
+		if (probe && template == null && payloadSize < MqttBenchProbe.LENGTH) {
+			throw new IllegalArgumentException("size must be >= " + MqttBenchProbe.LENGTH + " when probes are enabled");
+		}
+		if (prepared && (probe || batchSize > 1 || template != null)) {
+			throw new IllegalArgumentException("prepared cannot be combined with probe, batch or template");
+		}
+		if (template != null) {
+			// fails fast on a bad template instead of once per client
+			MqttPayloadTemplate.compile(template);
+		}
+		MqttBenchSettings settings = toSettings();
+		settings.setTopic(topic);
+		settings.setQos(qos);
+		settings.setRate(rate);
+		settings.setPayloadSize(payloadSize);
+		settings.setTemplate(template);
+		settings.setProbe(probe);
+		settings.setBatchSize(batchSize);
+		settings.setPrepared(prepared);
+		settings.setFlushConsolidationLimit(flushConsolidationLimit);
+		settings.setHistogramLog(histogramLog);
+		settings.setPercentiles(percentiles);
+		benchService.publish(settings);
+		return ExitCodeEnum.SUCCESS.getValue();
+	}
+}
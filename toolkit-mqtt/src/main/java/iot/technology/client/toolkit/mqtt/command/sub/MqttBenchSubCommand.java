@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.command.sub;
+
+import iot.technology.client.toolkit.common.constants.ExitCodeEnum;
+import iot.technology.client.toolkit.mqtt.service.bench.MqttBenchSettings;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchMode;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttGroupOrdering;
+import picocli.CommandLine;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @author mushuwei
+ */
+@CommandLine.Command(
+		name = "sub",
+		requiredOptionMarker = '*',
+		description = "${bundle:mqtt.bench.sub.description}",
+		optionListHeading = "%n${bundle:general.option}:%n",
+		sortOptions = false,
+		footerHeading = "%nCopyright (c) 2019-2023, ${bundle:general.copyright}",
+		footer = "%nDeveloped by mushuwei"
+)
+public class MqttBenchSubCommand extends AbstractMqttBenchCommand implements Callable<Integer> {
+
+	@CommandLine.Option(names = {"-t", "--topic"}, description = "${bundle:mqtt.bench.sub.topic.desc}", defaultValue = "toolkit/bench/#")
+	String topic;
+
+	@CommandLine.Option(names = {"-q", "--qos"}, description = "${bundle:mqtt.qos.desc}", defaultValue = "0")
+	int qos;
+
+	@CommandLine.Option(names = {"--dispatch"}, description = "${bundle:mqtt.bench.dispatch.desc}", defaultValue = "INLINE")
+	MqttDispatchMode dispatchMode;
+
+	@CommandLine.Option(names = {"--dispatch-threads"}, description = "${bundle:mqtt.bench.dispatch-threads.desc}", defaultValue = "0")
+	int dispatchThreads;
+
+	@CommandLine.Option(names = {"--share"}, description = "${bundle:mqtt.bench.share.desc}")
+	String shareGroup;
+
+	@CommandLine.Option(names = {"--ordering"}, description = "${bundle:mqtt.bench.ordering.desc}", defaultValue = "NONE")
+	MqttGroupOrdering ordering;
+
+	@Override
+	public Integer call() {
+		if (qos < 0 || qos > 2) {
+			throw new IllegalArgumentException("qos must be 0, 1 or 2");
+		}
+		MqttBenchSettings settings = toSettings();
+		settings.setTopic(topic);
+		settings.setQos(qos);
+		settings.setDispatchMode(dispatchMode);
+		settings.setDispatchThreads(dispatchThreads);
+		settings.setShareGroup(shareGroup);
+		settings.setGroupOrdering(ordering);
+		benchService.subscribe(settings);
+		return ExitCodeEnum.SUCCESS.getValue();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.command.sub;
+
+import iot.technology.client.toolkit.common.constants.ExitCodeEnum;
+import iot.technology.client.toolkit.mqtt.service.broker.MqttBroker;
+import iot.technology.client.toolkit.mqtt.service.broker.MqttBrokerConfig;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+import picocli.CommandLine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the embedded {@link MqttBroker} in the foreground, printing broker side throughput.
+ *
+ * @author mushuwei
+ */
+@CommandLine.Command(
+		name = "broker",
+		requiredOptionMarker = '*',
+		description = "${bundle:mqtt.server.description}",
+		optionListHeading = "%n${bundle:general.option}:%n",
+		sortOptions = false,
+		footerHeading = "%nCopyright (c) 2019-2023, ${bundle:general.copyright}",
+		footer = "%nDeveloped by mushuwei"
+)
+public class MqttBrokerCommand implements Callable<Integer> {
+
+	@CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "${bundle:general.help.description}")
+	boolean usageHelpRequested;
+
+	@CommandLine.Option(names = {"-b", "--bind"}, description = "${bundle:mqtt.server.bind.desc}", defaultValue = "127.0.0.1")
+	String host;
+
+	@CommandLine.Option(names = {"-p", "--port"}, description = "${bundle:mqtt.port.desc}", defaultValue = "1883")
+	int port;
+
+	@CommandLine.Option(names = {"-d", "--duration"}, description = "${bundle:mqtt.server.duration.desc}", defaultValue = "0")
+	int duration;
+
+	@CommandLine.Option(names = {"--latency"}, description = "${bundle:mqtt.server.latency.desc}", defaultValue = "0")
+	long latencyMillis;
+
+	@CommandLine.Option(names = {"--ack-delay"}, description = "${bundle:mqtt.server.ack-delay.desc}", defaultValue = "0")
+	long ackDelayMillis;
+
+	@CommandLine.Option(names = {"--loss"}, description = "${bundle:mqtt.server.loss.desc}", defaultValue = "0")
+	double lossRate;
+
+	@CommandLine.Option(names = {"--kick-interval"}, description = "${bundle:mqtt.server.kick-interval.desc}", defaultValue = "0")
+	long kickIntervalSeconds;
+
+	@CommandLine.Option(names = {"--topic-alias"}, description = "${bundle:mqtt.server.topic-alias.desc}", defaultValue = "64")
+	int topicAliasMaximum;
+
+	@CommandLine.Option(names = {"--max-message-size"}, description = "${bundle:mqtt.server.max-message-size.desc}",
+			defaultValue = "1048576")
+	int maxBytesInMessage;
+
+	@CommandLine.Option(names = {"--threads"}, description = "${bundle:mqtt.server.threads.desc}", defaultValue = "0")
+	int threads;
+
+	@CommandLine.Option(names = {"--transport"}, description = "${bundle:mqtt.bench.transport.desc}", defaultValue = "AUTO")
+	MqttTransport transport;
+
+	@CommandLine.Option(names = {"--report-interval"}, description = "${bundle:mqtt.bench.report-interval.desc}", defaultValue = "1")
+	int reportInterval;
+
+	@Override
+	public Integer call() throws Exception {
+		if (duration < 0 || reportInterval <= 0) {
+			throw new IllegalArgumentException("duration must be >= 0 and report-interval must be > 0");
+		}
+		MqttBrokerConfig config = new MqttBrokerConfig();
+		config.setHost(host);
+		config.setPort(port);
+		config.setLatencyMillis(latencyMillis);
+		config.setAckDelayMillis(ackDelayMillis);
+		config.setLossRate(lossRate);
+		config.setKickIntervalSeconds(kickIntervalSeconds);
+		config.setTopicAliasMaximum(topicAliasMaximum);
+		config.setMaxBytesInMessage(maxBytesInMessage);
+		config.setThreads(threads);
+		config.setTransport(transport);
+
+		MqttBroker broker = new MqttBroker(config).start();
+		System.out.printf("listening on %s:%d  transport: %s%n", host, broker.getPort(), broker.getTransport());
+
+		CountDownLatch stopped = new CountDownLatch(1);
+		Thread shutdownHook = new Thread(() -> {
+			stop(broker);
+			stopped.countDown();
+		}, "toolkit-broker-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "toolkit-broker-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(() -> System.out.println(broker.getStats().intervalReport(broker.getRetainedCount())),
+				reportInterval, reportInterval, TimeUnit.SECONDS);
+		try {
+			if (duration > 0) {
+				stopped.await(duration, TimeUnit.SECONDS);
+			} else {
+				// until Ctrl+C runs the shutdown hook
+				stopped.await();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			reporter.shutdownNow();
+		}
+		if (stopped.getCount() > 0) {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			stop(broker);
+		}
+		return ExitCodeEnum.SUCCESS.getValue();
+	}
+
+	private static void stop(MqttBroker broker) {
+		broker.close();
+		System.out.println(broker.getStats().summary(broker.getRetainedCount()));
+	}
+}
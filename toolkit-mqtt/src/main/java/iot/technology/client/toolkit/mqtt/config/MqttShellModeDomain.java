@@ -16,8 +16,14 @@
 package iot.technology.client.toolkit.mqtt.config;
 
 import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttMetricsReporter;
+import iot.technology.client.toolkit.mqtt.service.record.MqttRecordWriter;
+import iot.technology.client.toolkit.mqtt.service.template.MqttTemplateContext;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author mushuwei
@@ -28,6 +34,18 @@ public class MqttShellModeDomain implements Serializable {
 
     private MqttClientService client;
 
+    private transient MqttMetricsReporter metricsReporter;
+
+    /**
+     * recordings started by {@code sub -r}, by topic
+     */
+    private transient Map<String, MqttRecordWriter> recordWriters;
+
+    /**
+     * sequence of the messages published from templates, kept across pub commands
+     */
+    private transient MqttTemplateContext templateContext;
+
     public MqttSettings getSettings() {
         return settings;
     }
@@ -43,4 +61,65 @@ public class MqttShellModeDomain implements Serializable {
     public void setClient(MqttClientService client) {
         this.client = client;
     }
+
+    public MqttMetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    public void setMetricsReporter(MqttMetricsReporter metricsReporter) {
+        this.metricsReporter = metricsReporter;
+    }
+
+    public void closeMetricsReporter() {
+        if (metricsReporter == null) {
+            return;
+        }
+        try {
+            metricsReporter.close();
+        } catch (IOException e) {
+            // the dump file is abandoned either way
+        }
+        metricsReporter = null;
+    }
+
+    /**
+     * Starts recording a topic, closing a previous recording of it.
+     */
+    public void putRecordWriter(String topic, MqttRecordWriter writer) {
+        if (recordWriters == null) {
+            recordWriters = new HashMap<>();
+        }
+        MqttRecordWriter previous = recordWriters.put(topic, writer);
+        if (previous != null) {
+            previous.closeQuietly();
+        }
+    }
+
+    public void closeRecordWriter(String topic) {
+        if (recordWriters != null) {
+            MqttRecordWriter writer = recordWriters.remove(topic);
+            if (writer != null) {
+                writer.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Disconnects the client for good and closes the recordings and the stats dump started for it.
+     */
+    public void disconnect() {
+        closeMetricsReporter();
+        if (recordWriters != null) {
+            recordWriters.values().forEach(MqttRecordWriter::closeQuietly);
+            recordWriters.clear();
+        }
+        client.disconnect(1);
+    }
+
+    public MqttTemplateContext getTemplateContext() {
+        if (templateContext == null) {
+            templateContext = new MqttTemplateContext(client.getClientConfig().getClientId(), 0);
+        }
+        return templateContext;
+    }
 }
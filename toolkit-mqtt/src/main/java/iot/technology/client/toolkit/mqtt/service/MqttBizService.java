@@ -28,10 +28,16 @@ import iot.technology.client.toolkit.mqtt.config.MqttShellModeDomain;
 import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
 import iot.technology.client.toolkit.mqtt.service.domain.MqttConfigSettingsDomain;
 import iot.technology.client.toolkit.mqtt.service.domain.MqttConnectResult;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchMode;
 import iot.technology.client.toolkit.mqtt.service.handler.MqttPubMessageHandler;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttClientMetrics;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttMetricsMBean;
+import iot.technology.client.toolkit.mqtt.service.session.MqttJournalSessionStore;
 import org.jline.terminal.Terminal;
 import picocli.CommandLine;
 
+import javax.management.JMException;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -164,6 +170,16 @@ public class MqttBizService {
 
 
 	private MqttClientService connectBroker(MqttClientConfig config) {
+		// console handlers format and print every message, keep that off the event loop; one lane keeps the output in order
+		config.setDispatchMode(MqttDispatchMode.STRIPED);
+		config.setDispatchThreads(1);
+		if (!config.isCleanSession() && config.getSessionStore() == null) {
+			try {
+				config.setSessionStore(MqttJournalSessionStore.forClient(config.getClientId()));
+			} catch (IOException e) {
+				System.out.format(ColorUtils.redError(bundle.getString("mqtt.session.store.failed") + " " + e.getMessage()) + "%n");
+			}
+		}
 		MqttClientService mqttClientService = new MqttClientService(config, new MqttPubMessageHandler());
 		Future<MqttConnectResult> connectFuture = mqttClientService.connect(config.getHost(), config.getPort());
 		MqttConnectResult result;
@@ -193,6 +209,13 @@ public class MqttBizService {
 					String.format("%s %s. %s %s", bundle.getString("mqtt.failed.connect"),
 							hostPort, bundle.getString("mqtt.result.code"), result.getReturnCode()));
 		}
+		try {
+			// unregistered when the client disconnects
+			mqttClientService.getMetrics().registerMBean(config.getClientId());
+			MqttMetricsMBean.register("all", MqttClientMetrics::aggregate);
+		} catch (JMException e) {
+			// metrics stay available through the stats command
+		}
 		return mqttClientService;
 	}
 
@@ -33,4 +33,21 @@ public interface MqttClientCallback {
 	 * This method is called when the connection to the server is recovered.
 	 */
 	void onSuccessfulReconnect();
+
+	/**
+	 * This method is called when a reconnect attempt is scheduled.
+	 *
+	 * @param attempt     attempts since the connection was lost, starting at 1
+	 * @param delayMillis backoff delay before the attempt, not counting a wait for the connect limiter
+	 */
+	default void onReconnectAttempt(int attempt, long delayMillis) {
+	}
+
+	/**
+	 * This method is called when the configured reconnect attempts are used up, the client stays disconnected.
+	 *
+	 * @param attempts attempts made since the connection was lost
+	 */
+	default void onReconnectFailed(int attempts) {
+	}
 }
@@ -17,7 +17,13 @@ package iot.technology.client.toolkit.mqtt.service;
 
 import io.netty.handler.codec.mqtt.MqttVersion;
 import io.netty.handler.ssl.SslContext;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttBackpressurePolicy;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchMode;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchOverflow;
 import iot.technology.client.toolkit.mqtt.service.domain.MqttLastWill;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+import iot.technology.client.toolkit.mqtt.service.core.MqttConnectLimiter;
+import iot.technology.client.toolkit.mqtt.service.session.MqttSessionStore;
 
 /**
  * @author mushuwei
@@ -37,6 +43,30 @@ public final class MqttClientConfig {
 	private int maxBytesInMessage = 8092;
 	private boolean reconnect = true;
 	private long reconnectDelay = 1L;
+	private double reconnectBackoffMultiplier = 2;
+	private long reconnectMaxDelay = 60L;
+	private int reconnectMaxAttempts = -1;
+	private boolean reconnectJitter = true;
+	private MqttConnectLimiter connectLimiter;
+	private long retransmitDelayMillis = 10_000L;
+	private double retransmitBackoffMultiplier = 1.5;
+	private long retransmitMaxDelayMillis = 60_000L;
+	private int retransmitMaxAttempts = -1;
+	private int maxInflight = 65535;
+	private MqttBackpressurePolicy backpressurePolicy = MqttBackpressurePolicy.QUEUE;
+	private int maxQueuedPublishes = 10_000;
+	private int flushConsolidationLimit = 0;
+	private MqttTransport transport = MqttTransport.NIO;
+	private boolean tcpNoDelay = true;
+	private int sendBufferSize = 0;
+	private boolean tcpQuickAck = false;
+	private MqttSessionStore sessionStore;
+	private int topicAliasMaximum = 64;
+	private long sessionExpiryInterval = -1L;
+	private MqttDispatchMode dispatchMode = MqttDispatchMode.INLINE;
+	private int dispatchThreads = 0;
+	private int dispatchQueueCapacity = 10_000;
+	private MqttDispatchOverflow dispatchOverflow = MqttDispatchOverflow.PAUSE_READS;
 	private String host;
 	private Integer port;
 
@@ -62,7 +92,7 @@ public final class MqttClientConfig {
 	}
 
 	/**
-	 * Sets the reconnect delay in seconds. Defaults to 1 second.
+	 * Sets the delay before the first reconnect attempt in seconds. Defaults to 1 second.
 	 *
 	 * @param reconnectDelay
 	 * @throws IllegalArgumentException if reconnectDelay is smaller than 1.
@@ -74,6 +104,273 @@ public final class MqttClientConfig {
 		this.reconnectDelay = reconnectDelay;
 	}
 
+	public double getReconnectBackoffMultiplier() {
+		return reconnectBackoffMultiplier;
+	}
+
+	/**
+	 * Sets the factor applied to the reconnect delay after every failed attempt. Defaults to 2, 1 keeps the delay fixed.
+	 *
+	 * @param reconnectBackoffMultiplier
+	 * @throws IllegalArgumentException if reconnectBackoffMultiplier is smaller than 1.
+	 */
+	public void setReconnectBackoffMultiplier(double reconnectBackoffMultiplier) {
+		if (reconnectBackoffMultiplier < 1) {
+			throw new IllegalArgumentException("reconnectBackoffMultiplier must be >= 1");
+		}
+		this.reconnectBackoffMultiplier = reconnectBackoffMultiplier;
+	}
+
+	public long getReconnectMaxDelay() {
+		return reconnectMaxDelay;
+	}
+
+	/**
+	 * Caps the backoff delay between reconnect attempts in seconds. Defaults to 60 seconds.
+	 *
+	 * @param reconnectMaxDelay
+	 * @throws IllegalArgumentException if reconnectMaxDelay is smaller than 1.
+	 */
+	public void setReconnectMaxDelay(long reconnectMaxDelay) {
+		if (reconnectMaxDelay <= 0) {
+			throw new IllegalArgumentException("reconnectMaxDelay must be > 0");
+		}
+		this.reconnectMaxDelay = reconnectMaxDelay;
+	}
+
+	public int getReconnectMaxAttempts() {
+		return reconnectMaxAttempts;
+	}
+
+	/**
+	 * Sets how many reconnect attempts in a row are made before giving up. Defaults to -1, retrying forever.
+	 *
+	 * @param reconnectMaxAttempts
+	 * @throws IllegalArgumentException if reconnectMaxAttempts is smaller than -1.
+	 */
+	public void setReconnectMaxAttempts(int reconnectMaxAttempts) {
+		if (reconnectMaxAttempts < -1) {
+			throw new IllegalArgumentException("reconnectMaxAttempts must be >= 0 or -1");
+		}
+		this.reconnectMaxAttempts = reconnectMaxAttempts;
+	}
+
+	public boolean isReconnectJitter() {
+		return reconnectJitter;
+	}
+
+	/**
+	 * Picks every reconnect delay at random between 0 and the backoff delay, so clients dropped together
+	 * don't come back together. Defaults to true.
+	 *
+	 * @param reconnectJitter
+	 */
+	public void setReconnectJitter(boolean reconnectJitter) {
+		this.reconnectJitter = reconnectJitter;
+	}
+
+	public MqttConnectLimiter getConnectLimiter() {
+		return connectLimiter;
+	}
+
+	/**
+	 * Rate limit for connection attempts, share one instance between clients to cap the CONNECT rate of the process.
+	 * Defaults to none.
+	 *
+	 * @param connectLimiter
+	 */
+	public void setConnectLimiter(MqttConnectLimiter connectLimiter) {
+		this.connectLimiter = connectLimiter;
+	}
+
+	public long getRetransmitDelayMillis() {
+		return retransmitDelayMillis;
+	}
+
+	/**
+	 * Sets the delay before the first retransmission of an unacknowledged packet. Defaults to 10 seconds.
+	 *
+	 * @param retransmitDelayMillis
+	 * @throws IllegalArgumentException if retransmitDelayMillis is smaller than 1.
+	 */
+	public void setRetransmitDelayMillis(long retransmitDelayMillis) {
+		if (retransmitDelayMillis <= 0) {
+			throw new IllegalArgumentException("retransmitDelayMillis must be > 0");
+		}
+		this.retransmitDelayMillis = retransmitDelayMillis;
+	}
+
+	public double getRetransmitBackoffMultiplier() {
+		return retransmitBackoffMultiplier;
+	}
+
+	/**
+	 * Sets the factor applied to the delay after every retransmission. Defaults to 1.5, 1 keeps the delay fixed.
+	 *
+	 * @param retransmitBackoffMultiplier
+	 * @throws IllegalArgumentException if retransmitBackoffMultiplier is smaller than 1.
+	 */
+	public void setRetransmitBackoffMultiplier(double retransmitBackoffMultiplier) {
+		if (retransmitBackoffMultiplier < 1) {
+			throw new IllegalArgumentException("retransmitBackoffMultiplier must be >= 1");
+		}
+		this.retransmitBackoffMultiplier = retransmitBackoffMultiplier;
+	}
+
+	public long getRetransmitMaxDelayMillis() {
+		return retransmitMaxDelayMillis;
+	}
+
+	/**
+	 * Caps the backoff delay between retransmissions. Defaults to 60 seconds.
+	 *
+	 * @param retransmitMaxDelayMillis
+	 * @throws IllegalArgumentException if retransmitMaxDelayMillis is smaller than 1.
+	 */
+	public void setRetransmitMaxDelayMillis(long retransmitMaxDelayMillis) {
+		if (retransmitMaxDelayMillis <= 0) {
+			throw new IllegalArgumentException("retransmitMaxDelayMillis must be > 0");
+		}
+		this.retransmitMaxDelayMillis = retransmitMaxDelayMillis;
+	}
+
+	public int getRetransmitMaxAttempts() {
+		return retransmitMaxAttempts;
+	}
+
+	/**
+	 * Sets how many times a packet is retransmitted before its future fails. Defaults to -1, retrying forever.
+	 *
+	 * @param retransmitMaxAttempts
+	 * @throws IllegalArgumentException if retransmitMaxAttempts is smaller than -1.
+	 */
+	public void setRetransmitMaxAttempts(int retransmitMaxAttempts) {
+		if (retransmitMaxAttempts < -1) {
+			throw new IllegalArgumentException("retransmitMaxAttempts must be >= 0 or -1");
+		}
+		this.retransmitMaxAttempts = retransmitMaxAttempts;
+	}
+
+	public int getMaxInflight() {
+		return maxInflight;
+	}
+
+	/**
+	 * Sets how many publishes may wait for their acknowledgement (or, for QoS 0, their write) at the same time.
+	 * Defaults to 65535, the MQTT 5 receive maximum default. 0 removes the limit.
+	 *
+	 * @param maxInflight
+	 * @throws IllegalArgumentException if maxInflight is negative.
+	 */
+	public void setMaxInflight(int maxInflight) {
+		if (maxInflight < 0) {
+			throw new IllegalArgumentException("maxInflight must be >= 0");
+		}
+		this.maxInflight = maxInflight;
+	}
+
+	public MqttBackpressurePolicy getBackpressurePolicy() {
+		return backpressurePolicy;
+	}
+
+	public void setBackpressurePolicy(MqttBackpressurePolicy backpressurePolicy) {
+		if (backpressurePolicy == null) {
+			throw new NullPointerException("backpressurePolicy");
+		}
+		this.backpressurePolicy = backpressurePolicy;
+	}
+
+	public int getMaxQueuedPublishes() {
+		return maxQueuedPublishes;
+	}
+
+	/**
+	 * Sets how many publishes the {@link MqttBackpressurePolicy#QUEUE} policy holds back before failing them.
+	 * Defaults to 10000.
+	 *
+	 * @param maxQueuedPublishes
+	 * @throws IllegalArgumentException if maxQueuedPublishes is negative.
+	 */
+	public void setMaxQueuedPublishes(int maxQueuedPublishes) {
+		if (maxQueuedPublishes < 0) {
+			throw new IllegalArgumentException("maxQueuedPublishes must be >= 0");
+		}
+		this.maxQueuedPublishes = maxQueuedPublishes;
+	}
+
+	public int getFlushConsolidationLimit() {
+		return flushConsolidationLimit;
+	}
+
+	/**
+	 * Merges consecutive flushes into one per event loop tick, forcing a flush after this many.
+	 * Trades a little latency for far fewer write syscalls with small messages. Defaults to 0, disabled.
+	 *
+	 * @param flushConsolidationLimit
+	 * @throws IllegalArgumentException if flushConsolidationLimit is negative.
+	 */
+	public void setFlushConsolidationLimit(int flushConsolidationLimit) {
+		if (flushConsolidationLimit < 0) {
+			throw new IllegalArgumentException("flushConsolidationLimit must be >= 0");
+		}
+		this.flushConsolidationLimit = flushConsolidationLimit;
+	}
+
+	public MqttTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Selects the Netty transport. Native transports fall back to NIO when they are not available. Defaults to NIO.
+	 * Ignored when the client is given an existing event loop group, the group decides the transport then.
+	 *
+	 * @param transport
+	 */
+	public void setTransport(MqttTransport transport) {
+		if (transport == null) {
+			throw new NullPointerException("transport");
+		}
+		this.transport = transport;
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	/**
+	 * Sets SO_SNDBUF in bytes. Defaults to 0, keeping the OS default.
+	 *
+	 * @param sendBufferSize
+	 * @throws IllegalArgumentException if sendBufferSize is negative.
+	 */
+	public void setSendBufferSize(int sendBufferSize) {
+		if (sendBufferSize < 0) {
+			throw new IllegalArgumentException("sendBufferSize must be >= 0");
+		}
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public boolean isTcpQuickAck() {
+		return tcpQuickAck;
+	}
+
+	/**
+	 * Enables TCP_QUICKACK, only honoured by the epoll and io_uring transports.
+	 *
+	 * @param tcpQuickAck
+	 */
+	public void setTcpQuickAck(boolean tcpQuickAck) {
+		this.tcpQuickAck = tcpQuickAck;
+	}
+
 	public String getClientId() {
 		return clientId;
 	}
@@ -155,6 +452,119 @@ public final class MqttClientConfig {
 		this.cleanSession = cleanSession;
 	}
 
+	public MqttSessionStore getSessionStore() {
+		return sessionStore;
+	}
+
+	/**
+	 * Persists unacknowledged QoS 1/2 publishes so they survive a reconnect or a restart.
+	 * Only used when clean session is off, a clean session clears the store on connect. Defaults to none.
+	 * The client closes the store once it is disconnected for good.
+	 *
+	 * @param sessionStore
+	 */
+	public void setSessionStore(MqttSessionStore sessionStore) {
+		this.sessionStore = sessionStore;
+	}
+
+	public int getTopicAliasMaximum() {
+		return topicAliasMaximum;
+	}
+
+	/**
+	 * MQTT 5 only. Topic aliases kept per connection in each direction, outbound further limited by the broker.
+	 * Defaults to 64, 0 disables aliases.
+	 *
+	 * @param topicAliasMaximum
+	 * @throws IllegalArgumentException if topicAliasMaximum is negative or greater than 65535.
+	 */
+	public void setTopicAliasMaximum(int topicAliasMaximum) {
+		if (topicAliasMaximum < 0 || topicAliasMaximum > 65535) {
+			throw new IllegalArgumentException("topicAliasMaximum must be >= 0 and <= 65535");
+		}
+		this.topicAliasMaximum = topicAliasMaximum;
+	}
+
+	public long getSessionExpiryInterval() {
+		return sessionExpiryInterval;
+	}
+
+	/**
+	 * MQTT 5 only. Seconds the broker keeps the session after the connection closes.
+	 * Defaults to -1, which keeps the 3.1.1 behaviour: 0 with clean session, never expiring without.
+	 *
+	 * @param sessionExpiryInterval
+	 * @throws IllegalArgumentException if sessionExpiryInterval is smaller than -1 or greater than 4294967295.
+	 */
+	public void setSessionExpiryInterval(long sessionExpiryInterval) {
+		if (sessionExpiryInterval < -1 || sessionExpiryInterval > 0xFFFFFFFFL) {
+			throw new IllegalArgumentException("sessionExpiryInterval must be >= -1 and <= 4294967295");
+		}
+		this.sessionExpiryInterval = sessionExpiryInterval;
+	}
+
+	public MqttDispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+
+	/**
+	 * Where message handlers run. Defaults to INLINE on the event loop. Read when the client is created.
+	 *
+	 * @param dispatchMode
+	 */
+	public void setDispatchMode(MqttDispatchMode dispatchMode) {
+		if (dispatchMode == null) {
+			throw new NullPointerException("dispatchMode");
+		}
+		this.dispatchMode = dispatchMode;
+	}
+
+	public int getDispatchThreads() {
+		return dispatchThreads;
+	}
+
+	/**
+	 * Number of lanes topics are hashed onto, and of threads with STRIPED. Messages of one lane are handled in order.
+	 * Defaults to 0, one per available processor.
+	 *
+	 * @param dispatchThreads
+	 * @throws IllegalArgumentException if dispatchThreads is negative.
+	 */
+	public void setDispatchThreads(int dispatchThreads) {
+		if (dispatchThreads < 0) {
+			throw new IllegalArgumentException("dispatchThreads must be >= 0");
+		}
+		this.dispatchThreads = dispatchThreads;
+	}
+
+	public int getDispatchQueueCapacity() {
+		return dispatchQueueCapacity;
+	}
+
+	/**
+	 * Messages waiting for a handler across all lanes before {@link #setDispatchOverflow} applies. Defaults to 10000.
+	 *
+	 * @param dispatchQueueCapacity
+	 * @throws IllegalArgumentException if dispatchQueueCapacity is smaller than 1.
+	 */
+	public void setDispatchQueueCapacity(int dispatchQueueCapacity) {
+		if (dispatchQueueCapacity <= 0) {
+			throw new IllegalArgumentException("dispatchQueueCapacity must be > 0");
+		}
+		this.dispatchQueueCapacity = dispatchQueueCapacity;
+	}
+
+	public MqttDispatchOverflow getDispatchOverflow() {
+		return dispatchOverflow;
+	}
+
+	public void setDispatchOverflow(MqttDispatchOverflow dispatchOverflow) {
+		if (dispatchOverflow == null) {
+			throw new NullPointerException("dispatchOverflow");
+		}
+		this.dispatchOverflow = dispatchOverflow;
+	}
+
 	public SslContext getSslContext() {
 		return sslContext;
 	}
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service;
+
+/**
+ * Settings of a {@link iot.technology.client.toolkit.mqtt.service.core.MqttConnectionPool}.
+ *
+ * @author mushuwei
+ */
+public final class MqttConnectionPoolConfig {
+
+	private int members = Runtime.getRuntime().availableProcessors();
+	private String clientIdPrefix = "toolkit-pool";
+	private int virtualNodes = 64;
+	private long healthCheckIntervalMillis = 1000L;
+	private long stallTimeoutMillis = 10_000L;
+	private int maxRedirects = 2;
+
+	public int getMembers() {
+		return members;
+	}
+
+	/**
+	 * @param members connections of the pool, each with its own client identifier and event loop thread
+	 * @throws IllegalArgumentException if members is smaller than 1.
+	 */
+	public void setMembers(int members) {
+		if (members <= 0) {
+			throw new IllegalArgumentException("members must be > 0");
+		}
+		this.members = members;
+	}
+
+	public String getClientIdPrefix() {
+		return clientIdPrefix;
+	}
+
+	/**
+	 * @param clientIdPrefix member {@code i} connects as {@code <clientIdPrefix>-<i>}
+	 */
+	public void setClientIdPrefix(String clientIdPrefix) {
+		if (clientIdPrefix == null) {
+			throw new NullPointerException("clientIdPrefix");
+		}
+		this.clientIdPrefix = clientIdPrefix;
+	}
+
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	/**
+	 * Points of each member on the hash ring. More points spread the topics more evenly.
+	 *
+	 * @throws IllegalArgumentException if virtualNodes is smaller than 1 or greater than 4096.
+	 */
+	public void setVirtualNodes(int virtualNodes) {
+		if (virtualNodes <= 0 || virtualNodes > 4096) {
+			throw new IllegalArgumentException("virtualNodes must be > 0 and <= 4096");
+		}
+		this.virtualNodes = virtualNodes;
+	}
+
+	public long getHealthCheckIntervalMillis() {
+		return healthCheckIntervalMillis;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if healthCheckIntervalMillis is smaller than 1.
+	 */
+	public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+		if (healthCheckIntervalMillis <= 0) {
+			throw new IllegalArgumentException("healthCheckIntervalMillis must be > 0");
+		}
+		this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+	}
+
+	public long getStallTimeoutMillis() {
+		return stallTimeoutMillis;
+	}
+
+	/**
+	 * A connected member whose oldest in-flight publish waits longer than this for its acknowledgement is taken
+	 * off the ring until it catches up. 0 only checks the connection.
+	 *
+	 * @throws IllegalArgumentException if stallTimeoutMillis is negative.
+	 */
+	public void setStallTimeoutMillis(long stallTimeoutMillis) {
+		if (stallTimeoutMillis < 0) {
+			throw new IllegalArgumentException("stallTimeoutMillis must be >= 0");
+		}
+		this.stallTimeoutMillis = stallTimeoutMillis;
+	}
+
+	public int getMaxRedirects() {
+		return maxRedirects;
+	}
+
+	/**
+	 * How often a publish that failed because its member lost the connection is sent again through the member
+	 * now owning the topic. 0 fails it right away.
+	 *
+	 * @throws IllegalArgumentException if maxRedirects is negative.
+	 */
+	public void setMaxRedirects(int maxRedirects) {
+		if (maxRedirects < 0) {
+			throw new IllegalArgumentException("maxRedirects must be >= 0");
+		}
+		this.maxRedirects = maxRedirects;
+	}
+}
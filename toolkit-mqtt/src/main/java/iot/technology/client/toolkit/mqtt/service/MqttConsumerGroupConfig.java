@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttGroupOrdering;
+
+/**
+ * Settings of a {@link iot.technology.client.toolkit.mqtt.service.core.MqttConsumerGroup}.
+ *
+ * @author mushuwei
+ */
+public final class MqttConsumerGroupConfig {
+
+	private String group = "toolkit";
+	private String filter = "#";
+	private MqttQoS qos = MqttQoS.AT_MOST_ONCE;
+	private int members = Runtime.getRuntime().availableProcessors();
+	private MqttGroupOrdering ordering = MqttGroupOrdering.NONE;
+	private String clientIdPrefix = "toolkit-group";
+
+	public String getGroup() {
+		return group;
+	}
+
+	/**
+	 * @param group the share name of {@code $share/<group>/<filter>}
+	 * @throws IllegalArgumentException if group is empty or contains '/', '+' or '#'.
+	 */
+	public void setGroup(String group) {
+		if (group == null) {
+			throw new NullPointerException("group");
+		}
+		if (group.isEmpty() || group.indexOf('/') >= 0 || group.indexOf('+') >= 0 || group.indexOf('#') >= 0) {
+			throw new IllegalArgumentException("group must not be empty or contain '/', '+' or '#'");
+		}
+		this.group = group;
+	}
+
+	public String getFilter() {
+		return filter;
+	}
+
+	public void setFilter(String filter) {
+		if (filter == null) {
+			throw new NullPointerException("filter");
+		}
+		if (filter.isEmpty()) {
+			throw new IllegalArgumentException("filter must not be empty");
+		}
+		this.filter = filter;
+	}
+
+	/**
+	 * @return the filter every member subscribes to
+	 */
+	public String getSharedFilter() {
+		return "$share/" + group + "/" + filter;
+	}
+
+	public MqttQoS getQos() {
+		return qos;
+	}
+
+	public void setQos(MqttQoS qos) {
+		if (qos == null) {
+			throw new NullPointerException("qos");
+		}
+		if (qos == MqttQoS.FAILURE) {
+			throw new IllegalArgumentException("qos must be 0, 1 or 2");
+		}
+		this.qos = qos;
+	}
+
+	public int getMembers() {
+		return members;
+	}
+
+	/**
+	 * @param members connections of the group, each with its own client identifier and event loop thread
+	 * @throws IllegalArgumentException if members is smaller than 1.
+	 */
+	public void setMembers(int members) {
+		if (members <= 0) {
+			throw new IllegalArgumentException("members must be > 0");
+		}
+		this.members = members;
+	}
+
+	public MqttGroupOrdering getOrdering() {
+		return ordering;
+	}
+
+	public void setOrdering(MqttGroupOrdering ordering) {
+		if (ordering == null) {
+			throw new NullPointerException("ordering");
+		}
+		this.ordering = ordering;
+	}
+
+	public String getClientIdPrefix() {
+		return clientIdPrefix;
+	}
+
+	/**
+	 * @param clientIdPrefix member {@code i} connects as {@code <clientIdPrefix>-<i>}
+	 */
+	public void setClientIdPrefix(String clientIdPrefix) {
+		if (clientIdPrefix == null) {
+			throw new NullPointerException("clientIdPrefix");
+		}
+		this.clientIdPrefix = clientIdPrefix;
+	}
+}
@@ -44,6 +44,8 @@ public class MqttShellModeService {
         tkProcessorList.add(new PublishProcessor());
         tkProcessorList.add(new SubscribeProcessor());
         tkProcessorList.add(new UnSubscribeProcessor());
+        tkProcessorList.add(new ReplayProcessor());
+        tkProcessorList.add(new StatsProcessor());
         tkProcessorList.add(new HelpProcessor());
         return tkProcessorList;
     }
@@ -58,6 +60,10 @@ public class MqttShellModeService {
 
     Completer unSubscribeCompleter = new ArgumentCompleter(new StringsCompleter("unsub"), NullCompleter.INSTANCE);
 
+    Completer replayCompleter = new ArgumentCompleter(new StringsCompleter("replay"), NullCompleter.INSTANCE);
+
+    Completer statsCompleter = new ArgumentCompleter(new StringsCompleter("stats"), NullCompleter.INSTANCE);
+
     Completer disconnectCompleter = new ArgumentCompleter(new StringsCompleter("dis"), NullCompleter.INSTANCE);
 
     Completer exitCompleter = new ArgumentCompleter(new StringsCompleter("exit"),
@@ -68,7 +74,7 @@ public class MqttShellModeService {
             NullCompleter.INSTANCE);
 
     Completer mqttShellModeCompleter = new AggregateCompleter(helpCompleter, publishCompleter, subscribeCompleter,
-            unSubscribeCompleter, listCompleter, disconnectCompleter, exitCompleter);
+            unSubscribeCompleter, replayCompleter, statsCompleter, listCompleter, disconnectCompleter, exitCompleter);
 
 
     public boolean call(MqttShellModeDomain domain, Terminal terminal) {
@@ -112,7 +118,7 @@ public class MqttShellModeService {
                 if (data.equals("exit")) {
                     isEnd = false;
                     mqttSettingService.updateAllMqttConfigsByUsage(domain.getSettings(), 0);
-                    domain.getClient().disconnect(1);
+                    domain.disconnect();
                     return false;
                 }
                 for (TkProcessor processor : getTkProcessorList()) {
@@ -125,7 +131,7 @@ public class MqttShellModeService {
             mqttSettingService.updateAllMqttConfigsByUsage(domain.getSettings(), 0);
             // close channel
             if (Objects.nonNull(domain.getClient()) && domain.getClient().isConnected()) {
-                domain.getClient().disconnect(1);
+                domain.disconnect();
             }
             return false;
         }
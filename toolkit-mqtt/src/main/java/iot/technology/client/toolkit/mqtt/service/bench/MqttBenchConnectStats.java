@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a connect churn run, see {@link MqttBenchService#churn}.
+ * Recording is lock free, reports are taken from the reporter thread only.
+ *
+ * @author mushuwei
+ */
+public class MqttBenchConnectStats {
+
+	private final LongAdder attempts = new LongAdder();
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder closed = new LongAdder();
+	private final LongAdder active = new LongAdder();
+	private final LongAdder subscribeErrors = new LongAdder();
+	private final LongAdder tlsResumed = new LongAdder();
+	/**
+	 * refused connections by CONNACK return code, other failures by exception type
+	 */
+	private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+	/**
+	 * connect call to CONNACK in microseconds, including TCP connect and TLS handshake
+	 */
+	private final Latency connack = new Latency();
+	private final Latency suback = new Latency();
+	private final Latency tcpConnect = new Latency();
+	private final Latency tlsHandshake = new Latency();
+
+	private final long startNanos = System.nanoTime();
+	private long lastReportNanos = startNanos;
+	private long lastAttempts;
+	private long lastAccepted;
+	private long lastClosed;
+
+	public void onAttempt() {
+		attempts.increment();
+		active.increment();
+	}
+
+	/**
+	 * An arrival dropped because the maximum of concurrent sessions was reached.
+	 */
+	public void onSkipped() {
+		skipped.increment();
+	}
+
+	/**
+	 * @param tcpNanos -1 if unknown
+	 * @param tlsNanos -1 without TLS
+	 * @param resumed  whether the TLS handshake resumed an earlier session
+	 */
+	public void onAccepted(long connackNanos, long tcpNanos, long tlsNanos, boolean resumed) {
+		accepted.increment();
+		connack.record(connackNanos);
+		if (tcpNanos >= 0) {
+			tcpConnect.record(tcpNanos);
+		}
+		if (tlsNanos >= 0) {
+			tlsHandshake.record(tlsNanos);
+			if (resumed) {
+				tlsResumed.increment();
+			}
+		}
+	}
+
+	public void onFailed(String reason) {
+		failed.increment();
+		active.decrement();
+		failures.computeIfAbsent(reason, r -> new LongAdder()).increment();
+	}
+
+	public void onSubscribed(long subackNanos) {
+		suback.record(subackNanos);
+	}
+
+	public void onSubscribeError() {
+		subscribeErrors.increment();
+	}
+
+	public void onClosed() {
+		closed.increment();
+		active.decrement();
+	}
+
+	public synchronized String intervalReport() {
+		long now = System.nanoTime();
+		double seconds = Math.max(now - lastReportNanos, 1) / 1e9;
+		long attemptsNow = attempts.sum();
+		long acceptedNow = accepted.sum();
+		long closedNow = closed.sum();
+		String report = String.format("[%6.1fs] active: %d  connect: %.0f/s  connack: %.0f/s  close: %.0f/s  connack %s  suback %s  failed: %d  skipped: %d",
+				(now - startNanos) / 1e9,
+				active.sum(),
+				(attemptsNow - lastAttempts) / seconds,
+				(acceptedNow - lastAccepted) / seconds,
+				(closedNow - lastClosed) / seconds,
+				MqttBenchStats.percentiles(connack.interval()),
+				MqttBenchStats.percentiles(suback.interval()),
+				failed.sum(),
+				skipped.sum());
+		lastReportNanos = now;
+		lastAttempts = attemptsNow;
+		lastAccepted = acceptedNow;
+		lastClosed = closedNow;
+		return report;
+	}
+
+	public synchronized String summary() {
+		connack.interval();
+		suback.interval();
+		tcpConnect.interval();
+		tlsHandshake.interval();
+		double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("duration: %.1fs  connects: %d (%.0f/s)  accepted: %d (%.0f/s)  closed: %d  failed: %d  skipped: %d%n",
+				seconds, attempts.sum(), attempts.sum() / seconds, accepted.sum(), accepted.sum() / seconds,
+				closed.sum(), failed.sum(), skipped.sum()));
+		sb.append("connack latency ").append(connack.summary()).append(String.format("%n"));
+		sb.append("tcp connect     ").append(tcpConnect.summary()).append(String.format("%n"));
+		long handshakes = tlsHandshake.total.getTotalCount();
+		if (handshakes > 0) {
+			sb.append("tls handshake   ").append(tlsHandshake.summary())
+					.append(String.format("  resumed: %d/%d (%.1f%%)%n", tlsResumed.sum(), handshakes, 100.0 * tlsResumed.sum() / handshakes));
+		}
+		if (suback.total.getTotalCount() > 0 || subscribeErrors.sum() > 0) {
+			sb.append("suback latency  ").append(suback.summary())
+					.append(String.format("  errors: %d%n", subscribeErrors.sum()));
+		}
+		if (!failures.isEmpty()) {
+			sb.append("failures:");
+			new TreeMap<>(failures).forEach((reason, count) -> sb.append(String.format("  %s: %d", reason, count.sum())));
+			sb.append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+
+	public long getAccepted() {
+		return accepted.sum();
+	}
+
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	public long getActive() {
+		return active.sum();
+	}
+
+	private static final class Latency {
+
+		private final Recorder recorder = new Recorder(3);
+		private final Histogram total = new Histogram(3);
+		private Histogram interval;
+
+		void record(long nanos) {
+			recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+		}
+
+		Histogram interval() {
+			interval = recorder.getIntervalHistogram(interval);
+			total.add(interval);
+			return interval;
+		}
+
+		String summary() {
+			if (total.getTotalCount() == 0) {
+				return MqttBenchStats.percentiles(total);
+			}
+			return String.format("%s  p99.9: %.2fms  max: %.2fms", MqttBenchStats.percentiles(total),
+					total.getValueAtPercentile(99.9) / 1000.0, total.getMaxValue() / 1000.0);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long a session of a connect churn run stays connected.
+ *
+ * @author mushuwei
+ */
+public enum MqttBenchLifetime {
+
+	/**
+	 * every session lives exactly the mean
+	 */
+	FIXED,
+
+	/**
+	 * uniform between 0 and twice the mean
+	 */
+	UNIFORM,
+
+	/**
+	 * exponential with the given mean, many short sessions and a long tail, as with devices on flaky networks
+	 */
+	EXPONENTIAL;
+
+	public long sampleMillis(long meanMillis) {
+		switch (this) {
+			case UNIFORM:
+				return ThreadLocalRandom.current().nextLong(2 * meanMillis + 1);
+			case EXPONENTIAL:
+				return (long) (-meanMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+			default:
+				return meanMillis;
+		}
+	}
+}
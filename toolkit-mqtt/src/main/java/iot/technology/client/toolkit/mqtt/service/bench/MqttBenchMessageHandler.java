@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drains messages for one bench subscriber without formatting them.
+ * A client's messages all arrive on the same event loop, but the members of a consumer group share one handler,
+ * so the per-topic state is concurrent and each topic is recorded under its own lock, uncontended for a single client.
+ *
+ * @author mushuwei
+ */
+public class MqttBenchMessageHandler implements MqttHandler {
+
+	private final MqttBenchStats stats;
+	private final Map<String, TopicStats> topics = new ConcurrentHashMap<>();
+
+	public MqttBenchMessageHandler(MqttBenchStats stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public void onMessage(String topic, MqttQoS qos, ByteBuf payload) {
+		stats.onReceived(payload.readableBytes());
+		if (!MqttBenchProbe.isProbe(payload)) {
+			return;
+		}
+		long latencyMicros = Math.max(0, MqttBenchProbe.nowMicros() - MqttBenchProbe.timestampMicros(payload));
+		stats.onEndToEnd(latencyMicros);
+		topics.computeIfAbsent(topic, t -> new TopicStats()).record(MqttBenchProbe.sequence(payload), latencyMicros, stats);
+	}
+
+	public Map<String, TopicStats> getTopics() {
+		return topics;
+	}
+
+	/**
+	 * Loss, reordering and end-to-end latency of the probes seen on one topic.
+	 */
+	public static final class TopicStats {
+
+		private final Histogram latency = new Histogram(2);
+		private long received;
+		private long lastSequence = -1;
+		private long lost;
+		private long reordered;
+
+		synchronized void record(long sequence, long latencyMicros, MqttBenchStats stats) {
+			received++;
+			latency.recordValue(latencyMicros);
+			if (lastSequence < 0 || sequence == lastSequence + 1) {
+				lastSequence = sequence;
+			} else if (sequence > lastSequence + 1) {
+				long gap = sequence - lastSequence - 1;
+				lost += gap;
+				stats.onLost(gap);
+				lastSequence = sequence;
+			} else {
+				// a late message fills a gap counted as lost before
+				reordered++;
+				stats.onReordered();
+				if (lost > 0) {
+					lost--;
+					stats.onLost(-1);
+				}
+			}
+		}
+
+		public void merge(TopicStats other) {
+			received += other.received;
+			lost += other.lost;
+			reordered += other.reordered;
+			latency.add(other.latency);
+		}
+
+		public long getReceived() {
+			return received;
+		}
+
+		public long getLost() {
+			return lost;
+		}
+
+		public long getReordered() {
+			return reordered;
+		}
+
+		public Histogram getLatency() {
+			return latency;
+		}
+	}
+}
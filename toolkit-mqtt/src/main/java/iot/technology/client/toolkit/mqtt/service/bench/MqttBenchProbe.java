@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency probe written at the start of bench payloads:
+ * a 2 byte magic, the send timestamp in epoch microseconds and the per-topic sequence number.
+ * <p>
+ * Timestamps come from {@link System#nanoTime()} anchored to the wall clock once per process,
+ * so they are monotonic on the sender and comparable across hosts with synchronised clocks.
+ *
+ * @author mushuwei
+ */
+public final class MqttBenchProbe {
+
+	public static final int LENGTH = 18;
+
+	private static final short MAGIC = 0x544B;
+	private static final long EPOCH_MICROS = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+	private static final long NANO_ORIGIN = System.nanoTime();
+
+	private MqttBenchProbe() {
+	}
+
+	public static long nowMicros() {
+		return EPOCH_MICROS + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - NANO_ORIGIN);
+	}
+
+	public static void write(ByteBuf buf, long sequence) {
+		buf.writeShort(MAGIC);
+		buf.writeLong(nowMicros());
+		buf.writeLong(sequence);
+	}
+
+	/**
+	 * @return true if the payload starts with a probe, the reader index is left untouched
+	 */
+	public static boolean isProbe(ByteBuf payload) {
+		return payload.readableBytes() >= LENGTH && payload.getShort(payload.readerIndex()) == MAGIC;
+	}
+
+	public static long timestampMicros(ByteBuf payload) {
+		return payload.getLong(payload.readerIndex() + 2);
+	}
+
+	public static long sequence(ByteBuf payload) {
+		return payload.getLong(payload.readerIndex() + 10);
+	}
+}
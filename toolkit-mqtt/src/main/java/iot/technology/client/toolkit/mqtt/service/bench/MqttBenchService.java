@@ -0,0 +1,615 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import iot.technology.client.toolkit.mqtt.service.MqttClientCallback;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+import iot.technology.client.toolkit.mqtt.service.MqttConsumerGroupConfig;
+import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
+import iot.technology.client.toolkit.mqtt.service.core.MqttConnectLimiter;
+import iot.technology.client.toolkit.mqtt.service.core.MqttConsumerGroup;
+import iot.technology.client.toolkit.mqtt.service.core.MqttDispatcher;
+import iot.technology.client.toolkit.mqtt.service.core.MqttPublishPacer;
+import iot.technology.client.toolkit.mqtt.service.core.MqttSslContextFactory;
+import iot.technology.client.toolkit.mqtt.service.core.MqttTransportFactory;
+import iot.technology.client.toolkit.mqtt.service.domain.DisReason;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttConnectResult;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttPreparedPublish;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttPublishRequest;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
+import iot.technology.client.toolkit.mqtt.service.template.MqttPayloadTemplate;
+import iot.technology.client.toolkit.mqtt.service.template.MqttTemplateContext;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import javax.net.ssl.SSLException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Drives many {@link MqttClientService} instances on one shared event loop group.
+ *
+ * @author mushuwei
+ */
+public class MqttBenchService {
+
+	private static final long RAMP_TICK_MILLIS = 10;
+	private static final int TOPIC_SUMMARY_LIMIT = 20;
+
+	/**
+	 * Publishes from every client at a fixed per-client rate and reports PUBACK/PUBCOMP latency.
+	 * Sends follow a {@link MqttPublishPacer} schedule and latency is measured from the time a send was scheduled
+	 * for, so a stalled broker shows up in the percentiles instead of just slowing the senders down; service time,
+	 * measured from the actual send, is reported next to it.
+	 * With probes enabled every payload starts with a {@link MqttBenchProbe} so a {@link #subscribe} run can
+	 * measure end-to-end latency, loss and reordering.
+	 */
+	public void publish(MqttBenchSettings settings) {
+		MqttBenchStats stats = new MqttBenchStats();
+		MqttQoS qos = MqttQoS.valueOf(settings.getQos());
+		byte[] payload = new byte[settings.getPayloadSize()];
+		ThreadLocalRandom.current().nextBytes(payload);
+		int batchSize = settings.getBatchSize();
+		double batchRate = settings.getRate() / batchSize;
+		long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / batchRate));
+		HistogramLogWriter logWriter = null;
+		if (settings.getHistogramLog() != null) {
+			try {
+				logWriter = new HistogramLogWriter(settings.getHistogramLog());
+			} catch (FileNotFoundException e) {
+				throw new IllegalArgumentException("Cannot write histogram log " + settings.getHistogramLog(), e);
+			}
+			stats.setLogWriter(logWriter);
+		}
+
+		boolean probe = settings.isProbe();
+		MqttPayloadTemplate template = settings.getTemplate() == null ? null : MqttPayloadTemplate.compile(settings.getTemplate());
+
+		run(settings, stats, null, (client, index) -> {
+			String topic = settings.topic(index);
+			if (settings.isPrepared()) {
+				return publishPrepared(client, client.prepare(topic, Unpooled.wrappedBuffer(payload), qos, false),
+						stats, batchRate, periodNanos);
+			}
+			long[] sequence = new long[1];
+			MqttTemplateContext templateContext = template == null ? null : new MqttTemplateContext(settings.clientId(index), index);
+			Supplier<ByteBuf> nextPayload = () -> {
+				if (template != null) {
+					ByteBuf buf = ByteBufAllocator.DEFAULT.buffer((probe ? MqttBenchProbe.LENGTH : 0) + template.sizeHint());
+					if (probe) {
+						MqttBenchProbe.write(buf, sequence[0]++);
+					}
+					template.render(buf, templateContext);
+					return buf;
+				}
+				if (!probe) {
+					return Unpooled.wrappedBuffer(payload);
+				}
+				ByteBuf buf = Unpooled.buffer(payload.length);
+				MqttBenchProbe.write(buf, sequence[0]++);
+				return buf.writeBytes(payload, MqttBenchProbe.LENGTH, payload.length - MqttBenchProbe.LENGTH);
+			};
+			// spread the first publish over one period so clients don't fire in lockstep;
+			// the client is pinned to one loop, next() is that loop
+			return new MqttPublishPacer(client.getEventLoop().next(), batchRate, intended -> {
+				if (!client.isConnected()) {
+					stats.onMissed();
+					return;
+				}
+				long start = System.nanoTime();
+				if (batchSize == 1) {
+					stats.onSent();
+					track(client.publish(topic, nextPayload.get(), qos, false), stats, intended, start);
+					return;
+				}
+				List<MqttPublishRequest> batch = new ArrayList<>(batchSize);
+				for (int i = 0; i < batchSize; i++) {
+					stats.onSent();
+					batch.add(new MqttPublishRequest(topic, nextPayload.get(), qos, false));
+				}
+				client.publishBatch(batch).forEach(future -> track(future, stats, intended, start));
+			}).start(ThreadLocalRandom.current().nextLong(periodNanos));
+		}, stats::intervalReport, stats::summary);
+		if (settings.isPercentiles()) {
+			System.out.print(stats.latencyDistribution());
+		}
+		if (logWriter != null) {
+			logWriter.close();
+		}
+	}
+
+	/**
+	 * Sends the same encoded packet every period, QoS 0 with {@link MqttClientService#tryPublish} so a send
+	 * allocates nothing; a send the channel cannot take right now is counted as missed, not queued.
+	 */
+	private static MqttPublishPacer publishPrepared(MqttClientService client, MqttPreparedPublish prepared,
+												   MqttBenchStats stats, double rate, long periodNanos) {
+		MqttPublishPacer pacer = new MqttPublishPacer(client.getEventLoop().next(), rate, intended -> {
+			if (!client.isConnected()) {
+				stats.onMissed();
+				return;
+			}
+			long start = System.nanoTime();
+			if (prepared.getQos() != MqttQoS.AT_MOST_ONCE) {
+				stats.onSent();
+				track(client.publish(prepared), stats, intended, start);
+			} else if (client.tryPublish(prepared, true)) {
+				stats.onSent();
+				long now = System.nanoTime();
+				stats.onCompleted(now - intended, now - start);
+			} else {
+				stats.onMissed();
+			}
+		});
+		// sends still in flight hold their own reference
+		pacer.terminationFuture().addListener(f -> prepared.release());
+		return pacer.start(ThreadLocalRandom.current().nextLong(periodNanos));
+	}
+
+	private static void track(Future<Void> future, MqttBenchStats stats, long intended, long start) {
+		future.addListener(f -> {
+			if (f.isSuccess()) {
+				long now = System.nanoTime();
+				stats.onCompleted(now - intended, now - start);
+			} else {
+				stats.onError();
+			}
+		});
+	}
+
+	/**
+	 * Subscribes every client to the topic filter and drains messages without printing them.
+	 * Reports receive throughput and, for payloads carrying a {@link MqttBenchProbe}, end-to-end latency,
+	 * loss and reordering overall and per topic.
+	 */
+	public void subscribe(MqttBenchSettings settings) {
+		if (settings.getShareGroup() != null) {
+			subscribeShared(settings);
+			return;
+		}
+		MqttBenchStats stats = new MqttBenchStats();
+		MqttQoS qos = MqttQoS.valueOf(settings.getQos());
+		Map<Integer, MqttBenchMessageHandler> handlers = new ConcurrentHashMap<>();
+		Queue<MqttDispatcher> dispatchers = new ConcurrentLinkedQueue<>();
+
+		run(settings, stats, null, new BenchTask() {
+			@Override
+			public void connected(MqttClientService client, int index) {
+				// one handler per client, so a reconnect continues its sequence tracking
+				MqttBenchMessageHandler handler = handlers.computeIfAbsent(index, i -> {
+					dispatchers.add(client.getDispatcher());
+					return new MqttBenchMessageHandler(stats);
+				});
+				client.on(settings.topic(index), handler, qos).addListener(f -> {
+					if (!f.isSuccess()) {
+						stats.onError();
+					}
+				});
+			}
+
+			@Override
+			public MqttPublishPacer start(MqttClientService client, int index) {
+				return null;
+			}
+		}, stats::receiveIntervalReport, stats::receiveSummary);
+		System.out.print(dispatchSummary(settings, dispatchers));
+		System.out.print(topicSummary(handlers.values()));
+	}
+
+	/**
+	 * Drains the topic filter with a {@link MqttConsumerGroup} of one member per client, all sharing
+	 * one subscription, and reports like {@link #subscribe}. Loss and reordering are counted across the group.
+	 */
+	private void subscribeShared(MqttBenchSettings settings) {
+		MqttBenchStats stats = new MqttBenchStats();
+		MqttConsumerGroupConfig groupConfig = new MqttConsumerGroupConfig();
+		groupConfig.setGroup(settings.getShareGroup());
+		groupConfig.setFilter(settings.getTopic());
+		groupConfig.setQos(MqttQoS.valueOf(settings.getQos()));
+		groupConfig.setMembers(settings.getClients());
+		groupConfig.setOrdering(settings.getGroupOrdering());
+		groupConfig.setClientIdPrefix(settings.getClientIdPrefix());
+		MqttConnectLimiter limiter = settings.getConnectLimit() > 0
+				? new MqttConnectLimiter(settings.getConnectLimit(), settings.getConnectLimit()) : null;
+		MqttBenchMessageHandler handler = new MqttBenchMessageHandler(stats);
+		SslContext sslContext = sslContext(settings);
+		MqttConsumerGroup group = new MqttConsumerGroup(groupConfig, index -> clientConfig(settings, index, limiter, sslContext), handler);
+		System.out.println("subscribing " + groupConfig.getMembers() + " members to " + groupConfig.getSharedFilter()
+				+ ", ordering " + groupConfig.getOrdering());
+		group.start(settings.getHost(), settings.getPort()).addListener(f -> {
+			if (!f.isSuccess()) {
+				stats.onError();
+				System.out.println("consumer group not fully started: " + f.cause().getMessage());
+			}
+		});
+		ScheduledExecutorService scheduler = newScheduler();
+		scheduler.scheduleAtFixedRate(() -> {
+			stats.setConnected(group.getConnectedMembers());
+			System.out.println(stats.receiveIntervalReport(settings.getClients()));
+		}, settings.getReportInterval(), settings.getReportInterval(), TimeUnit.SECONDS);
+
+		try {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(settings.getDuration()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			scheduler.shutdownNow();
+			stats.setConnected(group.getConnectedMembers());
+			group.close();
+			System.out.println(stats.receiveSummary(settings.getClients()));
+			System.out.printf("group %s: handed over: %d  rebalances: %d%n",
+					groupConfig.getGroup(), group.getHandedOver(), group.getRebalances());
+			System.out.print(topicSummary(Collections.singletonList(handler)));
+		}
+	}
+
+	private String dispatchSummary(MqttBenchSettings settings, Collection<MqttDispatcher> dispatchers) {
+		Histogram latency = new Histogram(3);
+		int maxQueued = 0;
+		long dropped = 0;
+		long pauses = 0;
+		for (MqttDispatcher dispatcher : dispatchers) {
+			latency.add(dispatcher.getIntervalLatency(null));
+			maxQueued = Math.max(maxQueued, dispatcher.getMaxQueued());
+			dropped += dispatcher.getDropped();
+			pauses += dispatcher.getPauses();
+		}
+		return String.format("dispatch %s: handler %s  max queued: %d  dropped: %d  read pauses: %d%n",
+				settings.getDispatchMode(), MqttBenchStats.percentiles(latency), maxQueued, dropped, pauses);
+	}
+
+	/**
+	 * Merges the per-client topic state, safe once the event loops are shut down.
+	 */
+	private String topicSummary(Collection<MqttBenchMessageHandler> handlers) {
+		Map<String, MqttBenchMessageHandler.TopicStats> merged = new HashMap<>();
+		for (MqttBenchMessageHandler handler : handlers) {
+			handler.getTopics().forEach((topic, topicStats) ->
+					merged.computeIfAbsent(topic, t -> new MqttBenchMessageHandler.TopicStats()).merge(topicStats));
+		}
+		if (merged.isEmpty()) {
+			return "";
+		}
+		List<Map.Entry<String, MqttBenchMessageHandler.TopicStats>> entries = new ArrayList<>(merged.entrySet());
+		// worst topics first
+		entries.sort(Comparator.comparingLong((Map.Entry<String, MqttBenchMessageHandler.TopicStats> e) -> e.getValue().getLost())
+				.thenComparingLong(e -> e.getValue().getReordered())
+				.thenComparingLong(e -> e.getValue().getLatency().getValueAtPercentile(99))
+				.reversed());
+		StringBuilder sb = new StringBuilder(String.format("per topic (%d topics):%n", entries.size()));
+		for (int i = 0; i < Math.min(entries.size(), TOPIC_SUMMARY_LIMIT); i++) {
+			MqttBenchMessageHandler.TopicStats topicStats = entries.get(i).getValue();
+			sb.append(String.format("  %s  recv: %d  lost: %d  reordered: %d  %s%n",
+					entries.get(i).getKey(), topicStats.getReceived(), topicStats.getLost(), topicStats.getReordered(),
+					MqttBenchStats.percentiles(topicStats.getLatency())));
+		}
+		if (entries.size() > TOPIC_SUMMARY_LIMIT) {
+			sb.append(String.format("  ... %d more%n", entries.size() - TOPIC_SUMMARY_LIMIT));
+		}
+		return sb.toString();
+	}
+
+	private void run(MqttBenchSettings settings, MqttBenchStats stats, MqttHandler defaultHandler, BenchTask task,
+					 IntFunction<String> intervalReport, IntFunction<String> summary) {
+		EventLoopGroup group = MqttTransportFactory.newEventLoopGroup(settings.getTransport(), settings.getThreads());
+		System.out.println("transport: " + MqttTransportFactory.transportOf(group));
+		ScheduledExecutorService scheduler = newScheduler();
+		Queue<BenchClient> clients = new ConcurrentLinkedQueue<>();
+		AtomicInteger launched = new AtomicInteger();
+		// one bucket for the whole run so reconnect storms are capped too
+		MqttConnectLimiter limiter = settings.getConnectLimit() > 0
+				? new MqttConnectLimiter(settings.getConnectLimit(), settings.getConnectLimit()) : null;
+		SslContext sslContext = sslContext(settings);
+		long rampStart = System.nanoTime();
+
+		scheduler.scheduleAtFixedRate(() -> {
+			double elapsed = (System.nanoTime() - rampStart) / 1e9;
+			long due = Math.min(settings.getClients(), (long) (elapsed * settings.getConnectRate()) + 1);
+			while (launched.get() < due) {
+				clients.add(launch(settings, group, limiter, sslContext, stats, defaultHandler, launched.getAndIncrement(), task));
+			}
+		}, 0, RAMP_TICK_MILLIS, TimeUnit.MILLISECONDS);
+		scheduler.scheduleAtFixedRate(() -> System.out.println(intervalReport.apply(settings.getClients())),
+				settings.getReportInterval(), settings.getReportInterval(), TimeUnit.SECONDS);
+
+		try {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(settings.getDuration()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			scheduler.shutdownNow();
+			clients.forEach(BenchClient::stop);
+			group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+			System.out.println(summary.apply(settings.getClients()));
+			if (limiter != null) {
+				System.out.printf("connect limit %d/s: %d attempts delayed%n", settings.getConnectLimit(), limiter.getDelayed());
+			}
+		}
+	}
+
+	/**
+	 * Opens sessions at a fixed arrival rate, each subscribing to its topics and disconnecting after a sampled
+	 * lifetime, and reports connects per second, CONNACK and SUBACK latency, TCP connect and TLS handshake time and
+	 * failures by CONNACK return code or exception. All sessions share one event loop group and one SSL context,
+	 * so building connections is not what limits the rate. Arrivals beyond the maximum of concurrent sessions are
+	 * counted as skipped, and latency is measured from the intended arrival time, see {@link MqttPublishPacer}.
+	 */
+	public void churn(MqttBenchSettings settings) {
+		MqttBenchConnectStats stats = new MqttBenchConnectStats();
+		MqttQoS qos = MqttQoS.valueOf(settings.getQos());
+		EventLoopGroup group = MqttTransportFactory.newEventLoopGroup(settings.getTransport(), settings.getThreads());
+		SslContext sslContext = sslContext(settings);
+		System.out.println("transport: " + MqttTransportFactory.transportOf(group) + (sslContext == null ? "" : " with TLS (" + MqttSslContextFactory.provider() + ")"));
+		Set<MqttClientService> sessions = ConcurrentHashMap.newKeySet();
+		AtomicInteger next = new AtomicInteger();
+		ScheduledExecutorService scheduler = newScheduler();
+		MqttPublishPacer arrivals = new MqttPublishPacer(group.next(), settings.getConnectRate(), intended -> {
+			if (stats.getActive() >= settings.getClients()) {
+				stats.onSkipped();
+				return;
+			}
+			openSession(settings, group, sslContext, qos, next.getAndIncrement(), intended, sessions, stats);
+		}).start(0);
+		scheduler.scheduleAtFixedRate(() -> System.out.println(stats.intervalReport()),
+				settings.getReportInterval(), settings.getReportInterval(), TimeUnit.SECONDS);
+
+		try {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(settings.getDuration()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			scheduler.shutdownNow();
+			arrivals.stop().awaitUninterruptibly();
+			// before the open sessions are torn down, so that does not count as failures
+			System.out.print(stats.summary());
+			sessions.removeIf(client -> {
+				client.disconnect(1);
+				return true;
+			});
+			group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+		}
+	}
+
+	private static void openSession(MqttBenchSettings settings, EventLoopGroup group, SslContext sslContext,
+									MqttQoS qos, int index, long intended, Set<MqttClientService> sessions,
+									MqttBenchConnectStats stats) {
+		MqttClientConfig config = clientConfig(settings, index, null, sslContext);
+		config.setReconnect(false);
+		MqttClientService client = new MqttClientService(config, null);
+		client.setEventLoop(group.next());
+		stats.onAttempt();
+		sessions.add(client);
+		Future<MqttConnectResult> connectFuture;
+		try {
+			connectFuture = client.connect(settings.getHost(), settings.getPort());
+		} catch (RuntimeException e) {
+			sessions.remove(client);
+			stats.onFailed(e.getClass().getSimpleName());
+			return;
+		}
+		// the first of CONNACK, failure or timeout settles the attempt
+		AtomicBoolean settled = new AtomicBoolean();
+		ScheduledFuture<?> timeout = group.schedule(() -> {
+			if (settled.compareAndSet(false, true)) {
+				sessions.remove(client);
+				stats.onFailed("TIMEOUT");
+				client.disconnect(1);
+			}
+		}, config.getTimeoutSeconds(), TimeUnit.SECONDS);
+		connectFuture.addListener(f -> {
+			if (!settled.compareAndSet(false, true) || group.isShuttingDown()) {
+				return;
+			}
+			timeout.cancel(false);
+			MqttConnectResult result = f.isSuccess() ? connectFuture.getNow() : null;
+			if (result == null || !result.isSuccess()) {
+				sessions.remove(client);
+				stats.onFailed(result == null ? f.cause().getClass().getSimpleName() : result.getReturnCode().name());
+				client.disconnect(1);
+				return;
+			}
+			stats.onAccepted(System.nanoTime() - intended, client.getLastTcpConnectNanos(), client.getLastTlsHandshakeNanos(),
+					client.isLastTlsResumed());
+			for (int n = 0; n < settings.getSubscriptions(); n++) {
+				long subscribed = System.nanoTime();
+				client.on(settings.topic(index, n), (topic, messageQos, payload) -> {
+				}, qos).addListener(s -> {
+					if (s.isSuccess()) {
+						stats.onSubscribed(System.nanoTime() - subscribed);
+					} else if (sessions.contains(client)) {
+						// not one the session's own disconnect cut short
+						stats.onSubscribeError();
+					}
+				});
+			}
+			group.schedule(() -> {
+				if (!group.isShuttingDown() && sessions.remove(client)) {
+					stats.onClosed();
+					client.disconnect(1);
+				}
+			}, settings.getLifetime().sampleMillis(settings.getLifetimeMillis()), TimeUnit.MILLISECONDS);
+		});
+	}
+
+	/**
+	 * @return the daemon thread driving ramp-up and the interval reports of a run
+	 */
+	private static ScheduledExecutorService newScheduler() {
+		return Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("toolkit-bench-scheduler", true));
+	}
+
+	/**
+	 * One context for the whole run, so its session cache and parsed keys are shared by every client
+	 * and reconnects resume their TLS sessions, see {@link MqttSslContextFactory}.
+	 *
+	 * @return null without TLS
+	 */
+	private static SslContext sslContext(MqttBenchSettings settings) {
+		if (!settings.isTls()) {
+			return null;
+		}
+		try {
+			return MqttSslContextFactory.client(settings.getCa(), settings.getClientCert(), settings.getClientKey(),
+					settings.isInsecure());
+		} catch (SSLException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Cannot load the TLS certificates: " + e.getMessage(), e);
+		}
+	}
+
+	private static MqttClientConfig clientConfig(MqttBenchSettings settings, int index, MqttConnectLimiter limiter,
+												 SslContext sslContext) {
+		MqttClientConfig config = new MqttClientConfig(sslContext);
+		config.setClientId(settings.clientId(index));
+		config.setUsername(settings.getUsername());
+		config.setPassword(settings.getPassword());
+		config.setKeepAlive(settings.getKeepAlive());
+		config.setReconnect(settings.isReconnect());
+		config.setReconnectMaxDelay(settings.getReconnectMaxDelay());
+		config.setConnectLimiter(limiter);
+		config.setFlushConsolidationLimit(settings.getFlushConsolidationLimit());
+		config.setDispatchMode(settings.getDispatchMode());
+		config.setDispatchThreads(settings.getDispatchThreads());
+		if (settings.isMqtt5()) {
+			config.setProtocolVersion(MqttVersion.MQTT_5);
+			config.setTopicAliasMaximum(settings.getTopicAliasMaximum());
+		}
+		return config;
+	}
+
+	private BenchClient launch(MqttBenchSettings settings, EventLoopGroup group, MqttConnectLimiter limiter,
+							   SslContext sslContext, MqttBenchStats stats, MqttHandler defaultHandler, int index,
+							   BenchTask task) {
+		MqttClientService client = new MqttClientService(clientConfig(settings, index, limiter, sslContext), defaultHandler);
+		// one loop per client, so its pacer runs on the loop of its channel and sends don't hop threads
+		client.setEventLoop(group.next());
+		BenchClient benchClient = new BenchClient(client);
+		client.setCallback(new MqttClientCallback() {
+			@Override
+			public void connectionLost(DisReason reason) {
+				benchClient.down(stats);
+			}
+
+			@Override
+			public void onSuccessfulReconnect() {
+				stats.onRecovered(client.getLastRecoveryNanos());
+				benchClient.up(stats, task, index);
+			}
+
+			@Override
+			public void onReconnectAttempt(int attempt, long delayMillis) {
+				stats.onReconnectAttempt();
+			}
+
+			@Override
+			public void onReconnectFailed(int attempts) {
+				stats.onReconnectFailed();
+			}
+		});
+		try {
+			Future<MqttConnectResult> connectFuture = client.connect(settings.getHost(), settings.getPort());
+			connectFuture.addListener(f -> {
+				MqttConnectResult result = connectFuture.getNow();
+				if (!f.isSuccess() || !result.isSuccess()) {
+					stats.onConnectFailure();
+					return;
+				}
+				benchClient.up(stats, task, index);
+			});
+		} catch (RuntimeException e) {
+			stats.onConnectFailure();
+		}
+		return benchClient;
+	}
+
+	private interface BenchTask {
+
+		/**
+		 * Called on every successful connect, including reconnects. Bench clients use a clean session, so
+		 * subscriptions have to be made again here.
+		 */
+		default void connected(MqttClientService client, int index) {
+		}
+
+		/**
+		 * @return the paced work of a connected client, stopped when the run ends, or null if there is none
+		 */
+		MqttPublishPacer start(MqttClientService client, int index);
+	}
+
+	private static final class BenchClient {
+
+		private final MqttClientService client;
+		private final AtomicBoolean connected = new AtomicBoolean();
+		private boolean started;
+		private boolean stopped;
+		private MqttPublishPacer task;
+
+		BenchClient(MqttClientService client) {
+			this.client = client;
+		}
+
+		/**
+		 * Counts the client as connected, sets up the connection and starts its task on the first connection,
+		 * which may be a reconnect.
+		 */
+		void up(MqttBenchStats stats, BenchTask benchTask, int index) {
+			if (connected.compareAndSet(false, true)) {
+				stats.onConnected();
+			}
+			synchronized (this) {
+				if (stopped) {
+					return;
+				}
+				benchTask.connected(client, index);
+				if (!started) {
+					started = true;
+					task = benchTask.start(client, index);
+				}
+			}
+		}
+
+		void down(MqttBenchStats stats) {
+			if (connected.compareAndSet(true, false)) {
+				stats.onDisconnected();
+			}
+		}
+
+		synchronized void stop() {
+			stopped = true;
+			if (task != null) {
+				task.stop();
+			}
+			if (client.isConnected()) {
+				client.disconnect(1);
+			}
+		}
+	}
+}
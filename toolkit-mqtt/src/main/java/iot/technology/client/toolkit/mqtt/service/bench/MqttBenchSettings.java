@@ -0,0 +1,499 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchMode;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttGroupOrdering;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+
+/**
+ * @author mushuwei
+ */
+public class MqttBenchSettings {
+
+	private String host = "localhost";
+
+	private int port = 1883;
+
+	private String username;
+
+	private String password;
+
+	private String clientIdPrefix = "toolkit-bench";
+
+	private int clients = 100;
+
+	/**
+	 * new connections per second during ramp-up
+	 */
+	private int connectRate = 100;
+
+	/**
+	 * total test duration in seconds, including ramp-up
+	 */
+	private int duration = 60;
+
+	private int threads = 0;
+
+	private MqttTransport transport = MqttTransport.AUTO;
+
+	private int keepAlive = 60;
+
+	/**
+	 * reconnect lost clients with the backoff of {@link iot.technology.client.toolkit.mqtt.service.MqttClientConfig}
+	 */
+	private boolean reconnect;
+
+	private int reconnectMaxDelay = 30;
+
+	/**
+	 * connection attempts per second across all clients, 0 for no limit
+	 */
+	private int connectLimit;
+
+	private boolean mqtt5;
+
+	/**
+	 * see {@link iot.technology.client.toolkit.mqtt.service.MqttClientConfig#setTopicAliasMaximum(int)}
+	 */
+	private int topicAliasMaximum = 64;
+
+	private int reportInterval = 1;
+
+	private boolean tls;
+
+	/**
+	 * trust every broker certificate, for self-signed test brokers
+	 */
+	private boolean insecure;
+
+	/**
+	 * PEM files; without a CA file the JDK's default trust store is used
+	 */
+	private String ca;
+
+	private String clientCert;
+
+	private String clientKey;
+
+	/**
+	 * topic, {@code %i} is replaced with the client index
+	 */
+	private String topic = "toolkit/bench/%i";
+
+	private int qos = 0;
+
+	/**
+	 * messages per second per client
+	 */
+	private double rate = 1;
+
+	private int payloadSize = 64;
+
+	/**
+	 * payload template, see {@link iot.technology.client.toolkit.mqtt.service.template.MqttPayloadTemplate};
+	 * replaces the random payload of {@link #payloadSize} bytes when set
+	 */
+	private String template;
+
+	/**
+	 * prefix payloads with a {@link MqttBenchProbe}
+	 */
+	private boolean probe;
+
+	/**
+	 * messages written per flush, sent with {@code publishBatch} when greater than 1
+	 */
+	private int batchSize = 1;
+
+	/**
+	 * encode the PUBLISH once per client and resend it, see {@link iot.technology.client.toolkit.mqtt.service.domain.MqttPreparedPublish}
+	 */
+	private boolean prepared;
+
+	/**
+	 * see {@link iot.technology.client.toolkit.mqtt.service.MqttClientConfig#setFlushConsolidationLimit(int)}
+	 */
+	private int flushConsolidationLimit;
+
+	/**
+	 * HdrHistogram interval log of publish latency, see {@link MqttBenchStats#setLogWriter}
+	 */
+	private String histogramLog;
+
+	/**
+	 * print the full latency percentile distribution after the summary
+	 */
+	private boolean percentiles;
+
+	private MqttDispatchMode dispatchMode = MqttDispatchMode.INLINE;
+
+	private int dispatchThreads;
+
+	/**
+	 * subscribe as a {@link iot.technology.client.toolkit.mqtt.service.core.MqttConsumerGroup} with this share name
+	 */
+	private String shareGroup;
+
+	private MqttGroupOrdering groupOrdering = MqttGroupOrdering.NONE;
+
+	/**
+	 * topics each churn session subscribes to, see {@link #topic(int, int)}
+	 */
+	private int subscriptions;
+
+	/**
+	 * mean time a churn session stays connected after its CONNACK
+	 */
+	private long lifetimeMillis = 1000;
+
+	private MqttBenchLifetime lifetime = MqttBenchLifetime.FIXED;
+
+	public String clientId(int index) {
+		return clientIdPrefix + "-" + index;
+	}
+
+	public String topic(int index) {
+		return topic.replace("%i", String.valueOf(index));
+	}
+
+	/**
+	 * @return the topic of subscription {@code n} of a client, {@code %n} is replaced with the subscription number
+	 */
+	public String topic(int index, int n) {
+		return topic(index).replace("%n", String.valueOf(n));
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public String getClientIdPrefix() {
+		return clientIdPrefix;
+	}
+
+	public void setClientIdPrefix(String clientIdPrefix) {
+		this.clientIdPrefix = clientIdPrefix;
+	}
+
+	public int getClients() {
+		return clients;
+	}
+
+	public void setClients(int clients) {
+		this.clients = clients;
+	}
+
+	public int getConnectRate() {
+		return connectRate;
+	}
+
+	public void setConnectRate(int connectRate) {
+		this.connectRate = connectRate;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	public void setDuration(int duration) {
+		this.duration = duration;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public MqttTransport getTransport() {
+		return transport;
+	}
+
+	public void setTransport(MqttTransport transport) {
+		this.transport = transport;
+	}
+
+	public int getKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(int keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public boolean isReconnect() {
+		return reconnect;
+	}
+
+	public void setReconnect(boolean reconnect) {
+		this.reconnect = reconnect;
+	}
+
+	public int getReconnectMaxDelay() {
+		return reconnectMaxDelay;
+	}
+
+	public void setReconnectMaxDelay(int reconnectMaxDelay) {
+		this.reconnectMaxDelay = reconnectMaxDelay;
+	}
+
+	public int getConnectLimit() {
+		return connectLimit;
+	}
+
+	public void setConnectLimit(int connectLimit) {
+		this.connectLimit = connectLimit;
+	}
+
+	public boolean isMqtt5() {
+		return mqtt5;
+	}
+
+	public void setMqtt5(boolean mqtt5) {
+		this.mqtt5 = mqtt5;
+	}
+
+	public int getTopicAliasMaximum() {
+		return topicAliasMaximum;
+	}
+
+	public void setTopicAliasMaximum(int topicAliasMaximum) {
+		this.topicAliasMaximum = topicAliasMaximum;
+	}
+
+	public int getReportInterval() {
+		return reportInterval;
+	}
+
+	public void setReportInterval(int reportInterval) {
+		this.reportInterval = reportInterval;
+	}
+
+	public boolean isTls() {
+		return tls;
+	}
+
+	public void setTls(boolean tls) {
+		this.tls = tls;
+	}
+
+	public boolean isInsecure() {
+		return insecure;
+	}
+
+	public void setInsecure(boolean insecure) {
+		this.insecure = insecure;
+	}
+
+	public String getCa() {
+		return ca;
+	}
+
+	public void setCa(String ca) {
+		this.ca = ca;
+	}
+
+	public String getClientCert() {
+		return clientCert;
+	}
+
+	public void setClientCert(String clientCert) {
+		this.clientCert = clientCert;
+	}
+
+	public String getClientKey() {
+		return clientKey;
+	}
+
+	public void setClientKey(String clientKey) {
+		this.clientKey = clientKey;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public void setTopic(String topic) {
+		this.topic = topic;
+	}
+
+	public int getQos() {
+		return qos;
+	}
+
+	public void setQos(int qos) {
+		this.qos = qos;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public int getPayloadSize() {
+		return payloadSize;
+	}
+
+	public void setPayloadSize(int payloadSize) {
+		this.payloadSize = payloadSize;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	public void setTemplate(String template) {
+		this.template = template;
+	}
+
+	public boolean isProbe() {
+		return probe;
+	}
+
+	public void setProbe(boolean probe) {
+		this.probe = probe;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isPrepared() {
+		return prepared;
+	}
+
+	public void setPrepared(boolean prepared) {
+		this.prepared = prepared;
+	}
+
+	public MqttDispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+
+	public void setDispatchMode(MqttDispatchMode dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+
+	public int getDispatchThreads() {
+		return dispatchThreads;
+	}
+
+	public void setDispatchThreads(int dispatchThreads) {
+		this.dispatchThreads = dispatchThreads;
+	}
+
+	public String getShareGroup() {
+		return shareGroup;
+	}
+
+	public void setShareGroup(String shareGroup) {
+		this.shareGroup = shareGroup;
+	}
+
+	public MqttGroupOrdering getGroupOrdering() {
+		return groupOrdering;
+	}
+
+	public void setGroupOrdering(MqttGroupOrdering groupOrdering) {
+		this.groupOrdering = groupOrdering;
+	}
+
+	public String getHistogramLog() {
+		return histogramLog;
+	}
+
+	public void setHistogramLog(String histogramLog) {
+		this.histogramLog = histogramLog;
+	}
+
+	public boolean isPercentiles() {
+		return percentiles;
+	}
+
+	public void setPercentiles(boolean percentiles) {
+		this.percentiles = percentiles;
+	}
+
+	public int getSubscriptions() {
+		return subscriptions;
+	}
+
+	public void setSubscriptions(int subscriptions) {
+		this.subscriptions = subscriptions;
+	}
+
+	public long getLifetimeMillis() {
+		return lifetimeMillis;
+	}
+
+	public void setLifetimeMillis(long lifetimeMillis) {
+		this.lifetimeMillis = lifetimeMillis;
+	}
+
+	public MqttBenchLifetime getLifetime() {
+		return lifetime;
+	}
+
+	public void setLifetime(MqttBenchLifetime lifetime) {
+		this.lifetime = lifetime;
+	}
+
+	public int getFlushConsolidationLimit() {
+		return flushConsolidationLimit;
+	}
+
+	public void setFlushConsolidationLimit(int flushConsolidationLimit) {
+		this.flushConsolidationLimit = flushConsolidationLimit;
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.bench;
+
+import iot.technology.client.toolkit.mqtt.service.core.MqttRetransmissionScheduler;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttFlushCounter;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttTopicAliasHandler;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms shared by all clients of a bench run.
+ * Recording is lock free, reports are taken from the reporter thread only.
+ *
+ * @author mushuwei
+ */
+public class MqttBenchStats {
+
+	private final LongAdder connected = new LongAdder();
+	private final LongAdder connectFailures = new LongAdder();
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder received = new LongAdder();
+	private final LongAdder receivedBytes = new LongAdder();
+	private final LongAdder lost = new LongAdder();
+	private final LongAdder reordered = new LongAdder();
+	private final LongAdder reconnectAttempts = new LongAdder();
+	private final LongAdder reconnectsFailed = new LongAdder();
+	private final LongAdder missed = new LongAdder();
+
+	/**
+	 * PUBACK / PUBCOMP latency in microseconds, from the time the send was scheduled for
+	 */
+	private final Recorder latencyRecorder = new Recorder(3);
+	private final Histogram totalLatency = new Histogram(3);
+	private Histogram intervalLatency;
+
+	/**
+	 * PUBACK / PUBCOMP latency in microseconds, from the time the send actually started
+	 */
+	private final Recorder serviceRecorder = new Recorder(3);
+	private final Histogram totalService = new Histogram(3);
+	private Histogram intervalService;
+
+	/**
+	 * interval histograms of {@link #latencyRecorder} and {@link #serviceRecorder}, tagged "latency" and "service"
+	 */
+	private HistogramLogWriter logWriter;
+	private long logBaseMillis;
+
+	/**
+	 * probe send to receive latency in microseconds
+	 */
+	private final Recorder endToEndRecorder = new Recorder(3);
+	private final Histogram totalEndToEnd = new Histogram(3);
+	private Histogram intervalEndToEnd;
+
+	/**
+	 * connection lost to reconnected in microseconds
+	 */
+	private final Recorder recoveryRecorder = new Recorder(3);
+	private final Histogram totalRecovery = new Histogram(3);
+	private Histogram intervalRecovery;
+
+	private final long startNanos = System.nanoTime();
+	private long lastReportNanos = startNanos;
+	private long lastSent;
+	private long lastCompleted;
+	private long lastFlushes = MqttFlushCounter.INSTANCE.getFlushes();
+	private final long startFlushes = lastFlushes;
+	private long lastReceived;
+	private long lastReceivedBytes;
+
+	public void onConnected() {
+		connected.increment();
+	}
+
+	public void onDisconnected() {
+		connected.decrement();
+	}
+
+	/**
+	 * For clients that are not counted one by one, such as the members of a consumer group.
+	 */
+	public void setConnected(long count) {
+		connected.reset();
+		connected.add(count);
+	}
+
+	public void onConnectFailure() {
+		connectFailures.increment();
+	}
+
+	public void onSent() {
+		sent.increment();
+	}
+
+	/**
+	 * @param latencyNanos completion minus the time the send was scheduled for
+	 * @param serviceNanos completion minus the time the send started
+	 */
+	public void onCompleted(long latencyNanos, long serviceNanos) {
+		completed.increment();
+		latencyRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+		serviceRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(serviceNanos));
+	}
+
+	/**
+	 * A scheduled send that could not be made because the client was not connected.
+	 */
+	public void onMissed() {
+		missed.increment();
+	}
+
+	/**
+	 * Writes every interval's histograms to an HdrHistogram log, which {@code HistogramLogProcessor} and
+	 * HdrHistogram's plotter read, so runs can be compared percentile by percentile.
+	 */
+	public synchronized void setLogWriter(HistogramLogWriter logWriter) {
+		this.logWriter = logWriter;
+		this.logBaseMillis = System.currentTimeMillis();
+		logWriter.outputComment("toolkit mqtt bench, values in milliseconds");
+		logWriter.outputLogFormatVersion();
+		logWriter.outputStartTime(logBaseMillis);
+		logWriter.setBaseTime(logBaseMillis);
+		logWriter.outputLegend();
+	}
+
+	public void onError() {
+		errors.increment();
+	}
+
+	public void onReceived(int bytes) {
+		received.increment();
+		receivedBytes.add(bytes);
+	}
+
+	public void onEndToEnd(long latencyMicros) {
+		endToEndRecorder.recordValue(latencyMicros);
+	}
+
+	public void onLost(long count) {
+		lost.add(count);
+	}
+
+	public void onReordered() {
+		reordered.increment();
+	}
+
+	public void onReconnectAttempt() {
+		reconnectAttempts.increment();
+	}
+
+	public void onReconnectFailed() {
+		reconnectsFailed.increment();
+	}
+
+	public void onRecovered(long recoveryNanos) {
+		recoveryRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(recoveryNanos));
+	}
+
+	public synchronized String intervalReport(int targetClients) {
+		long now = System.nanoTime();
+		double seconds = Math.max(now - lastReportNanos, 1) / 1e9;
+		long sentNow = sent.sum();
+		long completedNow = completed.sum();
+		takeLatencyIntervals();
+
+		long flushesNow = MqttFlushCounter.INSTANCE.getFlushes();
+
+		String report = String.format("[%6.1fs] conn: %d/%d  sent: %.0f msg/s  acked: %.0f msg/s  flush/msg: %s  %s  retx: %d  timers: %d  missed: %d  err: %d  conn-err: %d",
+				(now - startNanos) / 1e9,
+				connected.sum(), targetClients,
+				(sentNow - lastSent) / seconds,
+				(completedNow - lastCompleted) / seconds,
+				ratio(flushesNow - lastFlushes, sentNow - lastSent),
+				percentiles(intervalLatency),
+				MqttRetransmissionScheduler.getTotalRetransmits(),
+				MqttRetransmissionScheduler.getQueueSize(),
+				missed.sum(),
+				errors.sum(),
+				connectFailures.sum());
+		lastReportNanos = now;
+		lastSent = sentNow;
+		lastCompleted = completedNow;
+		lastFlushes = flushesNow;
+		return report;
+	}
+
+	private void takeLatencyIntervals() {
+		intervalLatency = latencyRecorder.getIntervalHistogram(intervalLatency);
+		totalLatency.add(intervalLatency);
+		intervalService = serviceRecorder.getIntervalHistogram(intervalService);
+		totalService.add(intervalService);
+		if (logWriter != null) {
+			log("latency", intervalLatency);
+			log("service", intervalService);
+		}
+	}
+
+	private void log(String tag, Histogram interval) {
+		interval.setTag(tag);
+		logWriter.outputIntervalHistogram((interval.getStartTimeStamp() - logBaseMillis) / 1000.0,
+				(interval.getEndTimeStamp() - logBaseMillis) / 1000.0, interval, 1000.0);
+	}
+
+	public synchronized String summary(int targetClients) {
+		takeLatencyIntervals();
+		double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("duration: %.1fs  clients: %d/%d  connect failures: %d%n",
+				seconds, connected.sum(), targetClients, connectFailures.sum()));
+		sb.append(String.format("sent: %d (%.0f msg/s)  acked: %d (%.0f msg/s)  retransmits: %d  missed: %d  errors: %d%n",
+				sent.sum(), sent.sum() / seconds, completed.sum(), completed.sum() / seconds,
+				MqttRetransmissionScheduler.getTotalRetransmits(), missed.sum(), errors.sum()));
+		sb.append(String.format("flushes: %d (%s per message, each at least one write syscall)%n",
+				MqttFlushCounter.INSTANCE.getFlushes() - startFlushes,
+				ratio(MqttFlushCounter.INSTANCE.getFlushes() - startFlushes, sent.sum())));
+		long aliased = MqttTopicAliasHandler.getTotalHits() + MqttTopicAliasHandler.getTotalMisses();
+		if (aliased > 0) {
+			sb.append(String.format("topic aliases: %d hits, %d misses, %s saved%n",
+					MqttTopicAliasHandler.getTotalHits(), MqttTopicAliasHandler.getTotalMisses(),
+					bytes(MqttTopicAliasHandler.getTotalBytesSaved())));
+		}
+		sb.append(reconnectSummary());
+		sb.append("latency ").append(percentiles(totalLatency));
+		if (totalLatency.getTotalCount() > 0) {
+			sb.append(String.format("  p99.9: %s  max: %s",
+					millis(totalLatency.getValueAtPercentile(99.9)),
+					millis(totalLatency.getMaxValue())));
+		}
+		sb.append(String.format("%nservice time ")).append(percentiles(totalService));
+		if (totalService.getTotalCount() > 0) {
+			sb.append(String.format("  p99.9: %s  max: %s",
+					millis(totalService.getValueAtPercentile(99.9)),
+					millis(totalService.getMaxValue())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the full percentile distribution of the run's latency in milliseconds, in HdrHistogram's text format
+	 */
+	public synchronized String latencyDistribution() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream printStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+		totalLatency.outputPercentileDistribution(printStream, 5, 1000.0);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	public synchronized String receiveIntervalReport(int targetClients) {
+		long now = System.nanoTime();
+		double seconds = Math.max(now - lastReportNanos, 1) / 1e9;
+		long receivedNow = received.sum();
+		long bytesNow = receivedBytes.sum();
+		intervalEndToEnd = endToEndRecorder.getIntervalHistogram(intervalEndToEnd);
+		totalEndToEnd.add(intervalEndToEnd);
+
+		String report = String.format("[%6.1fs] conn: %d/%d  recv: %.0f msg/s  %s/s  e2e %s  lost: %d  reordered: %d",
+				(now - startNanos) / 1e9,
+				connected.sum(), targetClients,
+				(receivedNow - lastReceived) / seconds,
+				bytes((bytesNow - lastReceivedBytes) / seconds),
+				percentiles(intervalEndToEnd),
+				lost.sum(),
+				reordered.sum());
+		lastReportNanos = now;
+		lastReceived = receivedNow;
+		lastReceivedBytes = bytesNow;
+		return report;
+	}
+
+	public synchronized String receiveSummary(int targetClients) {
+		intervalEndToEnd = endToEndRecorder.getIntervalHistogram(intervalEndToEnd);
+		totalEndToEnd.add(intervalEndToEnd);
+		double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("duration: %.1fs  clients: %d/%d  connect failures: %d  subscribe errors: %d%n",
+				seconds, connected.sum(), targetClients, connectFailures.sum(), errors.sum()));
+		sb.append(String.format("received: %d (%.0f msg/s, %s/s)  lost: %d  reordered: %d%n",
+				received.sum(), received.sum() / seconds, bytes(receivedBytes.sum() / seconds),
+				lost.sum(), reordered.sum()));
+		sb.append(reconnectSummary());
+		sb.append("e2e latency ").append(percentiles(totalEndToEnd));
+		if (totalEndToEnd.getTotalCount() > 0) {
+			sb.append(String.format("  p99.9: %s  max: %s",
+					millis(totalEndToEnd.getValueAtPercentile(99.9)),
+					millis(totalEndToEnd.getMaxValue())));
+		}
+		return sb.toString();
+	}
+
+	private String reconnectSummary() {
+		intervalRecovery = recoveryRecorder.getIntervalHistogram(intervalRecovery);
+		totalRecovery.add(intervalRecovery);
+		if (reconnectAttempts.sum() == 0) {
+			return "";
+		}
+		return String.format("reconnects: %d attempts  %d recovered  %d given up  time to recover %s%n",
+				reconnectAttempts.sum(), totalRecovery.getTotalCount(), reconnectsFailed.sum(), percentiles(totalRecovery));
+	}
+
+	static String percentiles(Histogram histogram) {
+		if (histogram.getTotalCount() == 0) {
+			return "p50: -  p90: -  p99: -";
+		}
+		return String.format("p50: %s  p90: %s  p99: %s",
+				millis(histogram.getValueAtPercentile(50)),
+				millis(histogram.getValueAtPercentile(90)),
+				millis(histogram.getValueAtPercentile(99)));
+	}
+
+	private static String ratio(long count, long messages) {
+		return messages == 0 ? "-" : String.format("%.3f", (double) count / messages);
+	}
+
+	private static String millis(long micros) {
+		return String.format("%.2fms", micros / 1000.0);
+	}
+
+	private static String bytes(double bytes) {
+		if (bytes >= 1024 * 1024) {
+			return String.format("%.1fMB", bytes / (1024 * 1024));
+		}
+		if (bytes >= 1024) {
+			return String.format("%.1fKB", bytes / 1024);
+		}
+		return String.format("%.0fB", bytes);
+	}
+
+	public long getConnected() {
+		return connected.sum();
+	}
+
+	public long getSent() {
+		return sent.sum();
+	}
+
+	public long getCompleted() {
+		return completed.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public long getReceived() {
+		return received.sum();
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.broker;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.mqtt.*;
+import iot.technology.client.toolkit.mqtt.service.core.MqttTopicTrie;
+import iot.technology.client.toolkit.mqtt.service.core.MqttTransportFactory;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttStoredMessage;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttSubscription;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttTopicAliasHandler;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small in-process MQTT 3.1.1 / 5 broker on netty-codec-mqtt, the loopback stand-in for tests and benchmarks.
+ * <p>
+ * It handles QoS 0, 1 and 2 in both directions, retained messages, wills, wildcard routing through
+ * {@link MqttTopicTrie}, shared subscriptions and inbound MQTT 5 topic aliases. Sessions live only as long as their connection.
+ * {@link MqttBrokerConfig} adds forwarding latency, delayed acknowledgements, packet loss and periodic
+ * disconnects, to exercise the client's back-pressure, retransmission and reconnect paths.
+ *
+ * @author mushuwei
+ */
+public final class MqttBroker implements Closeable {
+
+	private static final String SHARE_PREFIX = "$share/";
+
+	private static final MqttTopicTrie.Visitor<MqttPublishMessage> ROUTE = (subscription, message) -> {
+		subscription.getHandler().onMessage(message.variableHeader().topicName(), message.fixedHeader().qosLevel(),
+				message.payload());
+		return true;
+	};
+
+	private static final MqttTopicTrie.Visitor<MqttStoredMessage> RETAINED = (subscription, message) -> {
+		subscription.getHandler().onMessage(message.getTopic(), message.getQos(), Unpooled.wrappedBuffer(message.getPayload()));
+		return true;
+	};
+
+	private final MqttBrokerConfig config;
+	private final MqttBrokerStats stats = new MqttBrokerStats();
+
+	private final MqttTopicTrie subscriptions = new MqttTopicTrie();
+	/**
+	 * by topic filter without the share prefix, guarded by this, the trie only holds what is in here
+	 */
+	private final Map<String, MqttBrokerSubscribers> subscribers = new HashMap<>();
+	private final Map<String, MqttBrokerSession> sessions = new ConcurrentHashMap<>();
+	private final Map<String, MqttStoredMessage> retained = new ConcurrentHashMap<>();
+
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
+	private Channel serverChannel;
+
+	public MqttBroker(MqttBrokerConfig config) {
+		if (config == null) {
+			throw new NullPointerException("config");
+		}
+		this.config = config;
+	}
+
+	/**
+	 * Binds the listening socket, returns once the broker accepts connections.
+	 */
+	public MqttBroker start() throws InterruptedException {
+		bossGroup = MqttTransportFactory.newEventLoopGroup(config.getTransport(), 1);
+		workerGroup = MqttTransportFactory.newEventLoopGroup(config.getTransport(), config.getThreads());
+		ServerBootstrap bootstrap = new ServerBootstrap();
+		MqttTransportFactory.configure(bootstrap, bossGroup, workerGroup);
+		bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
+			@Override
+			protected void initChannel(SocketChannel ch) {
+				ch.pipeline().addLast("mqttDecoder", new MqttDecoder(config.getMaxBytesInMessage()));
+				ch.pipeline().addLast("mqttEncoder", MqttEncoder.INSTANCE);
+				ch.pipeline().addLast("topicAliasHandler", new MqttTopicAliasHandler(config.getTopicAliasMaximum()));
+				ch.pipeline().addLast("brokerHandler", new MqttBrokerHandler(MqttBroker.this));
+			}
+		});
+		try {
+			serverChannel = bootstrap.bind(config.getHost(), config.getPort()).sync().channel();
+		} catch (InterruptedException | RuntimeException e) {
+			close();
+			throw e;
+		}
+		long kickInterval = config.getKickIntervalSeconds();
+		if (kickInterval > 0) {
+			workerGroup.next().scheduleAtFixedRate(this::disconnectAll, kickInterval, kickInterval, TimeUnit.SECONDS);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the port the broker listens on, the chosen one when configured with 0
+	 */
+	public int getPort() {
+		return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+	}
+
+	public MqttTransport getTransport() {
+		return MqttTransportFactory.transportOf(workerGroup);
+	}
+
+	public MqttBrokerConfig getConfig() {
+		return config;
+	}
+
+	public MqttBrokerStats getStats() {
+		return stats;
+	}
+
+	public int getRetainedCount() {
+		return retained.size();
+	}
+
+	/**
+	 * Closes every client connection without a DISCONNECT, so clients see a lost connection.
+	 */
+	public void disconnectAll() {
+		for (MqttBrokerSession session : sessions.values()) {
+			session.getChannel().close();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (serverChannel != null) {
+			serverChannel.close().syncUninterruptibly();
+		}
+		if (workerGroup != null) {
+			workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+		}
+		if (bossGroup != null) {
+			bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+		}
+	}
+
+	boolean shouldDrop() {
+		double lossRate = config.getLossRate();
+		return lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate;
+	}
+
+	void register(MqttBrokerSession session) {
+		stats.onConnected();
+		MqttBrokerSession previous = sessions.put(session.getClientId(), session);
+		if (previous != null) {
+			// a client connecting again with the same identifier takes over
+			previous.getChannel().close();
+		}
+	}
+
+	void unregister(MqttBrokerSession session) {
+		stats.onDisconnected();
+		sessions.remove(session.getClientId(), session);
+		for (String filter : session.getFilters()) {
+			unsubscribe(session, filter);
+		}
+		if (session.hasWill()) {
+			MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, session.getWillQos(),
+					session.isWillRetain(), 0);
+			MqttPublishMessage will = new MqttPublishMessage(fixedHeader,
+					new MqttPublishVariableHeader(session.getWillTopic(), -1), Unpooled.wrappedBuffer(session.getWillMessage()));
+			try {
+				publish(will);
+			} finally {
+				will.release();
+			}
+		}
+	}
+
+	/**
+	 * Stores or clears the retained message and forwards it to every matching subscription.
+	 * The caller keeps ownership of the message.
+	 */
+	void publish(MqttPublishMessage message) {
+		String topic = message.variableHeader().topicName();
+		if (message.fixedHeader().isRetain()) {
+			if (message.payload().isReadable()) {
+				retained.put(topic, new MqttStoredMessage(0, topic, message.fixedHeader().qosLevel(), true,
+						ByteBufUtil.getBytes(message.payload()), false));
+			} else {
+				retained.remove(topic);
+			}
+		}
+		subscriptions.match(topic, message, ROUTE);
+	}
+
+	/**
+	 * @param filter a topic filter or a shared subscription {@code $share/<group>/<filter>}
+	 */
+	synchronized void subscribe(MqttBrokerSession session, String filter, MqttQoS qos) {
+		String topicFilter = topicFilter(filter);
+		MqttBrokerSubscribers filterSubscribers = subscribers.get(topicFilter);
+		if (filterSubscribers == null) {
+			filterSubscribers = new MqttBrokerSubscribers();
+			subscribers.put(topicFilter, filterSubscribers);
+			subscriptions.put(new MqttSubscription(topicFilter, filterSubscribers, false, MqttQoS.EXACTLY_ONCE));
+		}
+		filterSubscribers.put(session, shareGroup(filter), qos);
+		session.getFilters().add(filter);
+	}
+
+	/**
+	 * @return false if the session was not subscribed to the filter
+	 */
+	synchronized boolean unsubscribe(MqttBrokerSession session, String filter) {
+		if (!session.getFilters().remove(filter)) {
+			return false;
+		}
+		String topicFilter = topicFilter(filter);
+		MqttBrokerSubscribers filterSubscribers = subscribers.get(topicFilter);
+		if (filterSubscribers != null && filterSubscribers.remove(session, shareGroup(filter))) {
+			subscribers.remove(topicFilter);
+			subscriptions.remove(topicFilter);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends the retained messages matching newly granted filters, flagged as retained.
+	 */
+	void sendRetained(MqttBrokerSession session, Map<String, MqttQoS> granted) {
+		if (retained.isEmpty() || granted.isEmpty()) {
+			return;
+		}
+		MqttTopicTrie filters = new MqttTopicTrie();
+		for (Map.Entry<String, MqttQoS> entry : granted.entrySet()) {
+			MqttQoS grantedQos = entry.getValue();
+			filters.put(new MqttSubscription(entry.getKey(),
+					(topic, qos, payload) -> session.deliver(topic, lower(qos, grantedQos), true, payload), false, grantedQos));
+		}
+		for (MqttStoredMessage message : retained.values()) {
+			filters.match(message.getTopic(), message, RETAINED);
+		}
+	}
+
+	/**
+	 * @return the group of a shared subscription, null for a plain topic filter
+	 */
+	static String shareGroup(String filter) {
+		if (!filter.startsWith(SHARE_PREFIX)) {
+			return null;
+		}
+		int end = filter.indexOf('/', SHARE_PREFIX.length());
+		return end < 0 ? null : filter.substring(SHARE_PREFIX.length(), end);
+	}
+
+	/**
+	 * @return the filter matched against topics, without the prefix of a shared subscription
+	 */
+	static String topicFilter(String filter) {
+		String group = shareGroup(filter);
+		return group == null ? filter : filter.substring(SHARE_PREFIX.length() + group.length() + 1);
+	}
+
+	static MqttQoS lower(MqttQoS a, MqttQoS b) {
+		return a.value() <= b.value() ? a : b;
+	}
+
+	/**
+	 * @return true if wildcards only appear as whole levels, and {@code #} only as the last one;
+	 *         a shared subscription also needs a group without wildcards
+	 */
+	static boolean isValidFilter(String filter) {
+		if (filter.startsWith(SHARE_PREFIX)) {
+			String group = shareGroup(filter);
+			if (group == null || group.isEmpty() || group.indexOf('+') >= 0 || group.indexOf('#') >= 0) {
+				return false;
+			}
+			filter = topicFilter(filter);
+		}
+		if (filter.isEmpty()) {
+			return false;
+		}
+		String[] levels = filter.split("/", -1);
+		for (int i = 0; i < levels.length; i++) {
+			String level = levels[i];
+			if (level.indexOf('#') >= 0 && (!level.equals("#") || i != levels.length - 1)) {
+				return false;
+			}
+			if (level.indexOf('+') >= 0 && !level.equals("+")) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
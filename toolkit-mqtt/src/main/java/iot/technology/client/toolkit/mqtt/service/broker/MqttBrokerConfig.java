@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.broker;
+
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+
+/**
+ * Settings of the embedded {@link MqttBroker}, including the faults it injects.
+ *
+ * @author mushuwei
+ */
+public final class MqttBrokerConfig {
+
+	private String host = "127.0.0.1";
+	private int port = 1883;
+	private int threads = 0;
+	private MqttTransport transport = MqttTransport.AUTO;
+	private int maxBytesInMessage = 8092;
+	private int topicAliasMaximum = 64;
+
+	private long latencyMillis = 0L;
+	private long ackDelayMillis = 0L;
+	private double lossRate = 0;
+	private long kickIntervalSeconds = 0L;
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		if (host == null) {
+			throw new NullPointerException("host");
+		}
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @param port the port to listen on, 0 picks a free one, see {@link MqttBroker#getPort()}
+	 * @throws IllegalArgumentException if port is outside 0 to 65535.
+	 */
+	public void setPort(int port) {
+		if (port < 0 || port > 0xffff) {
+			throw new IllegalArgumentException("port must be >= 0 and <= 65535");
+		}
+		this.port = port;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads event loops serving the connections, 0 for Netty's default of twice the number of cores
+	 * @throws IllegalArgumentException if threads is negative.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 0) {
+			throw new IllegalArgumentException("threads must be >= 0");
+		}
+		this.threads = threads;
+	}
+
+	public MqttTransport getTransport() {
+		return transport;
+	}
+
+	public void setTransport(MqttTransport transport) {
+		if (transport == null) {
+			throw new NullPointerException("transport");
+		}
+		this.transport = transport;
+	}
+
+	public int getMaxBytesInMessage() {
+		return maxBytesInMessage;
+	}
+
+	/**
+	 * @param maxBytesInMessage
+	 * @throws IllegalArgumentException if maxBytesInMessage is smaller than 1 or greater than 256_000_000.
+	 */
+	public void setMaxBytesInMessage(int maxBytesInMessage) {
+		if (maxBytesInMessage <= 0 || maxBytesInMessage > 256_000_000) {
+			throw new IllegalArgumentException("maxBytesInMessage must be > 0 or < 256_000_000");
+		}
+		this.maxBytesInMessage = maxBytesInMessage;
+	}
+
+	public int getTopicAliasMaximum() {
+		return topicAliasMaximum;
+	}
+
+	/**
+	 * Sets the Topic Alias Maximum advertised to MQTT 5 clients in CONNACK. Defaults to 64, 0 disables aliases.
+	 *
+	 * @param topicAliasMaximum
+	 * @throws IllegalArgumentException if topicAliasMaximum is outside 0 to 65535.
+	 */
+	public void setTopicAliasMaximum(int topicAliasMaximum) {
+		if (topicAliasMaximum < 0 || topicAliasMaximum > 0xffff) {
+			throw new IllegalArgumentException("topicAliasMaximum must be >= 0 and <= 65535");
+		}
+		this.topicAliasMaximum = topicAliasMaximum;
+	}
+
+	public long getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	/**
+	 * Delays every PUBLISH forwarded to a subscriber. Defaults to 0.
+	 *
+	 * @param latencyMillis
+	 * @throws IllegalArgumentException if latencyMillis is negative.
+	 */
+	public void setLatencyMillis(long latencyMillis) {
+		if (latencyMillis < 0) {
+			throw new IllegalArgumentException("latencyMillis must be >= 0");
+		}
+		this.latencyMillis = latencyMillis;
+	}
+
+	public long getAckDelayMillis() {
+		return ackDelayMillis;
+	}
+
+	/**
+	 * Delays PUBACK, PUBREC and PUBCOMP sent to publishers, which holds their in-flight window open. Defaults to 0.
+	 *
+	 * @param ackDelayMillis
+	 * @throws IllegalArgumentException if ackDelayMillis is negative.
+	 */
+	public void setAckDelayMillis(long ackDelayMillis) {
+		if (ackDelayMillis < 0) {
+			throw new IllegalArgumentException("ackDelayMillis must be >= 0");
+		}
+		this.ackDelayMillis = ackDelayMillis;
+	}
+
+	public double getLossRate() {
+		return lossRate;
+	}
+
+	/**
+	 * Sets the probability that a PUBLISH or acknowledgement sent by the broker is silently dropped,
+	 * which makes clients retransmit. Defaults to 0.
+	 *
+	 * @param lossRate
+	 * @throws IllegalArgumentException if lossRate is outside 0 to 1.
+	 */
+	public void setLossRate(double lossRate) {
+		if (!(lossRate >= 0 && lossRate <= 1)) {
+			throw new IllegalArgumentException("lossRate must be >= 0 and <= 1");
+		}
+		this.lossRate = lossRate;
+	}
+
+	public long getKickIntervalSeconds() {
+		return kickIntervalSeconds;
+	}
+
+	/**
+	 * Closes every client connection at this interval, as if the broker restarted. Defaults to 0, never.
+	 *
+	 * @param kickIntervalSeconds
+	 * @throws IllegalArgumentException if kickIntervalSeconds is negative.
+	 */
+	public void setKickIntervalSeconds(long kickIntervalSeconds) {
+		if (kickIntervalSeconds < 0) {
+			throw new IllegalArgumentException("kickIntervalSeconds must be >= 0");
+		}
+		this.kickIntervalSeconds = kickIntervalSeconds;
+	}
+}
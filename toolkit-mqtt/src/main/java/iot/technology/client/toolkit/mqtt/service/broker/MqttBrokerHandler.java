@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.broker;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.mqtt.*;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broker side protocol handling of one connection, see {@link MqttBroker}.
+ *
+ * @author mushuwei
+ */
+final class MqttBrokerHandler extends SimpleChannelInboundHandler<MqttMessage> {
+
+	private static final short UNSUBACK_SUCCESS = 0x00;
+	private static final short UNSUBACK_NO_SUBSCRIPTION_EXISTED = 0x11;
+
+	private final MqttBroker broker;
+	private MqttBrokerSession session;
+
+	MqttBrokerHandler(MqttBroker broker) {
+		this.broker = broker;
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, MqttMessage msg) throws Exception {
+		if (msg.decoderResult().isFailure()) {
+			handleDecoderFailure(ctx, msg);
+			return;
+		}
+		MqttMessageType type = msg.fixedHeader().messageType();
+		if (session == null && type != MqttMessageType.CONNECT) {
+			ctx.close();
+			return;
+		}
+		switch (type) {
+			case CONNECT:
+				handleConnect(ctx, (MqttConnectMessage) msg);
+				break;
+			case PUBLISH:
+				handlePublish(ctx, (MqttPublishMessage) msg);
+				break;
+			case PUBACK:
+			case PUBCOMP:
+				session.onAcknowledged(packetId(msg));
+				break;
+			case PUBREC:
+				session.write(new MqttMessage(new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+						MqttMessageIdVariableHeader.from(packetId(msg))));
+				break;
+			case PUBREL:
+				session.onQos2Released(packetId(msg));
+				session.acknowledge(new MqttMessage(new MqttFixedHeader(MqttMessageType.PUBCOMP, false, MqttQoS.AT_MOST_ONCE, false, 0),
+						MqttMessageIdVariableHeader.from(packetId(msg))));
+				break;
+			case SUBSCRIBE:
+				handleSubscribe((MqttSubscribeMessage) msg);
+				break;
+			case UNSUBSCRIBE:
+				handleUnsubscribe((MqttUnsubscribeMessage) msg);
+				break;
+			case PINGREQ:
+				session.write(new MqttMessage(new MqttFixedHeader(MqttMessageType.PINGRESP, false, MqttQoS.AT_MOST_ONCE, false, 0)));
+				break;
+			case DISCONNECT:
+				session.clearWill();
+				ctx.close();
+				break;
+			default:
+				// CONNACK, SUBACK and the like only travel from broker to client
+				ctx.close();
+				break;
+		}
+	}
+
+	private void handleDecoderFailure(ChannelHandlerContext ctx, MqttMessage msg) {
+		if (msg.decoderResult().cause() instanceof MqttUnacceptableProtocolVersionException) {
+			ctx.writeAndFlush(MqttMessageBuilders.connAck()
+					.returnCode(MqttConnectReturnCode.CONNECTION_REFUSED_UNACCEPTABLE_PROTOCOL_VERSION)
+					.build()).addListener(ChannelFutureListener.CLOSE);
+			return;
+		}
+		ctx.close();
+	}
+
+	private void handleConnect(ChannelHandlerContext ctx, MqttConnectMessage msg) {
+		if (session != null) {
+			// a second CONNECT is a protocol violation
+			ctx.close();
+			return;
+		}
+		MqttConnectVariableHeader header = msg.variableHeader();
+		MqttVersion version = MqttVersion.fromProtocolNameAndLevel(header.name(), (byte) header.version());
+		String clientId = msg.payload().clientIdentifier();
+		boolean assigned = clientId == null || clientId.isEmpty();
+		if (assigned) {
+			if (version != MqttVersion.MQTT_5 && !header.isCleanSession()) {
+				ctx.writeAndFlush(MqttMessageBuilders.connAck()
+						.returnCode(MqttConnectReturnCode.CONNECTION_REFUSED_IDENTIFIER_REJECTED)
+						.build()).addListener(ChannelFutureListener.CLOSE);
+				return;
+			}
+			clientId = "toolkit-broker-" + ctx.channel().id().asShortText();
+		}
+
+		session = new MqttBrokerSession(broker, ctx.channel(), clientId, version);
+		if (header.isWillFlag()) {
+			session.setWill(msg.payload().willTopic(), msg.payload().willMessageInBytes(),
+					MqttQoS.valueOf(header.willQos()), header.isWillRetain());
+		}
+		if (header.keepAliveTimeSeconds() > 0) {
+			// the spec allows one and a half keep alive periods of silence
+			ctx.pipeline().addFirst("idleStateHandler",
+					new IdleStateHandler(header.keepAliveTimeSeconds() * 1500L, 0, 0, TimeUnit.MILLISECONDS));
+		}
+		broker.register(session);
+
+		MqttProperties properties = MqttProperties.NO_PROPERTIES;
+		if (version == MqttVersion.MQTT_5) {
+			properties = new MqttProperties();
+			if (broker.getConfig().getTopicAliasMaximum() > 0) {
+				properties.add(new MqttProperties.IntegerProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS_MAXIMUM.value(),
+						broker.getConfig().getTopicAliasMaximum()));
+			}
+			if (assigned) {
+				properties.add(new MqttProperties.StringProperty(
+						MqttProperties.MqttPropertyType.ASSIGNED_CLIENT_IDENTIFIER.value(), clientId));
+			}
+		}
+		session.write(MqttMessageBuilders.connAck()
+				.returnCode(MqttConnectReturnCode.CONNECTION_ACCEPTED)
+				.sessionPresent(false)
+				.properties(properties)
+				.build());
+	}
+
+	private void handlePublish(ChannelHandlerContext ctx, MqttPublishMessage msg) {
+		String topic = msg.variableHeader().topicName();
+		if (topic.isEmpty() || topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0) {
+			ctx.close();
+			return;
+		}
+		broker.getStats().onReceived(msg.payload().readableBytes());
+		int packetId = msg.variableHeader().packetId();
+		switch (msg.fixedHeader().qosLevel()) {
+			case AT_MOST_ONCE:
+				broker.publish(msg);
+				break;
+			case AT_LEAST_ONCE:
+				broker.publish(msg);
+				session.acknowledge(new MqttPubAckMessage(new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
+						MqttMessageIdVariableHeader.from(packetId)));
+				break;
+			case EXACTLY_ONCE:
+				// a retransmitted PUBLISH before PUBREL is acknowledged again but not routed twice
+				if (session.onQos2Received(packetId)) {
+					broker.publish(msg);
+				}
+				session.acknowledge(new MqttMessage(new MqttFixedHeader(MqttMessageType.PUBREC, false, MqttQoS.AT_MOST_ONCE, false, 0),
+						MqttMessageIdVariableHeader.from(packetId)));
+				break;
+			default:
+				ctx.close();
+				break;
+		}
+	}
+
+	private void handleSubscribe(MqttSubscribeMessage msg) {
+		MqttMessageBuilders.SubAckBuilder subAck = MqttMessageBuilders.subAck().packetId(msg.variableHeader().messageId());
+		Map<String, MqttQoS> granted = new LinkedHashMap<>();
+		for (MqttTopicSubscription subscription : msg.payload().topicSubscriptions()) {
+			String filter = subscription.topicName();
+			if (!MqttBroker.isValidFilter(filter)) {
+				subAck.addGrantedQos(MqttQoS.FAILURE);
+				continue;
+			}
+			MqttQoS qos = subscription.qualityOfService();
+			broker.subscribe(session, filter, qos);
+			if (MqttBroker.shareGroup(filter) == null) {
+				// retained messages are not sent to shared subscriptions
+				granted.put(filter, qos);
+			}
+			subAck.addGrantedQos(qos);
+		}
+		session.write(subAck.build());
+		broker.sendRetained(session, granted);
+	}
+
+	private void handleUnsubscribe(MqttUnsubscribeMessage msg) {
+		MqttMessageBuilders.UnsubAckBuilder unsubAck = MqttMessageBuilders.unsubAck().packetId(msg.variableHeader().messageId());
+		for (String filter : msg.payload().topics()) {
+			boolean removed = broker.unsubscribe(session, filter);
+			if (session.getVersion() == MqttVersion.MQTT_5) {
+				unsubAck.addReasonCode(removed ? UNSUBACK_SUCCESS : UNSUBACK_NO_SUBSCRIPTION_EXISTED);
+			}
+		}
+		session.write(unsubAck.build());
+	}
+
+	private static int packetId(MqttMessage msg) {
+		return ((MqttMessageIdVariableHeader) msg.variableHeader()).messageId();
+	}
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if (evt instanceof IdleStateEvent) {
+			ctx.close();
+			return;
+		}
+		super.userEventTriggered(ctx, evt);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (session != null) {
+			broker.unregister(session);
+		}
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		ctx.close();
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.broker;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.mqtt.*;
+import io.netty.util.ReferenceCountUtil;
+import iot.technology.client.toolkit.mqtt.service.core.MqttPacketIdAllocator;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttBackpressureException;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One client connection of the {@link MqttBroker}. Sessions are not persisted: a reconnecting client always starts clean.
+ * <p>
+ * Everything except {@link #deliver} runs on the connection's event loop. Writes are flushed once per
+ * event loop turn, so a burst of messages routed to the same subscriber shares a syscall.
+ *
+ * @author mushuwei
+ */
+final class MqttBrokerSession {
+
+	private final MqttBroker broker;
+	private final Channel channel;
+	private final String clientId;
+	private final MqttVersion version;
+
+	/**
+	 * identifiers of QoS 1/2 messages sent to the client and not yet acknowledged
+	 */
+	private final MqttPacketIdAllocator packetIds = new MqttPacketIdAllocator();
+	/**
+	 * identifiers of QoS 2 messages received and not yet released
+	 */
+	private final Set<Integer> receivedQos2 = new HashSet<>();
+	private final Set<String> filters = ConcurrentHashMap.newKeySet();
+	private final Runnable flushTask = this::flush;
+	private boolean flushPending;
+
+	private String willTopic;
+	private byte[] willMessage;
+	private MqttQoS willQos;
+	private boolean willRetain;
+
+	MqttBrokerSession(MqttBroker broker, Channel channel, String clientId, MqttVersion version) {
+		this.broker = broker;
+		this.channel = channel;
+		this.clientId = clientId;
+		this.version = version;
+	}
+
+	String getClientId() {
+		return clientId;
+	}
+
+	Channel getChannel() {
+		return channel;
+	}
+
+	MqttVersion getVersion() {
+		return version;
+	}
+
+	Set<String> getFilters() {
+		return filters;
+	}
+
+	void setWill(String topic, byte[] message, MqttQoS qos, boolean retain) {
+		this.willTopic = topic;
+		this.willMessage = message;
+		this.willQos = qos;
+		this.willRetain = retain;
+	}
+
+	/**
+	 * Called on a DISCONNECT, a clean close does not publish the will.
+	 */
+	void clearWill() {
+		this.willTopic = null;
+		this.willMessage = null;
+	}
+
+	boolean hasWill() {
+		return willTopic != null;
+	}
+
+	String getWillTopic() {
+		return willTopic;
+	}
+
+	byte[] getWillMessage() {
+		return willMessage;
+	}
+
+	MqttQoS getWillQos() {
+		return willQos;
+	}
+
+	boolean isWillRetain() {
+		return willRetain;
+	}
+
+	/**
+	 * @return false if the QoS 2 message was already received and must not be routed again
+	 */
+	boolean onQos2Received(int packetId) {
+		return receivedQos2.add(packetId);
+	}
+
+	void onQos2Released(int packetId) {
+		receivedQos2.remove(packetId);
+	}
+
+	/**
+	 * Releases the identifier of a message the client acknowledged with PUBACK or PUBCOMP.
+	 */
+	void onAcknowledged(int packetId) {
+		packetIds.release(packetId);
+	}
+
+	/**
+	 * Sends a message to the client after the configured latency, from any thread. Takes ownership of the payload.
+	 */
+	void deliver(String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		EventLoop eventLoop = channel.eventLoop();
+		long latency = broker.getConfig().getLatencyMillis();
+		if (latency > 0) {
+			eventLoop.schedule(() -> send(topic, qos, retain, payload), latency, TimeUnit.MILLISECONDS);
+		} else if (eventLoop.inEventLoop()) {
+			send(topic, qos, retain, payload);
+		} else {
+			eventLoop.execute(() -> send(topic, qos, retain, payload));
+		}
+	}
+
+	private void send(String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		if (!channel.isActive()) {
+			payload.release();
+			return;
+		}
+		int packetId = -1;
+		if (qos != MqttQoS.AT_MOST_ONCE) {
+			try {
+				packetId = packetIds.acquire();
+			} catch (MqttBackpressureException e) {
+				broker.getStats().onUndeliverable();
+				payload.release();
+				return;
+			}
+		}
+		if (broker.shouldDrop()) {
+			// a lost message is never acknowledged, so its identifier is not held
+			packetIds.release(packetId);
+			broker.getStats().onDropped();
+			payload.release();
+			return;
+		}
+		broker.getStats().onSent(payload.readableBytes());
+		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, retain, 0);
+		write(new MqttPublishMessage(fixedHeader, new MqttPublishVariableHeader(topic, packetId), payload));
+	}
+
+	/**
+	 * Sends PUBACK, PUBREC or PUBCOMP after the configured ack delay, subject to the configured loss.
+	 */
+	void acknowledge(MqttMessage ack) {
+		if (broker.shouldDrop()) {
+			broker.getStats().onDropped();
+			return;
+		}
+		long delay = broker.getConfig().getAckDelayMillis();
+		if (delay > 0) {
+			channel.eventLoop().schedule(() -> write(ack), delay, TimeUnit.MILLISECONDS);
+		} else {
+			write(ack);
+		}
+	}
+
+	void write(MqttMessage message) {
+		if (!channel.isActive()) {
+			ReferenceCountUtil.release(message);
+			return;
+		}
+		channel.write(message, channel.voidPromise());
+		if (!flushPending) {
+			flushPending = true;
+			channel.eventLoop().execute(flushTask);
+		}
+	}
+
+	private void flush() {
+		flushPending = false;
+		channel.flush();
+	}
+}
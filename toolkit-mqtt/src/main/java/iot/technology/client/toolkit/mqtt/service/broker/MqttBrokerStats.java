@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.broker;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broker side counters, so a loopback bench can tell client costs from broker costs.
+ * Recording is lock free, reports are taken from the reporter thread only.
+ *
+ * @author mushuwei
+ */
+public final class MqttBrokerStats {
+
+	private final LongAdder connections = new LongAdder();
+	private final LongAdder connects = new LongAdder();
+	private final LongAdder received = new LongAdder();
+	private final LongAdder receivedBytes = new LongAdder();
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder sentBytes = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder undeliverable = new LongAdder();
+
+	private final long startNanos = System.nanoTime();
+	private long lastReportNanos = startNanos;
+	private long lastReceived;
+	private long lastReceivedBytes;
+	private long lastSent;
+	private long lastSentBytes;
+
+	void onConnected() {
+		connections.increment();
+		connects.increment();
+	}
+
+	void onDisconnected() {
+		connections.decrement();
+	}
+
+	void onReceived(int bytes) {
+		received.increment();
+		receivedBytes.add(bytes);
+	}
+
+	void onSent(int bytes) {
+		sent.increment();
+		sentBytes.add(bytes);
+	}
+
+	void onDropped() {
+		dropped.increment();
+	}
+
+	void onUndeliverable() {
+		undeliverable.increment();
+	}
+
+	public synchronized String intervalReport(int retained) {
+		long now = System.nanoTime();
+		double seconds = Math.max(now - lastReportNanos, 1) / 1e9;
+		long receivedNow = received.sum();
+		long receivedBytesNow = receivedBytes.sum();
+		long sentNow = sent.sum();
+		long sentBytesNow = sentBytes.sum();
+		String report = String.format("[%6.1fs] conn: %d  in: %.0f msg/s %s/s  out: %.0f msg/s %s/s  dropped: %d  undeliverable: %d  retained: %d",
+				(now - startNanos) / 1e9,
+				connections.sum(),
+				(receivedNow - lastReceived) / seconds,
+				bytes((receivedBytesNow - lastReceivedBytes) / seconds),
+				(sentNow - lastSent) / seconds,
+				bytes((sentBytesNow - lastSentBytes) / seconds),
+				dropped.sum(),
+				undeliverable.sum(),
+				retained);
+		lastReportNanos = now;
+		lastReceived = receivedNow;
+		lastReceivedBytes = receivedBytesNow;
+		lastSent = sentNow;
+		lastSentBytes = sentBytesNow;
+		return report;
+	}
+
+	public synchronized String summary(int retained) {
+		double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+		return String.format("duration: %.1fs  connects: %d  retained: %d%n", seconds, connects.sum(), retained)
+				+ String.format("in: %d (%.0f msg/s, %s/s)  out: %d (%.0f msg/s, %s/s)  dropped: %d  undeliverable: %d",
+				received.sum(), received.sum() / seconds, bytes(receivedBytes.sum() / seconds),
+				sent.sum(), sent.sum() / seconds, bytes(sentBytes.sum() / seconds),
+				dropped.sum(), undeliverable.sum());
+	}
+
+	private static String bytes(double bytes) {
+		if (bytes >= 1024 * 1024) {
+			return String.format("%.1fMB", bytes / (1024 * 1024));
+		}
+		if (bytes >= 1024) {
+			return String.format("%.1fKB", bytes / 1024);
+		}
+		return String.format("%.0fB", bytes);
+	}
+
+	public long getConnections() {
+		return connections.sum();
+	}
+
+	/**
+	 * @return PUBLISH packets received from clients
+	 */
+	public long getReceived() {
+		return received.sum();
+	}
+
+	/**
+	 * @return PUBLISH packets forwarded to subscribers
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+	/**
+	 * @return packets dropped on purpose, see {@link MqttBrokerConfig#setLossRate(double)}
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+}
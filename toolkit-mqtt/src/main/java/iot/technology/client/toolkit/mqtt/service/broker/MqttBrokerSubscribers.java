@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.broker;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The sessions subscribed to one topic filter, stored as the handler of the filter's entry in the broker's topic trie.
+ * A message is forwarded with the lower of its QoS and the subscription's; a client with several matching
+ * filters gets one copy per filter. Each group of shared subscriptions to the filter gets one copy, sent to
+ * its members in turn.
+ *
+ * @author mushuwei
+ */
+final class MqttBrokerSubscribers implements MqttHandler {
+
+	private final Map<MqttBrokerSession, MqttQoS> sessions = new ConcurrentHashMap<>();
+	private final Map<String, SharedGroup> groups = new ConcurrentHashMap<>();
+
+	/**
+	 * @param group the group of a shared subscription, null for a plain one
+	 */
+	void put(MqttBrokerSession session, String group, MqttQoS qos) {
+		if (group == null) {
+			sessions.put(session, qos);
+		} else {
+			groups.computeIfAbsent(group, g -> new SharedGroup()).put(session, qos);
+		}
+	}
+
+	/**
+	 * @return true if no session is left
+	 */
+	boolean remove(MqttBrokerSession session, String group) {
+		if (group == null) {
+			sessions.remove(session);
+		} else {
+			SharedGroup shared = groups.get(group);
+			if (shared != null && shared.remove(session)) {
+				groups.remove(group);
+			}
+		}
+		return sessions.isEmpty() && groups.isEmpty();
+	}
+
+	@Override
+	public void onMessage(String topic, MqttQoS qos, ByteBuf payload) {
+		for (Map.Entry<MqttBrokerSession, MqttQoS> entry : sessions.entrySet()) {
+			entry.getKey().deliver(topic, MqttBroker.lower(qos, entry.getValue()), false, payload.retainedDuplicate());
+		}
+		for (SharedGroup group : groups.values()) {
+			group.deliver(topic, qos, payload);
+		}
+	}
+
+	/**
+	 * Members of one shared subscription group; changed under the broker's lock, read by every event loop.
+	 */
+	private static final class SharedGroup {
+
+		private volatile Member[] members = new Member[0];
+		private final AtomicInteger next = new AtomicInteger();
+
+		void put(MqttBrokerSession session, MqttQoS qos) {
+			remove(session);
+			Member[] current = members;
+			Member[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = new Member(session, qos);
+			members = updated;
+		}
+
+		/**
+		 * @return true if no member is left
+		 */
+		boolean remove(MqttBrokerSession session) {
+			members = Arrays.stream(members).filter(member -> member.session != session).toArray(Member[]::new);
+			return members.length == 0;
+		}
+
+		void deliver(String topic, MqttQoS qos, ByteBuf payload) {
+			Member[] current = members;
+			if (current.length == 0) {
+				return;
+			}
+			Member member = current[Math.floorMod(next.getAndIncrement(), current.length)];
+			member.session.deliver(topic, MqttBroker.lower(qos, member.qos), false, payload.retainedDuplicate());
+		}
+	}
+
+	private static final class Member {
+
+		private final MqttBrokerSession session;
+		private final MqttQoS qos;
+
+		Member(MqttBrokerSession session, MqttQoS qos) {
+			this.session = session;
+			this.qos = qos;
+		}
+	}
+}
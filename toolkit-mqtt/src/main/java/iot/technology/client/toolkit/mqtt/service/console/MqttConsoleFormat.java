@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.console;
+
+import iot.technology.client.toolkit.common.utils.JsonUtils;
+import org.eclipse.leshan.core.util.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * How a received payload is shown on the console.
+ *
+ * @author mushuwei
+ */
+public enum MqttConsoleFormat {
+
+	TEXT {
+		@Override
+		public String render(byte[] payload) {
+			return new String(payload, StandardCharsets.UTF_8);
+		}
+	},
+
+	JSON {
+		@Override
+		public String render(byte[] payload) {
+			return JsonUtils.convertPrettyJson(new String(payload, StandardCharsets.UTF_8));
+		}
+	},
+
+	HEX {
+		@Override
+		public String render(byte[] payload) {
+			return Hex.encodeHexString(payload);
+		}
+	},
+
+	BASE64 {
+		@Override
+		public String render(byte[] payload) {
+			return Base64.getEncoder().encodeToString(payload);
+		}
+	};
+
+	public abstract String render(byte[] payload);
+}
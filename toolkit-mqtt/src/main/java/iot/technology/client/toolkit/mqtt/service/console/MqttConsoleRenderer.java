@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.console;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.internal.PlatformDependent;
+import iot.technology.client.toolkit.common.constants.EmojiEnum;
+import iot.technology.client.toolkit.common.constants.StorageConstants;
+import iot.technology.client.toolkit.common.utils.ColorUtils;
+import iot.technology.client.toolkit.common.utils.StringUtils;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Prints received messages for all subscriptions of the shell from a single writer thread.
+ * <p>
+ * Handlers only copy the payload into a lock-free ring buffer; formatting, JSON pretty printing and the terminal
+ * write happen on the writer, which renders everything queued into one buffer and prints it with a single flush.
+ * Once more than {@link #setMaxMessagesPerSecond(int) maxMessagesPerSecond} arrive within a second the rest of
+ * that second is only counted, and a line per topic summarises what was skipped. Messages that find the ring
+ * full are counted the same way. ANSI sequences and header lines are built once.
+ *
+ * @author mushuwei
+ */
+public final class MqttConsoleRenderer {
+
+	public static final MqttConsoleRenderer INSTANCE = new MqttConsoleRenderer(System.out, 8192);
+
+	private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm:ss");
+	private static final int FLUSH_THRESHOLD = 64 * 1024;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	private static final int SUMMARY_TOPIC_LIMIT = 10;
+
+	private final PrintStream out;
+	private final Queue<Entry> ring;
+	private final Map<String, long[]> overflowed = new HashMap<>();
+	private volatile int maxMessagesPerSecond = 100;
+	private volatile Thread writer;
+
+	private final String header;
+	private final String[] qosPrefixes = new String[MqttQoS.values().length];
+	private final String payloadStart;
+	private final String payloadEnd;
+	private final String summaryFormat;
+
+	// writer thread only
+	private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 4096);
+	private final Map<String, long[]> skipped = new HashMap<>();
+	private long windowSecond;
+	private int windowCount;
+	private long cachedSecond = -1;
+	private String cachedTime;
+
+	MqttConsoleRenderer(PrintStream out, int capacity) {
+		this.out = out;
+		this.ring = PlatformDependent.newFixedMpscQueue(capacity);
+		ResourceBundle bundle = ResourceBundle.getBundle(StorageConstants.LANG_MESSAGES);
+		String ls = StringUtils.lineSeparator();
+		this.header = ls + "------" + bundle.getString("mqtt.received.desc") + String.format(EmojiEnum.subscribeEmoji) + "------" + ls + ls;
+		this.qosPrefixes[MqttQoS.AT_MOST_ONCE.ordinal()] = "   QoS:" + bundle.getString("mqtt.qos0.prompt") + ls;
+		this.qosPrefixes[MqttQoS.AT_LEAST_ONCE.ordinal()] = "   QoS:" + bundle.getString("mqtt.qos1.prompt") + ls;
+		this.qosPrefixes[MqttQoS.EXACTLY_ONCE.ordinal()] = "   QoS:" + bundle.getString("mqtt.qos2.prompt") + ls;
+		this.qosPrefixes[MqttQoS.FAILURE.ordinal()] = "   QoS:" + ls;
+		// split an empty styled text into the escape sequences around it
+		String styled = ColorUtils.colorBold("\u0000", "yellow");
+		int marker = styled.indexOf('\u0000');
+		this.payloadStart = styled.substring(0, marker);
+		this.payloadEnd = styled.substring(marker + 1);
+		this.summaryFormat = bundle.getString("mqtt.console.skipped");
+	}
+
+	/**
+	 * Queues a message for printing, called from message handlers. The payload is copied.
+	 */
+	public void submit(String topic, MqttQoS qos, ByteBuf payload, MqttConsoleFormat format) {
+		if (writer == null) {
+			start();
+		}
+		if (!ring.offer(new Entry(topic, qos, ByteBufUtil.getBytes(payload), format, System.currentTimeMillis()))) {
+			synchronized (overflowed) {
+				overflowed.computeIfAbsent(topic, t -> new long[1])[0]++;
+			}
+		}
+	}
+
+	/**
+	 * Messages printed in full per second before the rest of the second is summarised. Defaults to 100.
+	 */
+	public void setMaxMessagesPerSecond(int maxMessagesPerSecond) {
+		if (maxMessagesPerSecond <= 0) {
+			throw new IllegalArgumentException("maxMessagesPerSecond must be > 0");
+		}
+		this.maxMessagesPerSecond = maxMessagesPerSecond;
+	}
+
+	private synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		Thread thread = new Thread(this::drain, "toolkit-mqtt-console");
+		thread.setDaemon(true);
+		thread.start();
+		writer = thread;
+	}
+
+	private void drain() {
+		for (; ; ) {
+			Entry entry = ring.poll();
+			long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+			if (second != windowSecond) {
+				summarize();
+				windowSecond = second;
+				windowCount = 0;
+			}
+			if (entry == null) {
+				write();
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+				continue;
+			}
+			if (++windowCount > maxMessagesPerSecond) {
+				skipped.computeIfAbsent(entry.topic, t -> new long[1])[0]++;
+				continue;
+			}
+			render(entry);
+			if (buffer.length() >= FLUSH_THRESHOLD) {
+				write();
+			}
+		}
+	}
+
+	private void render(Entry entry) {
+		String payload;
+		try {
+			payload = entry.format.render(entry.payload);
+		} catch (RuntimeException e) {
+			payload = MqttConsoleFormat.TEXT.render(entry.payload);
+		}
+		buffer.append(header)
+				.append("Topic:").append(entry.topic).append(qosPrefixes[entry.qos.ordinal()])
+				.append(payloadStart).append(payload).append(payloadEnd).append(StringUtils.lineSeparator())
+				.append(time(entry.timestamp)).append(StringUtils.lineSeparator())
+				.append(StringUtils.lineSeparator());
+	}
+
+	private String time(long timestamp) {
+		long second = TimeUnit.MILLISECONDS.toSeconds(timestamp);
+		if (second != cachedSecond) {
+			cachedSecond = second;
+			cachedTime = TIME_FORMATTER.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+		}
+		return cachedTime;
+	}
+
+	private void summarize() {
+		synchronized (overflowed) {
+			overflowed.forEach((topic, count) -> skipped.computeIfAbsent(topic, t -> new long[1])[0] += count[0]);
+			overflowed.clear();
+		}
+		if (skipped.isEmpty()) {
+			return;
+		}
+		List<Map.Entry<String, long[]>> topics = new ArrayList<>(skipped.entrySet());
+		topics.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+		for (int i = 0; i < Math.min(topics.size(), SUMMARY_TOPIC_LIMIT); i++) {
+			buffer.append(ColorUtils.blackFaint(String.format(summaryFormat, topics.get(i).getValue()[0], topics.get(i).getKey())))
+					.append(StringUtils.lineSeparator());
+		}
+		if (topics.size() > SUMMARY_TOPIC_LIMIT) {
+			buffer.append(ColorUtils.blackFaint("... +" + (topics.size() - SUMMARY_TOPIC_LIMIT)))
+					.append(StringUtils.lineSeparator());
+		}
+		skipped.clear();
+	}
+
+	private void write() {
+		if (buffer.length() == 0) {
+			return;
+		}
+		out.print(buffer);
+		out.flush();
+		buffer.setLength(0);
+	}
+
+	private static final class Entry {
+
+		private final String topic;
+		private final MqttQoS qos;
+		private final byte[] payload;
+		private final MqttConsoleFormat format;
+		private final long timestamp;
+
+		Entry(String topic, MqttQoS qos, byte[] payload, MqttConsoleFormat format, long timestamp) {
+			this.topic = topic;
+			this.qos = qos;
+			this.payload = payload;
+			this.format = format;
+			this.timestamp = timestamp;
+		}
+	}
+}
@@ -19,28 +19,39 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.mqtt.*;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Promise;
 import iot.technology.client.toolkit.mqtt.service.MqttClientCallback;
 import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
 import iot.technology.client.toolkit.mqtt.service.domain.*;
 import iot.technology.client.toolkit.mqtt.service.handler.MqttChannelHandler;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttFlushCounter;
 import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
 import iot.technology.client.toolkit.mqtt.service.handler.MqttPingHandler;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttTopicAliasHandler;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttClientMetrics;
+import iot.technology.client.toolkit.mqtt.service.session.MqttSessionStore;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author mushuwei
@@ -52,19 +63,46 @@ public class MqttClientService {
 	private final ConcurrentMap<Integer, MqttIncomingQos2Publish> qos2PendingIncomingPublishes = new ConcurrentHashMap<>();
 	private final ConcurrentMap<Integer, MqttPendingPublish> pendingPublishes = new ConcurrentHashMap<>();
 	private final ConcurrentHashMap<String, MqttSubscription> subscriptions = new ConcurrentHashMap<>();
+	private final MqttTopicTrie subscriptionTrie = new MqttTopicTrie();
 	private final ConcurrentMap<Integer, MqttPendingSubscription> pendingSubscriptions = new ConcurrentHashMap<>();
 	private final Set<String> pendingSubscribeTopics = new HashSet<>();
 	private final ConcurrentHashMap<MqttHandler, MqttSubscription> handlerToSubscribtion = new ConcurrentHashMap<>();
-	private final AtomicInteger nextMessageId = new AtomicInteger(1);
+	private final MqttPacketIdAllocator packetIds = new MqttPacketIdAllocator();
 
 	private final MqttClientConfig clientConfig;
 	private final MqttHandler defaultHandler;
+	private final MqttRetransmissionScheduler retransmissionScheduler;
+	private final MqttInflightWindow inflightWindow;
+	private final MqttDispatcher dispatcher;
+	/**
+	 * created on first use, so the client is fully constructed before the metrics publish it to
+	 * {@link MqttClientMetrics#aggregate()}
+	 */
+	private volatile MqttClientMetrics metrics;
 
 	private EventLoopGroup eventLoop;
 	private volatile Channel channel;
+	private volatile int maximumPacketSize;
 
 	private volatile boolean disconnected = false;
+	/**
+	 * connect attempt whose channel is not yet {@link #channel}, closed by {@link #disconnect}
+	 */
+	private volatile ChannelFuture pendingConnect;
 	private volatile boolean reconnect = false;
+	// reconnect attempts since the connection was lost, and in total
+	private volatile int reconnectAttempts;
+	private volatile long totalReconnectAttempts;
+	// connection losses that were given up on after the last reconnect attempt
+	private volatile long reconnectsFailed;
+	private volatile boolean recovering;
+	private volatile long connectionLostNanos;
+	private volatile long lastRecoveryNanos = -1;
+	// phases of the last connection attempt
+	private volatile long tcpConnectedNanos;
+	private volatile long lastTcpConnectNanos = -1;
+	private volatile long lastTlsHandshakeNanos = -1;
+	private volatile boolean lastTlsResumed;
 	// 0 - passive close, 1- acive close
 	private  Integer actionType = 0;
 	private MqttClientCallback callback;
@@ -72,6 +110,9 @@ public class MqttClientService {
 	public MqttClientService(MqttHandler defaultHandler) {
 		this.clientConfig = new MqttClientConfig();
 		this.defaultHandler = defaultHandler;
+		this.retransmissionScheduler = new MqttRetransmissionScheduler(this.clientConfig);
+		this.inflightWindow = new MqttInflightWindow(this.clientConfig, this::isWritable);
+		this.dispatcher = new MqttDispatcher(this.clientConfig);
 	}
 
 	public void setCallback(MqttClientCallback callback) {
@@ -87,6 +128,9 @@ public class MqttClientService {
 	public MqttClientService(MqttClientConfig clientConfig, MqttHandler defaultHandler) {
 		this.clientConfig = clientConfig;
 		this.defaultHandler = defaultHandler;
+		this.retransmissionScheduler = new MqttRetransmissionScheduler(clientConfig);
+		this.inflightWindow = new MqttInflightWindow(clientConfig, this::isWritable);
+		this.dispatcher = new MqttDispatcher(clientConfig);
 	}
 
 	public Future<MqttConnectResult> connect(String host) {
@@ -102,6 +146,14 @@ public class MqttClientService {
 		return !disconnected && channel != null && channel.isActive();
 	}
 
+	/**
+	 * A missing or inactive channel counts as writable so publishes fail right away instead of waiting.
+	 */
+	private boolean isWritable() {
+		Channel current = this.channel;
+		return current == null || !current.isActive() || current.isWritable();
+	}
+
 
 	public EventLoopGroup getEventLoop() {
 		return eventLoop;
@@ -115,35 +167,189 @@ public class MqttClientService {
 	public void disconnect(Integer action) {
 		actionType = action;
 		disconnected = true;
-		if (this.channel != null) {
+		Channel current = this.channel;
+		if (current != null) {
 			MqttMessage message = new MqttMessage(new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0));
-			this.sendAndFlushPacket(message).addListener(future -> channel.close());
+			this.sendAndFlushPacket(message).addListener(future -> current.close());
+			// acknowledgements may still arrive until the channel is closed, keep recording them
+			current.closeFuture().addListener(future -> closeSessionStore());
+		} else {
+			closeSessionStore();
+		}
+		ChannelFuture pending = this.pendingConnect;
+		if (pending != null) {
+			// still connecting, e.g. given up on by a connect timeout; the listener in doConnect closes it if it wins
+			pending.channel().close();
+		}
+		dispatcher.shutdown();
+		MqttClientMetrics registered = this.metrics;
+		if (registered != null) {
+			registered.unregisterMBean();
 		}
 	}
 
 
+	private void closeSessionStore() {
+		MqttSessionStore store = clientConfig.getSessionStore();
+		if (store != null) {
+			store.close();
+		}
+	}
+
+	/**
+	 * Publishes a message once the in-flight window has room, see {@link MqttClientConfig#setMaxInflight(int)}.
+	 * The returned future fails with {@link MqttBackpressureException} if the configured
+	 * {@link MqttBackpressurePolicy} rejects the message.
+	 */
 	public Future<Void> publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
 		Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
-		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, retain, 0);
-		MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(topic, getNewMessageId().messageId());
+		Channel current = this.channel;
+		try {
+			inflightWindow.submit(() -> {
+				future.addListener(f -> inflightWindow.release());
+				doPublish(topic, payload, qos, retain, future, true);
+			}, current != null && current.eventLoop().inEventLoop());
+		} catch (MqttBackpressureException e) {
+			getMetrics().onPublishRejected();
+			payload.release();
+			future.setFailure(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Publishes all messages with a single flush instead of one per message.
+	 * Messages that have to wait for an in-flight slot are flushed on their own once they are sent.
+	 *
+	 * @return one future per request, in order
+	 */
+	public List<Future<Void>> publishBatch(List<MqttPublishRequest> requests) {
+		List<Future<Void>> futures = new ArrayList<>(requests.size());
+		Channel current = this.channel;
+		boolean inEventLoop = current != null && current.eventLoop().inEventLoop();
+		Thread submitter = Thread.currentThread();
+		boolean[] inBatch = {true};
+		for (MqttPublishRequest request : requests) {
+			Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
+			try {
+				inflightWindow.submit(() -> {
+					future.addListener(f -> inflightWindow.release());
+					// the batch flush below only covers messages written before it, on this thread
+					boolean flush = !inBatch[0] || Thread.currentThread() != submitter;
+					doPublish(request.getTopic(), request.getPayload(), request.getQos(), request.isRetain(), future, flush);
+				}, inEventLoop);
+			} catch (MqttBackpressureException e) {
+				getMetrics().onPublishRejected();
+				request.getPayload().release();
+				future.setFailure(e);
+			}
+			futures.add(future);
+		}
+		inBatch[0] = false;
+		if (current != null) {
+			current.flush();
+		}
+		return futures;
+	}
+
+	/**
+	 * @return a future completed as soon as {@link #publish} would send without waiting for an in-flight slot
+	 */
+	public Future<Void> whenPublishReady() {
+		return inflightWindow.whenReady(this.eventLoop.next());
+	}
+
+	public MqttPacketIdAllocator getPacketIds() {
+		return packetIds;
+	}
+
+	public MqttInflightWindow getInflightWindow() {
+		return inflightWindow;
+	}
+
+	public MqttDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	public MqttClientMetrics getMetrics() {
+		MqttClientMetrics current = metrics;
+		if (current == null) {
+			synchronized (this) {
+				current = metrics;
+				if (current == null) {
+					current = MqttClientMetrics.forClient(this);
+					metrics = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private void doPublish(String topic, ByteBuf payload, MqttQoS qos, boolean retain, Promise<Void> future, boolean flush) {
+		int messageId;
+		try {
+			messageId = getNewMessageId(future).messageId();
+		} catch (MqttBackpressureException e) {
+			getMetrics().onPublishRejected();
+			payload.release();
+			future.setFailure(e);
+			return;
+		}
+		writePublish(messageId, false, topic, payload, qos, retain, future, flush);
+	}
+
+	/**
+	 * Sends a PUBLISH with an identifier the caller already holds. New QoS 1/2 messages are written to the
+	 * session store first, duplicates replayed from it are not.
+	 */
+	private void writePublish(int messageId, boolean dup, String topic, ByteBuf payload, MqttQoS qos, boolean retain,
+							  Promise<Void> future, boolean flush) {
+		if (exceedsMaximumPacketSize(topic, payload.readableBytes(), qos)) {
+			payload.release();
+			future.setFailure(new MqttReasonCodeException(MqttReasonCodeException.PACKET_TOO_LARGE,
+					"PUBLISH to " + topic + " exceeds the broker's maximum packet size of " + maximumPacketSize));
+			return;
+		}
+		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, dup, qos, retain, 0);
+		MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(topic, messageId);
 		MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, payload);
+		MqttSessionStore store = getSessionStore();
+		if (store != null && !dup && qos != MqttQoS.AT_MOST_ONCE) {
+			store.storePublish(messageId, topic, qos, retain, payload);
+		}
 		MqttPendingPublish pendingPublish = new MqttPendingPublish(variableHeader.packetId(), future,
 				payload.retain(), message, qos, () -> !pendingPublishes.containsKey(variableHeader.packetId()));
+		sendPublish(pendingPublish, message, flush);
+	}
+
+	private void sendPublish(MqttPendingPublish pendingPublish, Object packet, boolean flush) {
+		Promise<Void> future = pendingPublish.getFuture();
+		long bytes = pendingPublish.getFilePayload() != null
+				? pendingPublish.getFilePayload().length() : pendingPublish.getPayload().readableBytes();
+		pendingPublish.setSentNanos(System.nanoTime());
 		this.pendingPublishes.put(pendingPublish.getMessageId(), pendingPublish);
-		ChannelFuture channelFuture = this.sendAndFlushPacket(message);
+		ChannelFuture channelFuture = this.sendPacket(packet, flush);
 
 		if (channelFuture != null) {
 			channelFuture.addListener(result -> {
 				pendingPublish.setSent(true);
 				if (result.cause() != null) {
-					pendingPublishes.remove(pendingPublish.getMessageId());
-					future.setFailure(result.cause());
+					// a stored message stays in the session store and is replayed on the next connect
+					if (pendingPublishes.remove(pendingPublish.getMessageId(), pendingPublish)) {
+						pendingPublish.getPayload().release();
+					}
+					// the close of the channel may have failed it already
+					future.tryFailure(result.cause());
 				} else {
+					getMetrics().onPublishSent(pendingPublish.getQos(), bytes);
 					if (pendingPublish.isSent() && pendingPublish.getQos() == MqttQoS.AT_MOST_ONCE) {
-						pendingPublishes.remove(pendingPublish.getMessageId());
-						pendingPublish.getFuture().setSuccess(null);
+						if (pendingPublishes.remove(pendingPublish.getMessageId(), pendingPublish)) {
+							pendingPublish.getPayload().release();
+						}
+						pendingPublish.getFuture().trySuccess(null);
 					} else if (pendingPublish.isSent()) {
-						pendingPublish.startPublishRetransmissionTimer(eventLoop.next(), this::sendAndFlushPacket);
+						pendingPublish.startPublishRetransmissionTimer(retransmissionScheduler, channelFuture.channel().eventLoop(),
+								this::sendAndFlushPacket, () -> onRetransmissionExhausted(pendingPublish));
 					} else {
 						pendingPublishes.remove(pendingPublish.getMessageId());
 					}
@@ -151,10 +357,262 @@ public class MqttClientService {
 			});
 		} else {
 			pendingPublishes.remove(pendingPublish.getMessageId());
+			pendingPublish.getPayload().release();
+			ReferenceCountUtil.release(packet);
+			future.setFailure(new ChannelClosedException("Channel is not connected"));
+		}
+	}
+
+	/**
+	 * Publishes the content of a file without copying it onto the heap, see {@link MqttFilePayload}.
+	 * The file is mapped once and re-read from the mapping on retransmission; it should not change until the
+	 * returned future completes. File publishes are not written to the session store.
+	 */
+	public Future<Void> publishFile(String topic, Path file, MqttQoS qos, boolean retain) {
+		Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
+		MqttFilePayload payload;
+		try {
+			payload = MqttFilePayload.map(file, clientConfig.getProtocolVersion() == MqttVersion.MQTT_5);
+		} catch (IOException e) {
+			return future.setFailure(e);
+		}
+		Channel current = this.channel;
+		try {
+			inflightWindow.submit(() -> {
+				future.addListener(f -> inflightWindow.release());
+				doPublishFile(topic, payload, qos, retain, future);
+			}, current != null && current.eventLoop().inEventLoop());
+		} catch (MqttBackpressureException e) {
+			getMetrics().onPublishRejected();
+			future.setFailure(e);
+		}
+		return future;
+	}
+
+	private void doPublishFile(String topic, MqttFilePayload payload, MqttQoS qos, boolean retain, Promise<Void> future) {
+		int messageId;
+		try {
+			messageId = getNewMessageId(future).messageId();
+		} catch (MqttBackpressureException e) {
+			getMetrics().onPublishRejected();
+			future.setFailure(e);
+			return;
+		}
+		if (exceedsMaximumPacketSize(topic, payload.length(), qos)) {
+			future.setFailure(new MqttReasonCodeException(MqttReasonCodeException.PACKET_TOO_LARGE,
+					"PUBLISH of " + payload.getPath() + " exceeds the broker's maximum packet size of " + maximumPacketSize));
+			return;
+		}
+		if (payload.remainingLength(topic, qos) > MqttFilePayload.MAX_REMAINING_LENGTH) {
+			// the file itself fits, but not together with the topic and packet id
+			future.setFailure(new MqttReasonCodeException(MqttReasonCodeException.PACKET_TOO_LARGE,
+					"PUBLISH of " + payload.getPath() + " exceeds the MQTT limit of " + MqttFilePayload.MAX_REMAINING_LENGTH + " bytes"));
+			return;
+		}
+		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, retain, 0);
+		MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(topic, messageId);
+		// keeps the headers for retransmission, the body comes from the file payload
+		MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, Unpooled.EMPTY_BUFFER);
+		MqttPendingPublish pendingPublish = new MqttPendingPublish(messageId, future, Unpooled.EMPTY_BUFFER, message, qos,
+				() -> !pendingPublishes.containsKey(messageId));
+		pendingPublish.setFilePayload(payload);
+		sendPublish(pendingPublish, payload.encode(fixedHeader, variableHeader), true);
+	}
+
+	/**
+	 * Encodes a PUBLISH once for {@link #publish(MqttPreparedPublish)} and {@link #tryPublish(MqttPreparedPublish, boolean)}.
+	 * Takes ownership of the payload; the caller releases the returned packet when it stops sending it.
+	 */
+	public MqttPreparedPublish prepare(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
+		return MqttPreparedPublish.encode(topic, payload, qos, retain, clientConfig.getProtocolVersion() == MqttVersion.MQTT_5);
+	}
+
+	/**
+	 * Sends a prepared PUBLISH with the in-flight window, session store and retransmission of {@link #publish}.
+	 * Every call is a new message with its own packet identifier.
+	 */
+	public Future<Void> publish(MqttPreparedPublish prepared) {
+		Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
+		// keeps the packet alive while the send waits for a slot and until it is acknowledged
+		ByteBuf payload = prepared.retainedPayload();
+		Channel current = this.channel;
+		try {
+			inflightWindow.submit(() -> {
+				future.addListener(f -> inflightWindow.release());
+				doPublishPrepared(prepared, payload, future);
+			}, current != null && current.eventLoop().inEventLoop());
+		} catch (MqttBackpressureException e) {
+			getMetrics().onPublishRejected();
+			payload.release();
+			future.setFailure(e);
 		}
 		return future;
 	}
 
+	private void doPublishPrepared(MqttPreparedPublish prepared, ByteBuf payload, Promise<Void> future) {
+		int messageId;
+		try {
+			messageId = getNewMessageId(future).messageId();
+		} catch (MqttBackpressureException e) {
+			getMetrics().onPublishRejected();
+			payload.release();
+			future.setFailure(e);
+			return;
+		}
+		if (maximumPacketSize > 0 && prepared.packetLength() > maximumPacketSize) {
+			payload.release();
+			future.setFailure(new MqttReasonCodeException(MqttReasonCodeException.PACKET_TOO_LARGE,
+					"PUBLISH to " + prepared.getTopic() + " exceeds the broker's maximum packet size of " + maximumPacketSize));
+			return;
+		}
+		MqttQoS qos = prepared.getQos();
+		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, prepared.isRetain(), 0);
+		MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(prepared.getTopic(), messageId);
+		// keeps the headers for retransmission, the packets come from the prepared publish
+		MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, Unpooled.EMPTY_BUFFER);
+		MqttSessionStore store = getSessionStore();
+		if (store != null && qos != MqttQoS.AT_MOST_ONCE) {
+			store.storePublish(messageId, prepared.getTopic(), qos, prepared.isRetain(), payload);
+		}
+		MqttPendingPublish pendingPublish = new MqttPendingPublish(messageId, future, payload, message, qos,
+				() -> !pendingPublishes.containsKey(messageId));
+		pendingPublish.setPreparedPublish(prepared);
+		sendPublish(pendingPublish, prepared.packet(messageId, false), true);
+	}
+
+	/**
+	 * Writes a prepared QoS 0 PUBLISH straight to the channel with a void promise, bypassing the in-flight window,
+	 * so a send allocates nothing beyond a pooled buffer wrapper. Back-pressure is left to the caller.
+	 *
+	 * @return false, without sending, if the client is not connected or the channel is not writable
+	 */
+	public boolean tryPublish(MqttPreparedPublish prepared, boolean flush) {
+		if (prepared.getQos() != MqttQoS.AT_MOST_ONCE) {
+			throw new IllegalArgumentException("Only QoS 0 can be sent without a pending publish");
+		}
+		Channel current = this.channel;
+		if (disconnected || current == null || !current.isActive() || !current.isWritable()) {
+			return false;
+		}
+		current.write(prepared.packet(0, false), current.voidPromise());
+		if (flush) {
+			current.flush();
+		}
+		getMetrics().onPublishSent(MqttQoS.AT_MOST_ONCE, prepared.payloadLength());
+		return true;
+	}
+
+	/**
+	 * Upper bound of the encoded size: the full topic name, a 4 byte remaining length and properties carrying
+	 * at most a topic alias.
+	 */
+	private boolean exceedsMaximumPacketSize(String topic, int payloadLength, MqttQoS qos) {
+		int max = this.maximumPacketSize;
+		if (max <= 0) {
+			return false;
+		}
+		long remaining = 2L + ByteBufUtil.utf8Bytes(topic) + (qos == MqttQoS.AT_MOST_ONCE ? 0 : 2) + payloadLength;
+		if (clientConfig.getProtocolVersion() == MqttVersion.MQTT_5) {
+			remaining += 1 + 3;
+		}
+		return 1 + 4 + remaining > max;
+	}
+
+	/**
+	 * Applies the limits an MQTT 5 broker announced in its CONNACK: receive maximum and maximum packet size.
+	 */
+	public void applyConnAckProperties(MqttProperties properties) {
+		MqttProperties.MqttProperty<?> receiveMaximum = properties.getProperty(MqttProperties.MqttPropertyType.RECEIVE_MAXIMUM.value());
+		MqttProperties.MqttProperty<?> packetSize = properties.getProperty(MqttProperties.MqttPropertyType.MAXIMUM_PACKET_SIZE.value());
+		this.maximumPacketSize = packetSize == null ? 0 : (Integer) packetSize.value();
+		inflightWindow.setPeerLimit(receiveMaximum == null ? 0 : (Integer) receiveMaximum.value());
+	}
+
+	/**
+	 * Re-sends what the session store kept from earlier connections, called once the broker accepted the CONNECT.
+	 * If the broker still has the session the messages go out as duplicates with their original packet identifiers,
+	 * otherwise they are published again as new messages through the in-flight window, like {@link #publish}.
+	 * Nothing sent right away is flushed, the caller flushes once.
+	 *
+	 * @param sessionPresent the session present flag of the CONNACK
+	 */
+	public void replaySession(boolean sessionPresent) {
+		MqttSessionStore store = clientConfig.getSessionStore();
+		if (store == null) {
+			return;
+		}
+		if (clientConfig.isCleanSession()) {
+			store.clear();
+			return;
+		}
+		Thread replayer = Thread.currentThread();
+		boolean[] replaying = {true};
+		for (MqttStoredMessage stored : store.load()) {
+			int packetId = stored.getPacketId();
+			if (pendingPublishes.containsKey(packetId)) {
+				// still in flight on this client, its retransmission timer takes care of it
+				continue;
+			}
+			boolean resume = sessionPresent && packetIds.claim(packetId);
+			Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
+			if (resume) {
+				future.addListener(f -> packetIds.release(packetId));
+			}
+			if (stored.isReleased()) {
+				if (resume) {
+					resumePubrel(packetId, future);
+				} else {
+					// the broker already has the message and no longer waits for our PUBREL
+					store.remove(packetId);
+				}
+				continue;
+			}
+			ByteBuf payload = Unpooled.wrappedBuffer(stored.getPayload());
+			if (resume) {
+				writePublish(packetId, true, stored.getTopic(), payload, stored.getQos(), stored.isRetain(), future, false);
+			} else {
+				try {
+					inflightWindow.submit(() -> {
+						future.addListener(f -> inflightWindow.release());
+						store.remove(packetId);
+						// messages that waited for a slot are not covered by the caller's flush
+						boolean flush = !replaying[0] || Thread.currentThread() != replayer;
+						doPublish(stored.getTopic(), payload, stored.getQos(), stored.isRetain(), future, flush);
+					}, true);
+				} catch (MqttBackpressureException e) {
+					// stays in the store for the next connection
+					getMetrics().onPublishRejected();
+					payload.release();
+					future.setFailure(e);
+				}
+			}
+		}
+		replaying[0] = false;
+	}
+
+	private void resumePubrel(int packetId, Promise<Void> future) {
+		MqttPublishMessage publish = new MqttPublishMessage(
+				new MqttFixedHeader(MqttMessageType.PUBLISH, true, MqttQoS.EXACTLY_ONCE, false, 0),
+				new MqttPublishVariableHeader("", packetId), Unpooled.EMPTY_BUFFER);
+		MqttPendingPublish pendingPublish = new MqttPendingPublish(packetId, future, Unpooled.EMPTY_BUFFER, publish,
+				MqttQoS.EXACTLY_ONCE, () -> !pendingPublishes.containsKey(packetId));
+		pendingPublish.setSent(true);
+		this.pendingPublishes.put(packetId, pendingPublish);
+		MqttMessage pubrelMessage = new MqttMessage(
+				new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+				MqttMessageIdVariableHeader.from(packetId));
+		this.sendPacket(pubrelMessage, false);
+		pendingPublish.setPubrelMessage(pubrelMessage);
+		pendingPublish.startPubrelRetransmissionTimer(retransmissionScheduler, retransmissionExecutor(), this::sendAndFlushPacket,
+				() -> onRetransmissionExhausted(pendingPublish));
+	}
+
+	/**
+	 * @return the session store in use, null without one or with a clean session
+	 */
+	public MqttSessionStore getSessionStore() {
+		return clientConfig.isCleanSession() ? null : clientConfig.getSessionStore();
+	}
 
 	public Future<Void> on(String topic, MqttHandler handler) {
 		return on(topic, handler, MqttQoS.AT_MOST_ONCE);
@@ -176,6 +634,7 @@ public class MqttClientService {
 	public Future<Void> off(String topic, MqttHandler handler) {
 		Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
 		this.subscriptions.remove(topic);
+		this.subscriptionTrie.remove(topic);
 		this.handlerToSubscribtion.remove(handler);
 		this.checkSubscribtions(topic, future);
 		return future;
@@ -192,7 +651,9 @@ public class MqttClientService {
 		Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
 		MqttSubscription subscription = this.subscriptions.get(topic);
 		MqttSubscription handSub = this.handlerToSubscribtion.get(subscription.getHandler());
-		this.subscriptions.remove(topic, handSub);
+		if (this.subscriptions.remove(topic, handSub)) {
+			this.subscriptionTrie.remove(topic, handSub);
+		}
 		this.handlerToSubscribtion.remove(subscription.getHandler());
 		this.checkSubscribtions(topic, future);
 		return future;
@@ -212,12 +673,59 @@ public class MqttClientService {
 	}
 
 	public void onSuccessfulReconnect() {
+		reconnectAttempts = 0;
+		if (recovering) {
+			recovering = false;
+			lastRecoveryNanos = System.nanoTime() - connectionLostNanos;
+		}
 		if (callback != null) {
 			callback.onSuccessfulReconnect();
 		}
 	}
 
 
+	/**
+	 * @return reconnect attempts made over the lifetime of the client
+	 */
+	public long getTotalReconnectAttempts() {
+		return totalReconnectAttempts;
+	}
+
+	/**
+	 * @return connection losses given up on after {@link MqttClientConfig#getReconnectMaxAttempts()} attempts
+	 */
+	public long getReconnectsFailed() {
+		return reconnectsFailed;
+	}
+
+	/**
+	 * @return time from losing the connection to the next accepted CONNACK, -1 if it never recovered
+	 */
+	public long getLastRecoveryNanos() {
+		return lastRecoveryNanos;
+	}
+
+	/**
+	 * @return time the last connection attempt took to establish the TCP connection, -1 if it did not
+	 */
+	public long getLastTcpConnectNanos() {
+		return lastTcpConnectNanos;
+	}
+
+	/**
+	 * @return time the TLS handshake of the last connection took, -1 without TLS or if it did not complete
+	 */
+	public long getLastTlsHandshakeNanos() {
+		return lastTlsHandshakeNanos;
+	}
+
+	/**
+	 * @return whether the last connection resumed an earlier TLS session of the same {@link io.netty.handler.ssl.SslContext}
+	 */
+	public boolean isLastTlsResumed() {
+		return lastTlsResumed;
+	}
+
 	public ConcurrentMap<Integer, MqttPendingSubscription> getPendingSubscriptions() {
 		return pendingSubscriptions;
 	}
@@ -226,6 +734,41 @@ public class MqttClientService {
 		return subscriptions;
 	}
 
+	public MqttRetransmissionScheduler getRetransmissionScheduler() {
+		return retransmissionScheduler;
+	}
+
+	/**
+	 * Gives up on a QoS 1/2 publish that was never acknowledged within the configured retransmission attempts.
+	 *
+	 * @param pendingPublish the publish to drop
+	 */
+	public void onRetransmissionExhausted(MqttPendingPublish pendingPublish) {
+		if (this.pendingPublishes.remove(pendingPublish.getMessageId(), pendingPublish)) {
+			MqttSessionStore store = getSessionStore();
+			if (store != null) {
+				store.remove(pendingPublish.getMessageId());
+			}
+			pendingPublish.onChannelClosed();
+			pendingPublish.getFuture().tryFailure(retransmissionTimeout(pendingPublish.getMessageId()));
+		}
+	}
+
+	public MqttTopicTrie getSubscriptionTrie() {
+		return subscriptionTrie;
+	}
+
+	/**
+	 * Registers an acknowledged subscription for message dispatch, replacing the previous one for the same topic.
+	 *
+	 * @param subscription the subscription to register
+	 */
+	public void putSubscription(MqttSubscription subscription) {
+		this.subscriptions.put(subscription.getTopic(), subscription);
+		this.subscriptionTrie.put(subscription);
+		this.handlerToSubscribtion.put(subscription.getHandler(), subscription);
+	}
+
 
 	public Set<String> getPendingSubscribeTopics() {
 		return pendingSubscribeTopics;
@@ -258,15 +801,25 @@ public class MqttClientService {
 	private void checkSubscribtions(String topic, Promise<Void> promise) {
 		if (!(this.subscriptions.containsKey(topic) && this.subscriptions.get(topic) != null) &&
 				this.serverSubscriptions.contains(topic)) {
+			MqttMessageIdVariableHeader variableHeader;
+			try {
+				variableHeader = getNewMessageId(promise);
+			} catch (MqttBackpressureException e) {
+				promise.setFailure(e);
+				return;
+			}
 			MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.UNSUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0);
-			MqttMessageIdVariableHeader variableHeader = getNewMessageId();
 			MqttUnsubscribePayload payload = new MqttUnsubscribePayload(Collections.singletonList(topic));
 			MqttUnsubscribeMessage message = new MqttUnsubscribeMessage(fixedHeader, variableHeader, payload);
 
 			MqttPendingUnsubscription pendingUnsubscription = new MqttPendingUnsubscription(promise, topic, message,
 					() -> !pendingServerUnsubscribes.containsKey(variableHeader.messageId()));
 			this.pendingServerUnsubscribes.put(variableHeader.messageId(), pendingUnsubscription);
-			pendingUnsubscription.startRetransmissionTimer(this.eventLoop.next(), this::sendAndFlushPacket);
+			pendingUnsubscription.startRetransmissionTimer(this.retransmissionScheduler, retransmissionExecutor(), this::sendAndFlushPacket, () -> {
+				if (pendingServerUnsubscribes.remove(variableHeader.messageId(), pendingUnsubscription)) {
+					promise.tryFailure(retransmissionTimeout(variableHeader.messageId()));
+				}
+			});
 
 			this.sendAndFlushPacket(message);
 		} else {
@@ -275,70 +828,130 @@ public class MqttClientService {
 	}
 
 
+	/**
+	 * @return the event loop acknowledgements arrive on, where retransmissions have to run
+	 */
+	private EventExecutor retransmissionExecutor() {
+		Channel current = this.channel;
+		return current != null ? current.eventLoop() : this.eventLoop.next();
+	}
+
+	private TimeoutException retransmissionTimeout(int messageId) {
+		return new TimeoutException("No acknowledgement for packet " + messageId + " after "
+				+ clientConfig.getRetransmitMaxAttempts() + " retransmissions");
+	}
+
 	public ChannelFuture sendAndFlushPacket(Object message) {
+		return sendPacket(message, true);
+	}
+
+	private ChannelFuture sendPacket(Object message, boolean flush) {
 		if (this.channel == null) {
 			return null;
 		}
 		if (this.channel.isActive()) {
-			return this.channel.writeAndFlush(message);
+			return flush ? this.channel.writeAndFlush(message) : this.channel.write(message);
 		}
 		return this.channel.newFailedFuture(new ChannelClosedException("Channel is closed!"));
 	}
 
-	private MqttMessageIdVariableHeader getNewMessageId() {
-		int messageId;
-		synchronized (this.nextMessageId) {
-			this.nextMessageId.compareAndSet(0xffff, 1);
-			messageId = this.nextMessageId.getAndIncrement();
-		}
+	/**
+	 * Takes a packet identifier that no pending operation uses; it is released when {@code owner} completes,
+	 * so every pending operation must complete its future once it is acknowledged, abandoned or the channel closes.
+	 */
+	private MqttMessageIdVariableHeader getNewMessageId(Future<?> owner) {
+		int messageId = packetIds.acquire();
+		owner.addListener(f -> packetIds.release(messageId));
 		return MqttMessageIdVariableHeader.from(messageId);
 	}
 
 	private Future<MqttConnectResult> connect(String host, int port, boolean reconnect) {
 		if (this.eventLoop == null) {
-			this.eventLoop = new NioEventLoopGroup();
+			this.eventLoop = MqttTransportFactory.newEventLoopGroup(clientConfig.getTransport(), 0);
 		}
 		Promise<MqttConnectResult> connectFuture = new DefaultPromise<>(this.eventLoop.next());
+		MqttConnectLimiter limiter = clientConfig.getConnectLimiter();
+		long wait = limiter == null ? 0 : limiter.reserve();
+		if (wait > 0) {
+			eventLoop.schedule(() -> doConnect(host, port, connectFuture), wait, TimeUnit.NANOSECONDS);
+		} else {
+			doConnect(host, port, connectFuture);
+		}
+		return connectFuture;
+	}
+
+	private void doConnect(String host, int port, Promise<MqttConnectResult> connectFuture) {
+		if (disconnected) {
+			// disconnected while waiting for the connect limiter
+			connectFuture.tryFailure(new ChannelClosedException("Client is disconnected"));
+			return;
+		}
 		Bootstrap bootstrap = new Bootstrap();
-		bootstrap.group(this.eventLoop);
-		bootstrap.channel(NioSocketChannel.class);
+		MqttTransportFactory.configure(bootstrap, this.eventLoop, clientConfig);
 		bootstrap.remoteAddress(host, port);
 		bootstrap.handler(new MqttChannelInitializer(connectFuture, host, port, clientConfig.getSslContext()));
+		lastTcpConnectNanos = -1;
+		lastTlsHandshakeNanos = -1;
+		lastTlsResumed = false;
+		long connectStart = System.nanoTime();
 		ChannelFuture future = bootstrap.connect();
+		this.pendingConnect = future;
 
 		future.addListener((ChannelFutureListener) f -> {
+			if (pendingConnect == f) {
+				pendingConnect = null;
+			}
 			if (f.isSuccess()) {
+				// runs before channelActive, where the TLS handshake starts
+				tcpConnectedNanos = System.nanoTime();
+				lastTcpConnectNanos = tcpConnectedNanos - connectStart;
 				this.channel = f.channel();
 				this.channel.closeFuture().addListener((ChannelFutureListener) channelFuture -> {
 					if (isConnected()) {
 						return;
 					}
 					ChannelClosedException e = new ChannelClosedException("Channel is closed!");
+					connectFuture.tryFailure(e);
 					if (callback != null) {
 						DisReason disReason = new DisReason();
 						disReason.setActionType(actionType);
 						disReason.setCause(e);
 						callback.connectionLost(disReason);
 					}
-					pendingSubscriptions.forEach((id, mqttPendingSubscription) -> mqttPendingSubscription.onChannelClosed());
+					pendingSubscriptions.forEach((id, mqttPendingSubscription) -> {
+						mqttPendingSubscription.onChannelClosed();
+						mqttPendingSubscription.getFuture().tryFailure(e);
+					});
 					pendingSubscriptions.clear();
 					serverSubscriptions.clear();
 					subscriptions.clear();
-					pendingServerUnsubscribes.forEach(
-							(id, mqttPendingServerUnsubscribes) -> mqttPendingServerUnsubscribes.onChannelClosed());
+					subscriptionTrie.clear();
+					pendingServerUnsubscribes.forEach((id, mqttPendingServerUnsubscribes) -> {
+						mqttPendingServerUnsubscribes.onChannelClosed();
+						mqttPendingServerUnsubscribes.getFuture().tryFailure(e);
+					});
 					pendingServerUnsubscribes.clear();
 					qos2PendingIncomingPublishes.clear();
-					pendingPublishes.forEach((id, mqttPendingPublish) -> mqttPendingPublish.onChannelClosed());
+					pendingPublishes.forEach((id, mqttPendingPublish) -> {
+						mqttPendingPublish.onChannelClosed();
+						mqttPendingPublish.getFuture().tryFailure(e);
+					});
 					pendingPublishes.clear();
 					pendingSubscribeTopics.clear();
 					handlerToSubscribtion.clear();
+					// queued publishes now fail fast against the closed channel
+					inflightWindow.signal();
 					scheduleConnectIfRequired(host, port, true);
 				});
+				if (disconnected) {
+					// disconnect() ran while the connect was pending and did not see this channel
+					this.channel.close();
+				}
 			} else {
+				connectFuture.tryFailure(f.cause());
 				scheduleConnectIfRequired(host, port, true);
 			}
 		});
-		return connectFuture;
 	}
 
 	private Future<Void> createSubscription(String topic, MqttHandler handler, boolean once, MqttQoS qos) {
@@ -351,16 +964,19 @@ public class MqttClientService {
 			}
 		}
 		if (this.serverSubscriptions.contains(topic)) {
-			MqttSubscription subscription = new MqttSubscription(topic, handler, once, qos);
-			this.subscriptions.put(topic, subscription);
-			this.handlerToSubscribtion.put(handler, subscription);
+			putSubscription(new MqttSubscription(topic, handler, once, qos));
 			return this.channel.newSucceededFuture();
 		}
 
 		Promise<Void> future = new DefaultPromise<>(this.eventLoop.next());
+		MqttMessageIdVariableHeader variableHeader;
+		try {
+			variableHeader = getNewMessageId(future);
+		} catch (MqttBackpressureException e) {
+			return future.setFailure(e);
+		}
 		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.SUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0);
 		MqttTopicSubscription subscription = new MqttTopicSubscription(topic, qos);
-		MqttMessageIdVariableHeader variableHeader = getNewMessageId();
 		MqttSubscribePayload payload = new MqttSubscribePayload(Collections.singletonList(subscription));
 		MqttSubscribeMessage message = new MqttSubscribeMessage(fixedHeader, variableHeader, payload);
 
@@ -371,7 +987,12 @@ public class MqttClientService {
 		this.pendingSubscribeTopics.add(topic);
 		pendingSubscription.setSent(this.sendAndFlushPacket(message) != null); //If not sent, we will send it when the connection is opened
 
-		pendingSubscription.startRetransmitTimer(this.eventLoop.next(), this::sendAndFlushPacket);
+		pendingSubscription.startRetransmitTimer(this.retransmissionScheduler, retransmissionExecutor(), this::sendAndFlushPacket, () -> {
+			if (pendingSubscriptions.remove(variableHeader.messageId(), pendingSubscription)) {
+				pendingSubscribeTopics.remove(topic);
+				future.tryFailure(retransmissionTimeout(variableHeader.messageId()));
+			}
+		});
 
 		return future;
 	}
@@ -381,11 +1002,42 @@ public class MqttClientService {
 			if (reconnect) {
 				this.reconnect = true;
 			}
-			eventLoop.schedule((Runnable) () -> connect(host, port, reconnect),
-					clientConfig.getReconnectDelay(), TimeUnit.SECONDS);
+			if (!recovering) {
+				recovering = true;
+				connectionLostNanos = System.nanoTime();
+			}
+			int maxAttempts = clientConfig.getReconnectMaxAttempts();
+			if (maxAttempts >= 0 && reconnectAttempts >= maxAttempts) {
+				int attempts = reconnectAttempts;
+				reconnectAttempts = 0;
+				recovering = false;
+				reconnectsFailed++;
+				if (callback != null) {
+					callback.onReconnectFailed(attempts);
+				}
+				return;
+			}
+			int attempt = ++reconnectAttempts;
+			totalReconnectAttempts++;
+			long delayMillis = reconnectDelayMillis(attempt);
+			if (callback != null) {
+				callback.onReconnectAttempt(attempt, delayMillis);
+			}
+			eventLoop.schedule((Runnable) () -> connect(host, port, reconnect), delayMillis, TimeUnit.MILLISECONDS);
 		}
 	}
 
+	/**
+	 * Exponential backoff with full jitter: a random delay up to reconnectDelay * multiplier^(attempt - 1),
+	 * capped at reconnectMaxDelay.
+	 */
+	private long reconnectDelayMillis(int attempt) {
+		double backoff = TimeUnit.SECONDS.toMillis(clientConfig.getReconnectDelay())
+				* Math.pow(clientConfig.getReconnectBackoffMultiplier(), attempt - 1);
+		long delayMillis = (long) Math.min(backoff, TimeUnit.SECONDS.toMillis(clientConfig.getReconnectMaxDelay()));
+		return clientConfig.isReconnectJitter() ? ThreadLocalRandom.current().nextLong(delayMillis + 1) : delayMillis;
+	}
+
 	private class MqttChannelInitializer extends ChannelInitializer<SocketChannel> {
 
 		private final Promise<MqttConnectResult> connectFuture;
@@ -406,14 +1058,37 @@ public class MqttClientService {
 
 		@Override
 		protected void initChannel(SocketChannel ch) {
+			ch.pipeline().addLast("flushCounter", MqttFlushCounter.INSTANCE);
 			if (sslContext != null) {
-				ch.pipeline().addLast(sslContext.newHandler(ch.alloc(), host, port));
+				SslHandler sslHandler = sslContext.newHandler(ch.alloc(), host, port);
+				long handshakeStart = System.currentTimeMillis();
+				sslHandler.handshakeFuture().addListener(f -> {
+					if (f.isSuccess()) {
+						lastTlsHandshakeNanos = System.nanoTime() - tcpConnectedNanos;
+						lastTlsResumed = MqttSslContextFactory.isResumed(sslContext, host, port,
+								sslHandler.engine().getSession(), handshakeStart);
+						getMetrics().onTlsHandshake(lastTlsResumed);
+					} else {
+						// fail with the handshake error rather than the channel close that follows it
+						connectFuture.tryFailure(f.cause());
+					}
+				});
+				ch.pipeline().addLast(sslHandler);
+			}
+			if (clientConfig.getFlushConsolidationLimit() > 0) {
+				// above the SslHandler, so coalesced writes also share TLS records
+				ch.pipeline().addLast("flushConsolidation",
+						new FlushConsolidationHandler(clientConfig.getFlushConsolidationLimit(), true));
 			}
 			ch.pipeline().addLast("mqttDecoder", new MqttDecoder(clientConfig.getMaxBytesInMessage()));
 			ch.pipeline().addLast("mqttEncoder", MqttEncoder.INSTANCE);
+			if (clientConfig.getProtocolVersion() == MqttVersion.MQTT_5 && clientConfig.getTopicAliasMaximum() > 0) {
+				ch.pipeline().addLast("topicAlias", new MqttTopicAliasHandler(clientConfig.getTopicAliasMaximum()));
+			}
 			ch.pipeline().addLast("idleStateHandler", new IdleStateHandler(MqttClientService.this.clientConfig.getKeepAlive(),
 					MqttClientService.this.clientConfig.getKeepAlive(), 0));
-			ch.pipeline().addLast("mqttPingHandler", new MqttPingHandler(MqttClientService.this.clientConfig.getKeepAlive()));
+			ch.pipeline().addLast("mqttPingHandler", new MqttPingHandler(MqttClientService.this.clientConfig.getKeepAlive(),
+					MqttClientService.this.getMetrics()));
 			ch.pipeline().addLast("mqttHandler", new MqttChannelHandler(MqttClientService.this, connectFuture));
 		}
 	}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket shared by clients to cap how many connection attempts per second one process makes.
+ * <p>
+ * Implemented as a generic cell rate algorithm: a single {@link AtomicLong} holds the time the bucket is empty
+ * until, and {@link #reserve()} moves it forward by one interval with a CAS. Callers are never refused,
+ * they are told how long to wait for their token, so bursts beyond the bucket size are spread out evenly.
+ *
+ * @author mushuwei
+ */
+public final class MqttConnectLimiter {
+
+	private final long intervalNanos;
+	private final long toleranceNanos;
+	private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+	private final LongAdder delayed = new LongAdder();
+
+	/**
+	 * @param connectsPerSecond sustained connection attempts per second
+	 * @param burst             attempts allowed at once after an idle period
+	 */
+	public MqttConnectLimiter(double connectsPerSecond, int burst) {
+		if (connectsPerSecond <= 0) {
+			throw new IllegalArgumentException("connectsPerSecond must be > 0");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("burst must be > 0");
+		}
+		this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / connectsPerSecond));
+		this.toleranceNanos = intervalNanos * (burst - 1);
+	}
+
+	/**
+	 * Takes a token.
+	 *
+	 * @return nanoseconds to wait before connecting, 0 to connect right away
+	 */
+	public long reserve() {
+		for (; ; ) {
+			long now = System.nanoTime();
+			long current = theoreticalArrival.get();
+			long start = current - now > 0 ? current : now;
+			if (theoreticalArrival.compareAndSet(current, start + intervalNanos)) {
+				long wait = start - now - toleranceNanos;
+				if (wait > 0) {
+					delayed.increment();
+					return wait;
+				}
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * @return attempts that had to wait for a token
+	 */
+	public long getDelayed() {
+		return delayed.sum();
+	}
+}
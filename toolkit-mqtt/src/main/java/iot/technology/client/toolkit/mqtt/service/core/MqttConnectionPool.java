@@ -0,0 +1,355 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import iot.technology.client.toolkit.mqtt.service.MqttClientCallback;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+import iot.technology.client.toolkit.mqtt.service.MqttConnectionPoolConfig;
+import iot.technology.client.toolkit.mqtt.service.domain.ChannelClosedException;
+import iot.technology.client.toolkit.mqtt.service.domain.DisReason;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttConnectResult;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttPendingPublish;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttReasonCodeException;
+
+import java.io.Closeable;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * One logical publisher over several connections. Topics are placed on a consistent hash ring of the healthy
+ * members, so all messages of a topic leave through the same connection and keep their order, while different
+ * topics spread over the connections and their event loop threads.
+ * <p>
+ * A member is healthy while it is connected and, see {@link MqttConnectionPoolConfig#setStallTimeoutMillis(long)},
+ * its acknowledgements keep coming. A member that fails the periodic health check or loses its connection leaves
+ * the ring; only the topics it owned move, to the next members on the ring, and it rejoins once healthy again.
+ * Publishes it failed because the connection closed are sent again through the new owner, at most
+ * {@link MqttConnectionPoolConfig#getMaxRedirects()} times. A redirected QoS 1 or 2 message may arrive twice
+ * if the broker got it before the connection dropped, and may overtake later messages of its topic.
+ *
+ * @author mushuwei
+ */
+public final class MqttConnectionPool implements Closeable {
+
+	private final MqttConnectionPoolConfig config;
+	private final EventLoopGroup eventLoop;
+	private final Member[] members;
+	private volatile Ring ring = Ring.EMPTY;
+	private volatile ScheduledFuture<?> healthCheck;
+
+	private final LongAdder redirected = new LongAdder();
+	private final LongAdder unroutable = new LongAdder();
+
+	/**
+	 * @param memberConfigs the client settings of member {@code i}; the pool sets the client identifier
+	 */
+	public MqttConnectionPool(MqttConnectionPoolConfig config, IntFunction<MqttClientConfig> memberConfigs) {
+		this.config = config;
+		MqttClientConfig[] configs = new MqttClientConfig[config.getMembers()];
+		for (int i = 0; i < configs.length; i++) {
+			configs[i] = memberConfigs.apply(i);
+			configs[i].setClientId(config.getClientIdPrefix() + "-" + i);
+		}
+		this.eventLoop = MqttTransportFactory.newEventLoopGroup(configs[0].getTransport(), configs.length);
+		this.members = new Member[configs.length];
+		for (int i = 0; i < configs.length; i++) {
+			members[i] = new Member(i, configs[i], eventLoop.next());
+		}
+	}
+
+	/**
+	 * Connects every member and starts the health checks.
+	 *
+	 * @return completes once all members are connected, or fails with the first member that could not connect;
+	 * the pool publishes through the members that did
+	 */
+	public Future<Void> connect(String host, int port) {
+		Promise<Void> ready = new DefaultPromise<>(eventLoop.next());
+		AtomicInteger pending = new AtomicInteger(members.length);
+		for (Member member : members) {
+			member.client.connect(host, port).addListener((Future<MqttConnectResult> connected) -> {
+				if (!connected.isSuccess()) {
+					ready.tryFailure(connected.cause());
+					return;
+				}
+				MqttConnectResult result = connected.getNow();
+				if (!result.isSuccess()) {
+					ready.tryFailure(new MqttReasonCodeException(result.getReturnCode().byteValue() & 0xff,
+							"Member " + member.index + " was refused: " + result.getReturnCode()));
+					return;
+				}
+				member.setHealthy(true);
+				if (pending.decrementAndGet() == 0) {
+					ready.trySuccess(null);
+				}
+			});
+		}
+		long interval = config.getHealthCheckIntervalMillis();
+		healthCheck = eventLoop.next().scheduleAtFixedRate(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+		return ready;
+	}
+
+	/**
+	 * Publishes through the member owning the topic, see {@link MqttClientService#publish}.
+	 * Fails with {@link ChannelClosedException} if no member is healthy.
+	 */
+	public Future<Void> publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
+		Promise<Void> future = new DefaultPromise<>(eventLoop.next());
+		send(topic, payload, qos, retain, future, 0);
+		return future;
+	}
+
+	private void send(String topic, ByteBuf payload, MqttQoS qos, boolean retain, Promise<Void> future, int redirects) {
+		Member member = ring.owner(topic);
+		if (member == null) {
+			unroutable.increment();
+			payload.release();
+			future.tryFailure(new ChannelClosedException("No healthy connection in the pool"));
+			return;
+		}
+		member.routed.increment();
+		// the pool keeps the payload for a redirect, the member gets its own view of it
+		member.client.publish(topic, payload.retainedDuplicate(), qos, retain).addListener(f -> {
+			if (f.isSuccess()) {
+				payload.release();
+				future.trySuccess(null);
+			} else if (isConnectionLoss(f.cause()) && redirects < config.getMaxRedirects()) {
+				member.setHealthy(false);
+				redirected.increment();
+				send(topic, payload, qos, retain, future, redirects + 1);
+			} else {
+				payload.release();
+				future.tryFailure(f.cause());
+			}
+		});
+	}
+
+	private static boolean isConnectionLoss(Throwable cause) {
+		return cause instanceof ChannelClosedException || cause instanceof ClosedChannelException;
+	}
+
+	private void checkHealth() {
+		long stallNanos = TimeUnit.MILLISECONDS.toNanos(config.getStallTimeoutMillis());
+		long now = System.nanoTime();
+		for (Member member : members) {
+			boolean healthy = member.client.isConnected();
+			if (healthy && stallNanos > 0) {
+				for (MqttPendingPublish pending : member.client.getPendingPublishes().values()) {
+					if (pending.getSentNanos() != 0 && now - pending.getSentNanos() > stallNanos) {
+						healthy = false;
+						break;
+					}
+				}
+			}
+			member.setHealthy(healthy);
+		}
+	}
+
+	private synchronized void rebuild() {
+		List<Member> healthy = new ArrayList<>(members.length);
+		for (Member member : members) {
+			if (member.healthy) {
+				healthy.add(member);
+			}
+		}
+		ring = Ring.of(healthy, config.getVirtualNodes());
+	}
+
+	/**
+	 * Stops the health checks, disconnects every member and stops the pool's threads.
+	 */
+	@Override
+	public void close() {
+		ScheduledFuture<?> check = healthCheck;
+		if (check != null) {
+			check.cancel(false);
+		}
+		for (Member member : members) {
+			member.client.disconnect(1);
+		}
+		eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+	}
+
+	public MqttConnectionPoolConfig getConfig() {
+		return config;
+	}
+
+	public List<MqttClientService> getMembers() {
+		List<MqttClientService> clients = new ArrayList<>(members.length);
+		for (Member member : members) {
+			clients.add(member.client);
+		}
+		return clients;
+	}
+
+	/**
+	 * @return the client currently owning the topic, null if no member is healthy
+	 */
+	public MqttClientService getOwner(String topic) {
+		Member member = ring.owner(topic);
+		return member == null ? null : member.client;
+	}
+
+	public int getHealthyMembers() {
+		return ring.size;
+	}
+
+	/**
+	 * @return publishes sent again through another member after theirs lost the connection
+	 */
+	public long getRedirected() {
+		return redirected.sum();
+	}
+
+	/**
+	 * @return publishes failed because no member was healthy
+	 */
+	public long getUnroutable() {
+		return unroutable.sum();
+	}
+
+	/**
+	 * @return the {@link iot.technology.client.toolkit.mqtt.service.metrics.MqttClientMetrics#snapshot()} of each
+	 * member with its pool state added, e.g. for a {@link iot.technology.client.toolkit.mqtt.service.metrics.MqttMetricsReporter}
+	 */
+	public List<Map<String, Object>> memberSnapshots() {
+		List<Map<String, Object>> snapshots = new ArrayList<>(members.length);
+		for (Member member : members) {
+			Map<String, Object> snapshot = member.client.getMetrics().snapshot();
+			snapshot.put("pool.member", (long) member.index);
+			snapshot.put("pool.healthy", member.healthy);
+			snapshot.put("pool.routed", member.routed.sum());
+			snapshots.add(snapshot);
+		}
+		return snapshots;
+	}
+
+	/**
+	 * murmur3 finalizer, spreads string hash codes and virtual node numbers over the ring
+	 */
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * Immutable snapshot of the ring, replaced as a whole when a member joins or leaves.
+	 * Looking up a topic is a binary search over sorted points and allocates nothing.
+	 */
+	private static final class Ring {
+
+		static final Ring EMPTY = new Ring(new int[0], new Member[0], 0);
+
+		private final int[] points;
+		private final Member[] owners;
+		private final int size;
+
+		private Ring(int[] points, Member[] owners, int size) {
+			this.points = points;
+			this.owners = owners;
+			this.size = size;
+		}
+
+		/**
+		 * The points of a member depend only on its index, so a member joining or leaving moves only its own topics.
+		 */
+		static Ring of(List<Member> healthy, int virtualNodes) {
+			if (healthy.isEmpty()) {
+				return EMPTY;
+			}
+			long[] entries = new long[healthy.size() * virtualNodes];
+			int n = 0;
+			for (int m = 0; m < healthy.size(); m++) {
+				int index = healthy.get(m).index;
+				for (int v = 0; v < virtualNodes; v++) {
+					int point = mix(index * 0x9e3779b9 + mix(v + 1));
+					// sorting by the point in the high bits keeps the position in the low bits next to it
+					entries[n++] = ((long) point << 32) | m;
+				}
+			}
+			Arrays.sort(entries);
+			int[] points = new int[entries.length];
+			Member[] owners = new Member[entries.length];
+			for (int i = 0; i < entries.length; i++) {
+				points[i] = (int) (entries[i] >> 32);
+				owners[i] = healthy.get((int) entries[i]);
+			}
+			return new Ring(points, owners, healthy.size());
+		}
+
+		Member owner(String topic) {
+			if (points.length == 0) {
+				return null;
+			}
+			int i = Arrays.binarySearch(points, mix(topic.hashCode()));
+			if (i < 0) {
+				i = -i - 1;
+			}
+			return owners[i == points.length ? 0 : i];
+		}
+	}
+
+	private final class Member implements MqttClientCallback {
+
+		private final int index;
+		private final MqttClientService client;
+		private final LongAdder routed = new LongAdder();
+		private volatile boolean healthy;
+
+		Member(int index, MqttClientConfig config, EventLoop loop) {
+			this.index = index;
+			this.client = new MqttClientService(config, null);
+			client.setEventLoop(loop);
+			client.setCallback(this);
+		}
+
+		void setHealthy(boolean healthy) {
+			if (this.healthy != healthy) {
+				this.healthy = healthy;
+				rebuild();
+			}
+		}
+
+		@Override
+		public void connectionLost(DisReason reason) {
+			setHealthy(false);
+		}
+
+		@Override
+		public void onSuccessfulReconnect() {
+			setHealthy(true);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import iot.technology.client.toolkit.mqtt.service.MqttClientCallback;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+import iot.technology.client.toolkit.mqtt.service.MqttConsumerGroupConfig;
+import iot.technology.client.toolkit.mqtt.service.domain.DisReason;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttConnectResult;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchMode;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttGroupOrdering;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttReasonCodeException;
+import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Drains a topic filter over several connections: every member subscribes to {@code $share/<group>/<filter>}
+ * with its own client identifier, and the broker spreads the messages over them. Each member gets its own
+ * event loop thread, so the group reads and handles with as many threads as it has members.
+ * <p>
+ * All members feed one handler, called on the member threads; {@link MqttGroupOrdering} decides whether the
+ * messages of one topic may be handled concurrently. A member that loses its connection leaves the group and
+ * its topics are reassigned; it subscribes again and rejoins once it reconnects.
+ * <p>
+ * The shared filter never matches a topic in a member's own subscriptions, so messages reach the members
+ * as their default handler.
+ *
+ * @author mushuwei
+ */
+public final class MqttConsumerGroup implements Closeable {
+
+	private final MqttConsumerGroupConfig config;
+	private final MqttHandler handler;
+	private final EventLoopGroup eventLoop;
+	private final Member[] members;
+	/**
+	 * the connected members in index order, the topic owners of {@link MqttGroupOrdering#PER_TOPIC}
+	 */
+	private volatile Member[] owners = new Member[0];
+
+	private final LongAdder received = new LongAdder();
+	private final LongAdder handedOver = new LongAdder();
+	private final LongAdder rebalances = new LongAdder();
+
+	/**
+	 * @param memberConfigs the client settings of member {@code i}; the group sets the client identifier, and
+	 *                      the inline dispatch mode for {@link MqttGroupOrdering#PER_TOPIC}
+	 */
+	public MqttConsumerGroup(MqttConsumerGroupConfig config, IntFunction<MqttClientConfig> memberConfigs, MqttHandler handler) {
+		this.config = config;
+		this.handler = handler;
+		MqttClientConfig[] configs = new MqttClientConfig[config.getMembers()];
+		for (int i = 0; i < configs.length; i++) {
+			configs[i] = memberConfigs.apply(i);
+			configs[i].setClientId(config.getClientIdPrefix() + "-" + i);
+			if (config.getOrdering() == MqttGroupOrdering.PER_TOPIC) {
+				// a topic must only ever run on its owner's thread
+				configs[i].setDispatchMode(MqttDispatchMode.INLINE);
+			}
+		}
+		this.eventLoop = MqttTransportFactory.newEventLoopGroup(configs[0].getTransport(), configs.length);
+		this.members = new Member[configs.length];
+		for (int i = 0; i < configs.length; i++) {
+			// pinned to one thread each, the group hands them out round robin
+			members[i] = new Member(i, configs[i], eventLoop.next());
+		}
+	}
+
+	/**
+	 * Connects and subscribes every member.
+	 *
+	 * @return completes once all members are subscribed, or fails with the first member that could not connect
+	 * or subscribe; members that did are kept and the others keep retrying if their config reconnects
+	 */
+	public Future<Void> start(String host, int port) {
+		Promise<Void> ready = new DefaultPromise<>(eventLoop.next());
+		AtomicInteger pending = new AtomicInteger(members.length);
+		for (Member member : members) {
+			member.client.connect(host, port).addListener((Future<MqttConnectResult> connected) -> {
+				if (!connected.isSuccess()) {
+					ready.tryFailure(connected.cause());
+					return;
+				}
+				MqttConnectResult result = connected.getNow();
+				if (!result.isSuccess()) {
+					ready.tryFailure(new MqttReasonCodeException(result.getReturnCode().byteValue() & 0xff,
+							"Member " + member.index + " was refused: " + result.getReturnCode()));
+					return;
+				}
+				member.subscribe().addListener(subscribed -> {
+					if (!subscribed.isSuccess()) {
+						ready.tryFailure(subscribed.cause());
+					} else if (pending.decrementAndGet() == 0) {
+						ready.trySuccess(null);
+					}
+				});
+			});
+		}
+		return ready;
+	}
+
+	private synchronized void rebalance() {
+		List<Member> connected = new ArrayList<>(members.length);
+		for (Member member : members) {
+			if (member.up) {
+				connected.add(member);
+			}
+		}
+		owners = connected.toArray(new Member[0]);
+		rebalances.increment();
+	}
+
+	private void handle(Member receiver, String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		received.increment();
+		if (config.getOrdering() == MqttGroupOrdering.NONE) {
+			handler.onMessage(topic, qos, retain, payload);
+			return;
+		}
+		Member[] current = owners;
+		Member owner = current.length == 0 ? receiver : current[Math.floorMod(topic.hashCode(), current.length)];
+		if (owner == receiver) {
+			handler.onMessage(topic, qos, retain, payload);
+			return;
+		}
+		handedOver.increment();
+		// the receiver releases its payload when this returns
+		ByteBuf retained = payload.retainedDuplicate();
+		try {
+			owner.loop.execute(() -> {
+				try {
+					handler.onMessage(topic, qos, retain, retained);
+				} finally {
+					retained.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			retained.release();
+		}
+	}
+
+	/**
+	 * Disconnects every member and stops the group's threads.
+	 */
+	@Override
+	public void close() {
+		for (Member member : members) {
+			member.client.disconnect(1);
+		}
+		eventLoop.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+	}
+
+	public MqttConsumerGroupConfig getConfig() {
+		return config;
+	}
+
+	public List<MqttClientService> getMembers() {
+		List<MqttClientService> clients = new ArrayList<>(members.length);
+		for (Member member : members) {
+			clients.add(member.client);
+		}
+		return clients;
+	}
+
+	public int getConnectedMembers() {
+		return owners.length;
+	}
+
+	public long getReceived() {
+		return received.sum();
+	}
+
+	/**
+	 * @return messages a member passed to the owner of their topic, always 0 without per-topic ordering
+	 */
+	public long getHandedOver() {
+		return handedOver.sum();
+	}
+
+	/**
+	 * @return how often a member joined or left
+	 */
+	public long getRebalances() {
+		return rebalances.sum();
+	}
+
+	private final class Member implements MqttHandler, MqttClientCallback {
+
+		private final int index;
+		private final EventLoop loop;
+		private final MqttClientService client;
+		private volatile boolean up;
+
+		Member(int index, MqttClientConfig config, EventLoop loop) {
+			this.index = index;
+			this.loop = loop;
+			this.client = new MqttClientService(config, this);
+			client.setEventLoop(loop);
+			client.setCallback(this);
+		}
+
+		Future<Void> subscribe() {
+			return client.on(config.getSharedFilter(), this, config.getQos()).addListener(f -> {
+				if (f.isSuccess()) {
+					setUp(true);
+				}
+			});
+		}
+
+		private void setUp(boolean up) {
+			if (this.up != up) {
+				this.up = up;
+				rebalance();
+			}
+		}
+
+		@Override
+		public void onMessage(String topic, MqttQoS qos, ByteBuf payload) {
+			onMessage(topic, qos, false, payload);
+		}
+
+		@Override
+		public void onMessage(String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+			handle(this, topic, qos, retain, payload);
+		}
+
+		@Override
+		public void connectionLost(DisReason reason) {
+			setUp(false);
+		}
+
+		@Override
+		public void onSuccessfulReconnect() {
+			// subscriptions do not survive the connection on the client side
+			subscribe();
+		}
+	}
+}
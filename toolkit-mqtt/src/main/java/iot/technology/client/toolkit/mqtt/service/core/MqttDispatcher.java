@@ -0,0 +1,253 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.channel.Channel;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchMode;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttDispatchOverflow;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the handlers of incoming messages, see {@link MqttDispatchMode}.
+ * <p>
+ * Topics are hashed onto lanes. A lane runs its messages one at a time in arrival order, so messages of one topic
+ * are handled in order while different lanes proceed in parallel. All lanes share one bounded queue; what happens
+ * when it is full is decided by {@link MqttDispatchOverflow}. Only QoS 0 messages are ever dropped: QoS 1 and 2
+ * messages are acknowledged by the task once their handlers ran, so a full queue pauses reads for them even with
+ * {@link MqttDispatchOverflow#DROP}, trading memory and broker-side backlog for not losing acknowledged messages.
+ * Handler latency and queue depth are recorded in every mode, including inline.
+ *
+ * @author mushuwei
+ */
+public final class MqttDispatcher {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private final MqttDispatchMode mode;
+	private final MqttDispatchOverflow overflow;
+	private final int capacity;
+	private final ExecutorService executor;
+	private final Lane[] lanes;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger maxQueued = new AtomicInteger();
+	private final LongAdder dispatched = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder pauses = new LongAdder();
+	/**
+	 * handler run time in microseconds, created with the first message so a client that never receives one
+	 * does not pay for the histogram
+	 */
+	private volatile Recorder latency;
+	private volatile Channel pausedChannel;
+
+	public MqttDispatcher(MqttClientConfig config) {
+		this.mode = config.getDispatchMode();
+		this.overflow = config.getDispatchOverflow();
+		this.capacity = config.getDispatchQueueCapacity();
+		int laneCount = config.getDispatchThreads() > 0 ? config.getDispatchThreads() : Runtime.getRuntime().availableProcessors();
+		switch (mode) {
+			case STRIPED:
+				this.executor = Executors.newFixedThreadPool(laneCount, runnable -> {
+					Thread thread = new Thread(runnable, "toolkit-mqtt-dispatch-" + THREAD_COUNTER.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+				break;
+			case VIRTUAL:
+				this.executor = Executors.newThreadPerTaskExecutor(
+						Thread.ofVirtual().name("toolkit-mqtt-dispatch-virtual-", 0).factory());
+				break;
+			default:
+				this.executor = null;
+				laneCount = 0;
+		}
+		this.lanes = new Lane[laneCount];
+		for (int i = 0; i < laneCount; i++) {
+			lanes[i] = new Lane();
+		}
+	}
+
+	/**
+	 * Runs or queues the handlers of one message. Must be called on the channel's event loop.
+	 *
+	 * @param channel   the channel the message came from, paused by {@link MqttDispatchOverflow#PAUSE_READS}
+	 * @param topic     decides the lane
+	 * @param droppable whether {@link MqttDispatchOverflow#DROP} may discard the message, false for QoS 1 and 2
+	 * @param task      invokes the handlers, acknowledges and releases the message
+	 * @param onDrop    releases the message if it is dropped instead
+	 */
+	public void dispatch(Channel channel, String topic, boolean droppable, Runnable task, Runnable onDrop) {
+		dispatched.increment();
+		if (executor == null) {
+			run(task);
+			return;
+		}
+		if (executor.isShutdown()) {
+			dropped.increment();
+			onDrop.run();
+			return;
+		}
+		int depth = queued.incrementAndGet();
+		if (depth > capacity) {
+			if (overflow == MqttDispatchOverflow.DROP && droppable) {
+				queued.decrementAndGet();
+				dropped.increment();
+				onDrop.run();
+				return;
+			}
+			pause(channel);
+		}
+		maxQueued.accumulateAndGet(depth, Math::max);
+		lanes[Math.floorMod(topic.hashCode(), lanes.length)].offer(task);
+	}
+
+	private void pause(Channel channel) {
+		if (channel.config().isAutoRead()) {
+			// published before the task is queued, so the task sees it and resumes reads once drained
+			pausedChannel = channel;
+			channel.config().setAutoRead(false);
+			pauses.increment();
+		}
+	}
+
+	private void resumeIfDrained() {
+		Channel channel = pausedChannel;
+		if (channel != null && queued.get() <= capacity / 2) {
+			pausedChannel = null;
+			channel.config().setAutoRead(true);
+		}
+	}
+
+	private void run(Runnable task) {
+		long start = System.nanoTime();
+		try {
+			task.run();
+		} finally {
+			Recorder recorder = latency;
+			if (recorder == null) {
+				recorder = latencyRecorder();
+			}
+			recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+		}
+	}
+
+	/**
+	 * Stops the worker threads once the queued messages are handled.
+	 */
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	public MqttDispatchMode getMode() {
+		return mode;
+	}
+
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the deepest the queue has been since start
+	 */
+	public int getMaxQueued() {
+		return maxQueued.get();
+	}
+
+	public long getDispatched() {
+		return dispatched.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return handler invocations that threw, the exception is swallowed so the lane keeps going
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * @return how often reads were paused because the queue was full
+	 */
+	public long getPauses() {
+		return pauses.sum();
+	}
+
+	/**
+	 * @return handler latency in microseconds since the previous call, see {@link Recorder#getIntervalHistogram(Histogram)}
+	 */
+	public synchronized Histogram getIntervalLatency(Histogram recycle) {
+		return latencyRecorder().getIntervalHistogram(recycle);
+	}
+
+	private synchronized Recorder latencyRecorder() {
+		if (latency == null) {
+			latency = new Recorder(3);
+		}
+		return latency;
+	}
+
+	private final class Lane implements Runnable {
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger wip = new AtomicInteger();
+
+		void offer(Runnable task) {
+			tasks.add(task);
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				// shut down in the meantime, drain on the caller so nothing is leaked
+				run();
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					try {
+						MqttDispatcher.this.run(task);
+					} catch (Throwable e) {
+						failed.increment();
+					} finally {
+						queued.decrementAndGet();
+						resumeIfDrained();
+					}
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttBackpressureException;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttBackpressurePolicy;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounds the number of publishes a client has in flight, like the MQTT 5 receive maximum.
+ * <p>
+ * A slot is taken before a PUBLISH is written and given back when its future completes. While the window is full,
+ * or the channel is not writable, new publishes are handled according to {@link MqttBackpressurePolicy}, so a
+ * fast producer can't pile up unbounded direct memory when the broker slows down.
+ *
+ * @author mushuwei
+ */
+public final class MqttInflightWindow {
+
+	private final MqttClientConfig config;
+	private final BooleanSupplier writable;
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger drainRequests = new AtomicInteger();
+	private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+	private final Queue<Promise<Void>> waiters = new ConcurrentLinkedQueue<>();
+	private final Object monitor = new Object();
+	private volatile int peerLimit;
+
+	/**
+	 * @param writable tells whether the channel can take more writes right now
+	 */
+	public MqttInflightWindow(MqttClientConfig config, BooleanSupplier writable) {
+		this.config = config;
+		this.writable = writable;
+	}
+
+	/**
+	 * Runs the task once a slot is taken. The task must arrange for {@link #release()} to be called exactly once.
+	 *
+	 * @param inEventLoop true if the caller runs on the channel's event loop and must not block
+	 * @throws MqttBackpressureException if the publish is rejected by the policy
+	 */
+	public void submit(Runnable task, boolean inEventLoop) {
+		MqttBackpressurePolicy policy = config.getBackpressurePolicy();
+		if (queue.isEmpty() && tryAcquire()) {
+			task.run();
+			return;
+		}
+		if (policy == MqttBackpressurePolicy.FAIL_FAST) {
+			throw new MqttBackpressureException("In-flight window is full");
+		}
+		if (policy == MqttBackpressurePolicy.BLOCK && !inEventLoop) {
+			acquireBlocking();
+			task.run();
+			return;
+		}
+		if (queued.incrementAndGet() > config.getMaxQueuedPublishes()) {
+			queued.decrementAndGet();
+			throw new MqttBackpressureException("Publish queue is full");
+		}
+		queue.add(task);
+		// a slot may have been released while we were enqueueing
+		signal();
+	}
+
+	/**
+	 * @return a future completed as soon as a publish would be sent without waiting
+	 */
+	public Future<Void> whenReady(EventExecutor executor) {
+		if (queue.isEmpty() && hasCapacity()) {
+			return executor.newSucceededFuture(null);
+		}
+		Promise<Void> promise = executor.newPromise();
+		waiters.add(promise);
+		signal();
+		return promise;
+	}
+
+	public void release() {
+		inflight.decrementAndGet();
+		signal();
+	}
+
+	/**
+	 * Sends queued publishes while slots are free and wakes up waiters. Called when a slot is released
+	 * and when the channel's writability changes.
+	 */
+	public void signal() {
+		if (drainRequests.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			while (!queue.isEmpty() && tryAcquire()) {
+				Runnable task = queue.poll();
+				if (task == null) {
+					inflight.decrementAndGet();
+					break;
+				}
+				queued.decrementAndGet();
+				task.run();
+			}
+			Promise<Void> waiter;
+			while (queue.isEmpty() && hasCapacity() && (waiter = waiters.poll()) != null) {
+				waiter.trySuccess(null);
+			}
+			missed = drainRequests.addAndGet(-missed);
+		} while (missed != 0);
+		synchronized (monitor) {
+			monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Applies the receive maximum announced in an MQTT 5 CONNACK on top of the configured limit, 0 removes it.
+	 * The window also counts QoS 0 publishes, so this errs on the safe side.
+	 */
+	public void setPeerLimit(int peerLimit) {
+		this.peerLimit = peerLimit;
+		signal();
+	}
+
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	public int getQueued() {
+		return queued.get();
+	}
+
+	private int limit() {
+		int max = config.getMaxInflight();
+		int peer = peerLimit;
+		if (peer <= 0) {
+			return max;
+		}
+		return max <= 0 ? peer : Math.min(max, peer);
+	}
+
+	private boolean hasCapacity() {
+		int max = limit();
+		return writable.getAsBoolean() && (max <= 0 || inflight.get() < max);
+	}
+
+	private boolean tryAcquire() {
+		if (!writable.getAsBoolean()) {
+			return false;
+		}
+		int max = limit();
+		for (; ; ) {
+			int current = inflight.get();
+			if (max > 0 && current >= max) {
+				return false;
+			}
+			if (inflight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void acquireBlocking() {
+		synchronized (monitor) {
+			while (!tryAcquire()) {
+				try {
+					// re-check periodically, writability changes are not always signalled
+					monitor.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MqttBackpressureException("Interrupted while waiting for an in-flight slot", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import iot.technology.client.toolkit.mqtt.service.domain.MqttBackpressureException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hands out MQTT packet identifiers that are not in use by any pending operation.
+ * <p>
+ * Every identifier from 1 to 65535 is a bit in an {@link AtomicLongArray}; {@link #acquire()} claims a clear bit
+ * with a CAS and {@link #release(int)} clears it when the operation is acknowledged or abandoned.
+ * A rotating cursor spreads concurrent callers over different words and delays the reuse of a freed identifier,
+ * so a late acknowledgement is unlikely to hit a new operation.
+ *
+ * @author mushuwei
+ */
+public final class MqttPacketIdAllocator {
+
+	public static final int MAX_PACKET_ID = 0xffff;
+
+	private static final int WORDS = (MAX_PACKET_ID + 1) / Long.SIZE;
+
+	private final AtomicLongArray bits = new AtomicLongArray(WORDS);
+	private final AtomicInteger cursor = new AtomicInteger(1);
+	private final AtomicInteger inUse = new AtomicInteger();
+
+	public MqttPacketIdAllocator() {
+		// 0 is not a valid packet identifier
+		bits.set(0, 1L);
+	}
+
+	/**
+	 * @return a free packet identifier between 1 and 65535
+	 * @throws MqttBackpressureException if every identifier is in flight
+	 */
+	public int acquire() {
+		int start = cursor.getAndIncrement() & MAX_PACKET_ID;
+		int word = start >>> 6;
+		// first word: only bits at or after the cursor, so identifiers are handed out in rotation
+		long mask = -1L << (start & 63);
+		for (int i = 0; i <= WORDS; i++) {
+			int index = (word + i) & (WORDS - 1);
+			long value = bits.get(index);
+			long free = ~value & mask;
+			while (free != 0) {
+				long bit = Long.lowestOneBit(free);
+				if (bits.compareAndSet(index, value, value | bit)) {
+					inUse.incrementAndGet();
+					return (index << 6) | Long.numberOfTrailingZeros(bit);
+				}
+				value = bits.get(index);
+				free = ~value & mask;
+			}
+			mask = -1L;
+		}
+		throw new MqttBackpressureException("All " + MAX_PACKET_ID + " packet identifiers are in flight");
+	}
+
+	/**
+	 * Takes a specific identifier, used to resume a stored session with the identifiers the broker already knows.
+	 *
+	 * @return false if the identifier is invalid or already in use
+	 */
+	public boolean claim(int packetId) {
+		if (packetId <= 0 || packetId > MAX_PACKET_ID) {
+			return false;
+		}
+		int index = packetId >>> 6;
+		long bit = 1L << (packetId & 63);
+		for (; ; ) {
+			long value = bits.get(index);
+			if ((value & bit) != 0) {
+				return false;
+			}
+			if (bits.compareAndSet(index, value, value | bit)) {
+				inUse.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	public void release(int packetId) {
+		if (packetId <= 0 || packetId > MAX_PACKET_ID) {
+			return;
+		}
+		int index = packetId >>> 6;
+		long bit = 1L << (packetId & 63);
+		for (; ; ) {
+			long value = bits.get(index);
+			if ((value & bit) == 0) {
+				return;
+			}
+			if (bits.compareAndSet(index, value, value & ~bit)) {
+				inUse.decrementAndGet();
+				return;
+			}
+		}
+	}
+
+	public boolean isInUse(int packetId) {
+		return (bits.get(packetId >>> 6) & (1L << (packetId & 63))) != 0;
+	}
+
+	/**
+	 * @return identifiers currently held by pending operations
+	 */
+	public int getInUse() {
+		return inUse.get();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues sends on a fixed schedule, independent of how fast acknowledgements come back.
+ * <p>
+ * Send {@code k} is intended for {@code start + k * period}. Each tick makes every send whose intended time has
+ * passed and sleeps until the next one, so when the event loop or the broker stalls, the missed sends go out in a
+ * burst afterwards instead of being silently dropped from the schedule. Measuring latency from the intended time
+ * handed to {@link PacedSend#send(long)} then includes the time a message waited for its turn, which a
+ * send-when-ready loop would hide (coordinated omission).
+ * <p>
+ * Ticks run as nanosecond deadlines in the event loop's scheduled queue, not on the shared
+ * {@link MqttRetransmissionScheduler} wheel whose 100ms tick is far coarser than a send period.
+ *
+ * @author mushuwei
+ */
+public final class MqttPublishPacer {
+
+	/**
+	 * Sends per tick before yielding to other tasks on the loop while catching up.
+	 */
+	private static final int MAX_BURST = 1024;
+
+	@FunctionalInterface
+	public interface PacedSend {
+
+		/**
+		 * @param intendedNanos the {@link System#nanoTime()} this send was scheduled for
+		 */
+		void send(long intendedNanos);
+	}
+
+	private final EventExecutor executor;
+	private final double periodNanos;
+	private final PacedSend send;
+	private final Promise<Void> terminationFuture;
+
+	private long startNanos;
+	private long sends;
+	private volatile long maxLagNanos;
+	private volatile boolean stopped;
+	private ScheduledFuture<?> next;
+
+	/**
+	 * @param executor the loop that runs the sends, normally the client's event loop
+	 * @param rate     sends per second
+	 */
+	public MqttPublishPacer(EventExecutor executor, double rate, PacedSend send) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("rate must be > 0");
+		}
+		this.executor = executor;
+		this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		this.send = send;
+		this.terminationFuture = executor.newPromise();
+	}
+
+	/**
+	 * @param initialDelayNanos delay of the first send, e.g. a random part of a period so clients don't fire in lockstep
+	 */
+	public MqttPublishPacer start(long initialDelayNanos) {
+		executor.execute(() -> {
+			startNanos = System.nanoTime() + initialDelayNanos;
+			tick();
+		});
+		return this;
+	}
+
+	private void tick() {
+		if (stopped) {
+			return;
+		}
+		long now = System.nanoTime();
+		long intended = intendedNanos(sends);
+		int burst = 0;
+		while (intended <= now) {
+			maxLagNanos = Math.max(maxLagNanos, now - intended);
+			send.send(intended);
+			intended = intendedNanos(++sends);
+			if (++burst == MAX_BURST) {
+				executor.execute(this::tick);
+				return;
+			}
+		}
+		next = executor.schedule(this::tick, intended - now, TimeUnit.NANOSECONDS);
+	}
+
+	private long intendedNanos(long index) {
+		return startNanos + (long) (index * periodNanos);
+	}
+
+	/**
+	 * Stops the schedule; no send starts after the returned future completes.
+	 */
+	public Future<Void> stop() {
+		stopped = true;
+		executor.execute(() -> {
+			if (next != null) {
+				next.cancel(false);
+			}
+			terminationFuture.trySuccess(null);
+		});
+		return terminationFuture;
+	}
+
+	public Future<Void> terminationFuture() {
+		return terminationFuture;
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return the longest a send started after its intended time, a measure of how far the loop fell behind
+	 */
+	public long getMaxLagNanos() {
+		return maxLagNanos;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Schedules retransmissions of unacknowledged packets for one client.
+ * <p>
+ * All clients share a single {@link HashedWheelTimer}, so an in-flight packet costs one wheel slot instead of a
+ * task in an event loop's scheduled queue, and thousands of bench clients don't each own a timer thread.
+ * The wheel is JVM-wide rather than per client or per event loop group on purpose: a wheel needs a thread of its
+ * own and has to be stopped with its group, while the wheel thread does no more than hand expired timeouts to the
+ * channel's event loop (see {@link iot.technology.client.toolkit.mqtt.service.handler.RetransmissionHandler}), so
+ * one thread keeps up with every group and the retransmissions still run where their client's I/O does.
+ * Delays follow the client's backoff settings, read from {@link MqttClientConfig} on every schedule.
+ *
+ * @author mushuwei
+ */
+public final class MqttRetransmissionScheduler {
+
+	private static final long TICK_MILLIS = 100;
+	private static final int TICKS_PER_WHEEL = 512;
+
+	private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+			new DefaultThreadFactory("toolkit-mqtt-retransmit", true), TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+
+	private static final LongAdder TOTAL_RETRANSMITS = new LongAdder();
+
+	private final MqttClientConfig config;
+	private final LongAdder retransmits = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+
+	public MqttRetransmissionScheduler(MqttClientConfig config) {
+		this.config = config;
+	}
+
+	public Timeout schedule(TimerTask task, long delayMillis) {
+		return TIMER.newTimeout(task, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public long initialDelay() {
+		return config.getRetransmitDelayMillis();
+	}
+
+	public long nextDelay(long delayMillis) {
+		return Math.min((long) (delayMillis * config.getRetransmitBackoffMultiplier()), config.getRetransmitMaxDelayMillis());
+	}
+
+	/**
+	 * @return true if another retransmission is allowed after {@code attempts} retransmissions
+	 */
+	public boolean canRetransmit(int attempts) {
+		int max = config.getRetransmitMaxAttempts();
+		return max < 0 || attempts < max;
+	}
+
+	public void onRetransmit() {
+		retransmits.increment();
+		TOTAL_RETRANSMITS.increment();
+	}
+
+	public void onExhausted() {
+		exhausted.increment();
+	}
+
+	public long getRetransmits() {
+		return retransmits.sum();
+	}
+
+	/**
+	 * @return packets given up on after {@link MqttClientConfig#getRetransmitMaxAttempts()} retransmissions
+	 */
+	public long getExhausted() {
+		return exhausted.sum();
+	}
+
+	/**
+	 * @return retransmission timers currently queued on the shared wheel, across all clients
+	 */
+	public static long getQueueSize() {
+		return TIMER.pendingTimeouts();
+	}
+
+	/**
+	 * @return retransmissions sent by all clients since start
+	 */
+	public static long getTotalRetransmits() {
+		return TOTAL_RETRANSMITS.sum();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds client {@link SslContext}s and hands out one instance per set of certificate files.
+ * <p>
+ * Parsing PEM files and setting up a context is done once per distinct set of files, and since a context owns the
+ * TLS session cache, every client and every reconnect using it can resume an earlier session, by session ticket or
+ * session id, instead of running a full handshake. Contexts use OpenSSL through netty-tcnative when it is on the
+ * class path and fall back to the JDK provider otherwise. Editing a file yields a new context on the next call.
+ *
+ * @author mushuwei
+ */
+public final class MqttSslContextFactory {
+
+	/**
+	 * sessions kept per context, one per broker address is enough, the rest is headroom for many brokers
+	 */
+	private static final long SESSION_CACHE_SIZE = 4096;
+	private static final long SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+	private static final Map<Key, SslContext> CONTEXTS = new ConcurrentHashMap<>();
+	/**
+	 * ids of the sessions negotiated per context, prefixed by the broker address, most recent last
+	 */
+	private static final Map<SslContext, Map<String, Boolean>> SESSION_IDS = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private MqttSslContextFactory() {
+	}
+
+	/**
+	 * @param ca         PEM file of the CA certificates to trust, null for the JDK's default trust store
+	 * @param clientCert PEM file of the client certificate chain, null without client authentication
+	 * @param clientKey  PEM file of the PKCS#8 client key, required with {@code clientCert}
+	 * @param insecure   trust every server certificate, {@code ca} is ignored
+	 * @return the shared context for these files
+	 * @throws SSLException if a file cannot be read or parsed
+	 */
+	public static SslContext client(String ca, String clientCert, String clientKey, boolean insecure) throws SSLException {
+		if ((clientCert == null) != (clientKey == null)) {
+			throw new IllegalArgumentException("clientCert and clientKey must be given together");
+		}
+		Key key = new Key(insecure ? null : ca, clientCert, clientKey, insecure);
+		SslContext context = CONTEXTS.get(key);
+		if (context == null) {
+			context = build(key);
+			SslContext raced = CONTEXTS.putIfAbsent(key, context);
+			if (raced != null) {
+				context = raced;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * @return {@link SslProvider#OPENSSL} if netty-tcnative could be loaded, {@link SslProvider#JDK} otherwise
+	 */
+	public static SslProvider provider() {
+		return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+	}
+
+	/**
+	 * Tells whether a completed handshake resumed an earlier session rather than negotiating a new one, which
+	 * neither provider reports directly.
+	 * <p>
+	 * A session whose id was seen before on the same context and broker is resumed; that covers TLS 1.2 and
+	 * OpenSSL, which keeps the id of a session it resumes from a ticket. The JDK gives every TLS 1.3 handshake a
+	 * fresh id but keeps the creation time of the session it resumes, so a session created before the handshake
+	 * started is resumed too. OpenSSL reports creation times in whole seconds, so for it the start is truncated to
+	 * the second and a session resumed within the second it was created is only caught by its id.
+	 *
+	 * @param handshakeStartMillis {@link System#currentTimeMillis()} before the handshake started
+	 */
+	public static boolean isResumed(SslContext context, String host, int port, SSLSession session,
+									long handshakeStartMillis) {
+		String id = host + ":" + port + "/" + HexFormat.of().formatHex(session.getId());
+		boolean seen;
+		synchronized (SESSION_IDS) {
+			Map<String, Boolean> ids = SESSION_IDS.computeIfAbsent(context, c -> new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+					return size() > SESSION_CACHE_SIZE;
+				}
+			});
+			seen = session.getId().length > 0 && ids.put(id, Boolean.TRUE) != null;
+		}
+		long createdBefore = context instanceof JdkSslContext ? handshakeStartMillis
+				: handshakeStartMillis - handshakeStartMillis % 1000;
+		return seen || session.getCreationTime() < createdBefore;
+	}
+
+	/**
+	 * Drops the cached contexts, e.g. after certificates were replaced in place with the same timestamps.
+	 */
+	public static void clear() {
+		CONTEXTS.clear();
+	}
+
+	private static SslContext build(Key key) throws SSLException {
+		SslProvider provider = provider();
+		try {
+			return builder(key, provider).build();
+		} catch (SSLException | IllegalArgumentException e) {
+			if (provider == SslProvider.JDK) {
+				throw e;
+			}
+			// e.g. a key format OpenSSL does not accept, the JDK may still read it
+			return builder(key, SslProvider.JDK).build();
+		}
+	}
+
+	private static SslContextBuilder builder(Key key, SslProvider provider) {
+		SslContextBuilder builder = SslContextBuilder.forClient()
+				.sslProvider(provider)
+				.sessionCacheSize(SESSION_CACHE_SIZE)
+				.sessionTimeout(SESSION_TIMEOUT_SECONDS);
+		if (key.insecure) {
+			builder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+		} else if (key.ca != null) {
+			builder.trustManager(new File(key.ca));
+		}
+		if (key.clientCert != null) {
+			builder.keyManager(new File(key.clientCert), new File(key.clientKey));
+		}
+		return builder;
+	}
+
+	/**
+	 * File names with their modification times, so an edited file is parsed again.
+	 */
+	private static final class Key {
+
+		private final String ca;
+		private final String clientCert;
+		private final String clientKey;
+		private final boolean insecure;
+		private final long[] modified;
+
+		Key(String ca, String clientCert, String clientKey, boolean insecure) {
+			this.ca = ca;
+			this.clientCert = clientCert;
+			this.clientKey = clientKey;
+			this.insecure = insecure;
+			this.modified = new long[]{modified(ca), modified(clientCert), modified(clientKey)};
+		}
+
+		private static long modified(String path) {
+			return path == null ? 0 : new File(path).lastModified();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return insecure == other.insecure
+					&& Objects.equals(ca, other.ca)
+					&& Objects.equals(clientCert, other.clientCert)
+					&& Objects.equals(clientKey, other.clientKey)
+					&& Arrays.equals(modified, other.modified);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ca, clientCert, clientKey, insecure, Arrays.hashCode(modified));
+		}
+	}
+}
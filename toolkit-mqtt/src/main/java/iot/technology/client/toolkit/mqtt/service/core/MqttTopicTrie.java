@@ -0,0 +1,299 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import iot.technology.client.toolkit.mqtt.service.domain.MqttSubscription;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Topic filter trie used to dispatch incoming PUBLISH messages to subscriptions.
+ * <p>
+ * The trie is keyed by topic level and is copy-on-write: {@link #put(MqttSubscription)} and
+ * {@link #remove(String)} build a new path and swap the root with a CAS, while {@link #match}
+ * walks an immutable snapshot without locking and without allocating.
+ * Wildcards follow the MQTT spec: {@code +} matches exactly one level, {@code #} matches the parent
+ * level and everything below it, and filters starting with a wildcard never match topics starting with {@code $}.
+ *
+ * @author mushuwei
+ */
+public final class MqttTopicTrie {
+
+	private static final String SINGLE_LEVEL_WILDCARD = "+";
+	private static final String MULTI_LEVEL_WILDCARD = "#";
+
+	private final AtomicReference<Node> root = new AtomicReference<>(Node.EMPTY);
+
+	/**
+	 * Callback invoked for every subscription matching a topic.
+	 *
+	 * @param <C> the type of the context object handed through {@link #match}
+	 */
+	public interface Visitor<C> {
+
+		/**
+		 * @return true if the subscription consumed the message
+		 */
+		boolean visit(MqttSubscription subscription, C context);
+	}
+
+	/**
+	 * Registers the subscription under its topic filter, replacing any subscription already stored for that filter.
+	 */
+	public void put(MqttSubscription subscription) {
+		String[] levels = subscription.getTopic().split("/", -1);
+		Node current;
+		Node updated;
+		do {
+			current = root.get();
+			updated = current.put(levels, 0, subscription);
+		} while (!root.compareAndSet(current, updated));
+	}
+
+	/**
+	 * Removes whatever subscription is stored for the topic filter.
+	 *
+	 * @return true if a subscription was removed
+	 */
+	public boolean remove(String topicFilter) {
+		return remove(topicFilter, null);
+	}
+
+	/**
+	 * Removes the subscription stored for the topic filter only if it is {@code expected}.
+	 * A {@code null} expected subscription removes any subscription.
+	 *
+	 * @return true if a subscription was removed
+	 */
+	public boolean remove(String topicFilter, MqttSubscription expected) {
+		String[] levels = topicFilter.split("/", -1);
+		Node current;
+		Node updated;
+		do {
+			current = root.get();
+			updated = current.remove(levels, 0, expected);
+			if (updated == current) {
+				return false;
+			}
+			if (updated == null) {
+				updated = Node.EMPTY;
+			}
+		} while (!root.compareAndSet(current, updated));
+		return true;
+	}
+
+	public void clear() {
+		root.set(Node.EMPTY);
+	}
+
+	public boolean isEmpty() {
+		return root.get() == Node.EMPTY;
+	}
+
+	/**
+	 * Visits every subscription whose filter matches the topic name.
+	 *
+	 * @return the number of visits that returned true
+	 */
+	public <C> int match(String topic, C context, Visitor<C> visitor) {
+		boolean systemTopic = !topic.isEmpty() && topic.charAt(0) == '$';
+		return match(root.get(), topic, 0, systemTopic, context, visitor);
+	}
+
+	private static <C> int match(Node node, String topic, int start, boolean systemTopic, C context, Visitor<C> visitor) {
+		int matched = 0;
+		boolean wildcardAllowed = start != 0 || !systemTopic;
+		// '#' covers the parent level as well as every level below it
+		if (node.multiLevel != null && wildcardAllowed) {
+			matched += visit(node.multiLevel, context, visitor);
+		}
+		if (start > topic.length()) {
+			return matched + visit(node, context, visitor);
+		}
+		int end = topic.indexOf('/', start);
+		if (end < 0) {
+			end = topic.length();
+		}
+		Node child = node.child(topic, start, end);
+		if (child != null) {
+			matched += match(child, topic, end + 1, systemTopic, context, visitor);
+		}
+		if (node.singleLevel != null && wildcardAllowed) {
+			matched += match(node.singleLevel, topic, end + 1, systemTopic, context, visitor);
+		}
+		return matched;
+	}
+
+	private static <C> int visit(Node node, C context, Visitor<C> visitor) {
+		MqttSubscription subscription = node.subscription;
+		return subscription != null && visitor.visit(subscription, context) ? 1 : 0;
+	}
+
+	private static final class Node {
+
+		static final Node[] NO_CHILDREN = new Node[0];
+		static final Node EMPTY = new Node("", NO_CHILDREN, 0, null, null, null);
+
+		final String level;
+		final int hash;
+		/**
+		 * open addressing table keyed by level, always at most half full
+		 */
+		final Node[] children;
+		final int childCount;
+		final Node singleLevel;
+		final Node multiLevel;
+		final MqttSubscription subscription;
+
+		Node(String level, Node[] children, int childCount, Node singleLevel, Node multiLevel,
+			 MqttSubscription subscription) {
+			this.level = level;
+			this.hash = level.hashCode();
+			this.children = children;
+			this.childCount = childCount;
+			this.singleLevel = singleLevel;
+			this.multiLevel = multiLevel;
+			this.subscription = subscription;
+		}
+
+		static Node leaf(String level) {
+			return new Node(level, NO_CHILDREN, 0, null, null, null);
+		}
+
+		boolean isEmpty() {
+			return childCount == 0 && singleLevel == null && multiLevel == null && subscription == null;
+		}
+
+		Node child(String topic, int start, int end) {
+			Node[] table = this.children;
+			if (table.length == 0) {
+				return null;
+			}
+			int h = 0;
+			for (int i = start; i < end; i++) {
+				h = 31 * h + topic.charAt(i);
+			}
+			int length = end - start;
+			int mask = table.length - 1;
+			for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+				Node candidate = table[i];
+				if (candidate == null) {
+					return null;
+				}
+				if (candidate.hash == h && candidate.level.length() == length
+						&& topic.regionMatches(start, candidate.level, 0, length)) {
+					return candidate;
+				}
+			}
+		}
+
+		Node put(String[] levels, int index, MqttSubscription value) {
+			if (index == levels.length) {
+				return new Node(level, children, childCount, singleLevel, multiLevel, value);
+			}
+			String next = levels[index];
+			if (SINGLE_LEVEL_WILDCARD.equals(next)) {
+				Node target = singleLevel != null ? singleLevel : leaf(next);
+				return new Node(level, children, childCount, target.put(levels, index + 1, value), multiLevel, subscription);
+			}
+			if (MULTI_LEVEL_WILDCARD.equals(next)) {
+				Node target = multiLevel != null ? multiLevel : leaf(next);
+				return new Node(level, children, childCount, singleLevel, target.put(levels, index + 1, value), subscription);
+			}
+			Node existing = child(next, 0, next.length());
+			Node target = existing != null ? existing : leaf(next);
+			return withChild(existing, target.put(levels, index + 1, value));
+		}
+
+		/**
+		 * @return this node if nothing changed, null if the node became empty
+		 */
+		Node remove(String[] levels, int index, MqttSubscription expected) {
+			if (index == levels.length) {
+				if (subscription == null || (expected != null && subscription != expected)) {
+					return this;
+				}
+				Node updated = new Node(level, children, childCount, singleLevel, multiLevel, null);
+				return updated.isEmpty() ? null : updated;
+			}
+			String next = levels[index];
+			Node updated;
+			if (SINGLE_LEVEL_WILDCARD.equals(next)) {
+				if (singleLevel == null) {
+					return this;
+				}
+				Node target = singleLevel.remove(levels, index + 1, expected);
+				if (target == singleLevel) {
+					return this;
+				}
+				updated = new Node(level, children, childCount, target, multiLevel, subscription);
+			} else if (MULTI_LEVEL_WILDCARD.equals(next)) {
+				if (multiLevel == null) {
+					return this;
+				}
+				Node target = multiLevel.remove(levels, index + 1, expected);
+				if (target == multiLevel) {
+					return this;
+				}
+				updated = new Node(level, children, childCount, singleLevel, target, subscription);
+			} else {
+				Node existing = child(next, 0, next.length());
+				if (existing == null) {
+					return this;
+				}
+				Node target = existing.remove(levels, index + 1, expected);
+				if (target == existing) {
+					return this;
+				}
+				updated = withChild(existing, target);
+			}
+			return updated.isEmpty() ? null : updated;
+		}
+
+		/**
+		 * Copies this node with {@code previous} replaced by {@code replacement}; either side may be null.
+		 */
+		private Node withChild(Node previous, Node replacement) {
+			int count = childCount + (previous == null ? 1 : 0) - (replacement == null ? 1 : 0);
+			Node[] table = NO_CHILDREN;
+			if (count > 0) {
+				table = new Node[Integer.highestOneBit(count) << 2];
+				for (Node node : children) {
+					if (node != null && node != previous) {
+						insert(table, node);
+					}
+				}
+				if (replacement != null) {
+					insert(table, replacement);
+				}
+			}
+			return new Node(level, table, count, singleLevel, multiLevel, subscription);
+		}
+
+		private static void insert(Node[] table, Node node) {
+			int mask = table.length - 1;
+			int i = spread(node.hash) & mask;
+			while (table[i] != null) {
+				i = (i + 1) & mask;
+			}
+			table[i] = node;
+		}
+
+		private static int spread(int h) {
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.core;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttTransport;
+
+/**
+ * Picks the event loop group and channel type for a {@link MqttTransport}.
+ * <p>
+ * Native transports are probed once; when one is not available (another OS, an old kernel,
+ * or the native library missing from the classpath) the NIO transport is used instead.
+ *
+ * @author mushuwei
+ */
+public final class MqttTransportFactory {
+
+	private static final boolean EPOLL_AVAILABLE = probe(MqttTransport.EPOLL);
+	private static final boolean IO_URING_AVAILABLE = probe(MqttTransport.IO_URING);
+
+	private MqttTransportFactory() {
+	}
+
+	/**
+	 * @return the transport that will actually be used for the requested one
+	 */
+	public static MqttTransport resolve(MqttTransport requested) {
+		switch (requested) {
+			case AUTO:
+			case EPOLL:
+				return EPOLL_AVAILABLE ? MqttTransport.EPOLL : MqttTransport.NIO;
+			case IO_URING:
+				return IO_URING_AVAILABLE ? MqttTransport.IO_URING : MqttTransport.NIO;
+			default:
+				return MqttTransport.NIO;
+		}
+	}
+
+	/**
+	 * @param threads number of event loops, 0 for Netty's default of twice the number of cores
+	 */
+	public static EventLoopGroup newEventLoopGroup(MqttTransport requested, int threads) {
+		switch (resolve(requested)) {
+			case EPOLL:
+				return new EpollEventLoopGroup(threads);
+			case IO_URING:
+				return new IOUringEventLoopGroup(threads);
+			default:
+				return new NioEventLoopGroup(threads);
+		}
+	}
+
+	/**
+	 * @return the transport of an existing group, or of the group of a single loop a client is pinned to, so a
+	 * shared group gets a matching channel type
+	 */
+	public static MqttTransport transportOf(EventLoopGroup group) {
+		if (group instanceof EventLoop) {
+			group = ((EventLoop) group).parent();
+		}
+		if (EPOLL_AVAILABLE && group instanceof EpollEventLoopGroup) {
+			return MqttTransport.EPOLL;
+		}
+		if (IO_URING_AVAILABLE && group instanceof IOUringEventLoopGroup) {
+			return MqttTransport.IO_URING;
+		}
+		return MqttTransport.NIO;
+	}
+
+	/**
+	 * Sets the channel type and socket options for connections on the group.
+	 */
+	public static void configure(Bootstrap bootstrap, EventLoopGroup group, MqttClientConfig config) {
+		MqttTransport transport = transportOf(group);
+		bootstrap.group(group);
+		bootstrap.channel(channelClass(transport));
+		bootstrap.option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
+		if (config.getSendBufferSize() > 0) {
+			bootstrap.option(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+		}
+		if (config.isTcpQuickAck()) {
+			if (transport == MqttTransport.EPOLL) {
+				bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+			} else if (transport == MqttTransport.IO_URING) {
+				bootstrap.option(IOUringChannelOption.TCP_QUICKACK, true);
+			}
+		}
+	}
+
+	/**
+	 * Sets the server channel type for accepting connections, used by the embedded broker.
+	 * Both groups must have been created for the same transport.
+	 */
+	public static void configure(ServerBootstrap bootstrap, EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+		bootstrap.group(bossGroup, workerGroup);
+		bootstrap.channel(serverChannelClass(transportOf(workerGroup)));
+		bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+	}
+
+	private static Class<? extends ServerSocketChannel> serverChannelClass(MqttTransport transport) {
+		switch (transport) {
+			case EPOLL:
+				return EpollServerSocketChannel.class;
+			case IO_URING:
+				return IOUringServerSocketChannel.class;
+			default:
+				return NioServerSocketChannel.class;
+		}
+	}
+
+	private static Class<? extends SocketChannel> channelClass(MqttTransport transport) {
+		switch (transport) {
+			case EPOLL:
+				return EpollSocketChannel.class;
+			case IO_URING:
+				return IOUringSocketChannel.class;
+			default:
+				return NioSocketChannel.class;
+		}
+	}
+
+	private static boolean probe(MqttTransport transport) {
+		try {
+			return transport == MqttTransport.EPOLL ? Epoll.isAvailable() : IOUring.isAvailable();
+		} catch (LinkageError e) {
+			// native transport classes are not on the classpath
+			return false;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * @author mushuwei
+ */
+public class MqttBackpressureException extends RuntimeException {
+
+	private static final long serialVersionUID = -3279165304482620637L;
+
+	public MqttBackpressureException() {
+	}
+
+	public MqttBackpressureException(String message) {
+		super(message);
+	}
+
+	public MqttBackpressureException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public MqttBackpressureException(Throwable cause) {
+		super(cause);
+	}
+
+	public MqttBackpressureException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * What {@code publish()} does when the in-flight window is full or the channel is not writable.
+ *
+ * @author mushuwei
+ */
+public enum MqttBackpressurePolicy {
+
+	/**
+	 * wait on the calling thread until a slot frees up; calls made on the channel's event loop queue instead
+	 */
+	BLOCK,
+
+	/**
+	 * fail the returned future with {@link MqttBackpressureException} right away
+	 */
+	FAIL_FAST,
+
+	/**
+	 * park the publish in a bounded queue and send it when a slot frees up,
+	 * failing with {@link MqttBackpressureException} once the queue is full
+	 */
+	QUEUE
+}
@@ -83,11 +83,11 @@ public class MqttCallDomain implements Serializable {
 		MqttClientConfig config = new MqttClientConfig();
 		if (mqttVersion.equals(MqttVersionEnum.MQTT_3_1.getValue())) {
 			config.setProtocolVersion(MqttVersion.MQTT_3_1);
-		}
-		if (mqttVersion.equals(MqttVersionEnum.MQTT_5_0.getValue())) {
+		} else if (mqttVersion.equals(MqttVersionEnum.MQTT_5_0.getValue())) {
 			config.setProtocolVersion(MqttVersion.MQTT_5);
+		} else {
+			config.setProtocolVersion(MqttVersion.MQTT_3_1_1);
 		}
-		config.setProtocolVersion(MqttVersion.MQTT_3_1_1);
 
 		config.setClientId(clientId);
 		config.setHost(host);
@@ -18,7 +18,6 @@ package iot.technology.client.toolkit.mqtt.service.domain;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttVersion;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
 import iot.technology.client.toolkit.common.constants.CertTypeEnum;
 import iot.technology.client.toolkit.common.constants.ConfirmCodeEnum;
 import iot.technology.client.toolkit.common.constants.MqttVersionEnum;
@@ -27,9 +26,9 @@ import iot.technology.client.toolkit.mqtt.config.MqttSettings;
 import iot.technology.client.toolkit.mqtt.config.MqttSettingsInfo;
 import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
 import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
+import iot.technology.client.toolkit.mqtt.service.core.MqttSslContextFactory;
 
 import javax.net.ssl.SSLException;
-import java.io.File;
 import java.io.Serializable;
 
 /**
@@ -92,11 +91,11 @@ public class MqttConfigSettingsDomain implements Serializable {
 		MqttClientConfig config = new MqttClientConfig();
 		if (mqttVersion.equals(MqttVersionEnum.MQTT_3_1.getValue())) {
 			config.setProtocolVersion(MqttVersion.MQTT_3_1);
-		}
-		if (mqttVersion.equals(MqttVersionEnum.MQTT_5_0.getValue())) {
+		} else if (mqttVersion.equals(MqttVersionEnum.MQTT_5_0.getValue())) {
 			config.setProtocolVersion(MqttVersion.MQTT_5);
+		} else {
+			config.setProtocolVersion(MqttVersion.MQTT_3_1_1);
 		}
-		config.setProtocolVersion(MqttVersion.MQTT_3_1_1);
 
 		config.setClientId(clientId);
 		config.setHost(host);
@@ -118,10 +117,8 @@ public class MqttConfigSettingsDomain implements Serializable {
 		if (ssl.equals(ConfirmCodeEnum.YES.getValue()) && certType.equals(CertTypeEnum.SELF_SIGNED.getDesc())) {
 			SslContext sslContext = null;
 			try {
-				sslContext = SslContextBuilder.forClient()
-						.keyManager(new File(clientCert), new File(clientKey))
-						.trustManager(new File(ca))
-						.build();
+				// shared with earlier connections to keep their TLS sessions for resumption
+				sslContext = MqttSslContextFactory.client(ca, clientCert, clientKey, false);
 			} catch (SSLException e) {
 				StringBuilder sb = new StringBuilder();
 				sb.append("sslContext load fail!");
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * Where {@link iot.technology.client.toolkit.mqtt.service.handler.MqttHandler#onMessage} runs.
+ *
+ * @author mushuwei
+ */
+public enum MqttDispatchMode {
+
+	/**
+	 * on the channel's event loop, a slow handler delays reads and acknowledgements of the whole connection
+	 */
+	INLINE,
+
+	/**
+	 * on a fixed pool of platform threads, one per lane
+	 */
+	STRIPED,
+
+	/**
+	 * on virtual threads, a lane only occupies a carrier thread while its handler runs
+	 */
+	VIRTUAL
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * What the dispatcher does with an incoming message once its queue is full.
+ *
+ * @author mushuwei
+ */
+public enum MqttDispatchOverflow {
+
+	/**
+	 * discard QoS 0 messages; QoS 1 and 2 messages pause reads instead, since they are only acknowledged once handled
+	 */
+	DROP,
+
+	/**
+	 * stop reading from the socket until the queue is half empty, so the broker and TCP slow down the sender
+	 */
+	PAUSE_READS
+}
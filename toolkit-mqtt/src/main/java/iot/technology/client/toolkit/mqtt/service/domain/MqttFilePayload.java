@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A PUBLISH body backed by a read-only memory mapping of a file.
+ * <p>
+ * {@link #encode} writes the fixed and variable header into a small buffer of its own and appends a duplicate
+ * of the mapping, so the body goes from the page cache to the socket without being copied onto the heap or
+ * through {@link io.netty.handler.codec.mqtt.MqttEncoder}. Retransmissions encode again from the same mapping.
+ * The mapping is not reference counted, the garbage collector unmaps it once no write refers to it any more.
+ *
+ * @author mushuwei
+ */
+public final class MqttFilePayload {
+
+	/**
+	 * largest remaining length a fixed header can express
+	 */
+	public static final int MAX_REMAINING_LENGTH = 268_435_455;
+
+	private final Path path;
+	private final ByteBuf content;
+	private final boolean mqtt5;
+
+	private MqttFilePayload(Path path, ByteBuf content, boolean mqtt5) {
+		this.path = path;
+		this.content = content;
+		this.mqtt5 = mqtt5;
+	}
+
+	/**
+	 * @param mqtt5 whether the header needs the (empty) MQTT 5 property section
+	 */
+	public static MqttFilePayload map(Path path, boolean mqtt5) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > MAX_REMAINING_LENGTH) {
+				throw new IOException(path + " is larger than the MQTT limit of " + MAX_REMAINING_LENGTH + " bytes");
+			}
+			return new MqttFilePayload(path, Unpooled.unreleasableBuffer(
+					Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))), mqtt5);
+		}
+	}
+
+	/**
+	 * @return the remaining length of a PUBLISH of this file, may exceed {@link #MAX_REMAINING_LENGTH}
+	 */
+	public long remainingLength(String topic, MqttQoS qos) {
+		return variableLength(topic.getBytes(StandardCharsets.UTF_8).length, qos.value()) + (long) content.readableBytes();
+	}
+
+	/**
+	 * @return the complete PUBLISH packet, header followed by the mapped body
+	 * @throws IllegalArgumentException if the headers push the packet over {@link #MAX_REMAINING_LENGTH}
+	 */
+	public ByteBuf encode(MqttFixedHeader fixedHeader, MqttPublishVariableHeader variableHeader) {
+		byte[] topic = variableHeader.topicName().getBytes(StandardCharsets.UTF_8);
+		int qos = fixedHeader.qosLevel().value();
+		int variableLength = variableLength(topic.length, qos);
+		if ((long) variableLength + content.readableBytes() > MAX_REMAINING_LENGTH) {
+			throw new IllegalArgumentException("PUBLISH of " + path + " is larger than the MQTT limit of "
+					+ MAX_REMAINING_LENGTH + " bytes");
+		}
+		ByteBuf header = ByteBufAllocator.DEFAULT.directBuffer(1 + 4 + variableLength);
+		header.writeByte(0x30 | (fixedHeader.isDup() ? 0x08 : 0) | qos << 1 | (fixedHeader.isRetain() ? 0x01 : 0));
+		writeRemainingLength(header, variableLength + content.readableBytes());
+		header.writeShort(topic.length).writeBytes(topic);
+		if (qos > 0) {
+			header.writeShort(variableHeader.packetId());
+		}
+		if (mqtt5) {
+			// property length 0
+			header.writeByte(0);
+		}
+		return Unpooled.wrappedBuffer(header, content.duplicate());
+	}
+
+	private int variableLength(int topicLength, int qos) {
+		return 2 + topicLength + (qos > 0 ? 2 : 0) + (mqtt5 ? 1 : 0);
+	}
+
+	static void writeRemainingLength(ByteBuf buf, int length) {
+		do {
+			int digit = length % 128;
+			length /= 128;
+			if (length > 0) {
+				digit |= 0x80;
+			}
+			buf.writeByte(digit);
+		} while (length > 0);
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public int length() {
+		return content.readableBytes();
+	}
+}
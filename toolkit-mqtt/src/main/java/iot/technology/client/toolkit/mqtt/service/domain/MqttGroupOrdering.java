@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * What a {@link iot.technology.client.toolkit.mqtt.service.core.MqttConsumerGroup} guarantees about the order in which
+ * its handler sees the messages of one topic.
+ *
+ * @author mushuwei
+ */
+public enum MqttGroupOrdering {
+
+	/**
+	 * every member runs the handler for what the broker sent it, messages of one topic may be handled concurrently
+	 */
+	NONE,
+
+	/**
+	 * each topic is owned by one connected member and handled on its thread, one message at a time in the order
+	 * they reach that thread; the others hand the messages of that topic over, and ownership moves when a member
+	 * drops out or rejoins. The broker already spread the topic over several connections, so this serializes
+	 * the handling of a topic but cannot restore its publish order.
+	 */
+	PER_TOPIC
+}
@@ -16,12 +16,13 @@
 package iot.technology.client.toolkit.mqtt.service.domain;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.EventLoop;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Promise;
 import iot.technology.client.toolkit.mqtt.service.PendingOperation;
+import iot.technology.client.toolkit.mqtt.service.core.MqttRetransmissionScheduler;
 import iot.technology.client.toolkit.mqtt.service.handler.RetransmissionHandler;
 
 import java.util.function.Consumer;
@@ -41,6 +42,9 @@ public final class MqttPendingPublish {
 	private final RetransmissionHandler<MqttMessage> pubrelRetransmissionHandler;
 
 	private boolean sent = false;
+	private MqttFilePayload filePayload;
+	private MqttPreparedPublish preparedPublish;
+	private long sentNanos;
 
 	public MqttPendingPublish(int messageId, Promise<Void> future, ByteBuf payload,
 							  MqttPublishMessage message, MqttQoS qos, PendingOperation operation) {
@@ -83,10 +87,52 @@ public final class MqttPendingPublish {
 		return qos;
 	}
 
-	public void startPublishRetransmissionTimer(EventLoop eventLoop, Consumer<Object> sendPacket) {
-		this.publishRetransmissionHandler.setHandle(((fixedHeader, originalMessage) ->
-				sendPacket.accept(new MqttPublishMessage(fixedHeader, originalMessage.variableHeader(), this.payload.retain()))));
-		this.publishRetransmissionHandler.start(eventLoop);
+	/**
+	 * @return {@link System#nanoTime()} of the first send, for round-trip times
+	 */
+	public long getSentNanos() {
+		return sentNanos;
+	}
+
+	public void setSentNanos(long sentNanos) {
+		this.sentNanos = sentNanos;
+	}
+
+	public MqttFilePayload getFilePayload() {
+		return filePayload;
+	}
+
+	/**
+	 * Retransmissions of a file publish re-encode the mapped file instead of using {@link #getPayload()}.
+	 */
+	public void setFilePayload(MqttFilePayload filePayload) {
+		this.filePayload = filePayload;
+	}
+
+	public MqttPreparedPublish getPreparedPublish() {
+		return preparedPublish;
+	}
+
+	/**
+	 * Retransmissions of a prepared publish reuse its encoded packet with the DUP flag set.
+	 */
+	public void setPreparedPublish(MqttPreparedPublish preparedPublish) {
+		this.preparedPublish = preparedPublish;
+	}
+
+	public void startPublishRetransmissionTimer(MqttRetransmissionScheduler scheduler, EventExecutor executor,
+												Consumer<Object> sendPacket, Runnable onExhausted) {
+		this.publishRetransmissionHandler.setHandle(((fixedHeader, originalMessage) -> {
+			if (this.filePayload != null) {
+				sendPacket.accept(this.filePayload.encode(fixedHeader, originalMessage.variableHeader()));
+			} else if (this.preparedPublish != null) {
+				sendPacket.accept(this.preparedPublish.packet(messageId, fixedHeader.isDup()));
+			} else {
+				sendPacket.accept(new MqttPublishMessage(fixedHeader, originalMessage.variableHeader(), this.payload.retain()));
+			}
+		}));
+		this.publishRetransmissionHandler.setExhaustedHandler(onExhausted);
+		this.publishRetransmissionHandler.start(scheduler, executor);
 	}
 
 	public void onPubackReceived() {
@@ -97,10 +143,12 @@ public final class MqttPendingPublish {
 		this.pubrelRetransmissionHandler.setOriginalMessage(pubrelMessage);
 	}
 
-	public void startPubrelRetransmissionTimer(EventLoop eventLoop, Consumer<Object> sendPacket) {
+	public void startPubrelRetransmissionTimer(MqttRetransmissionScheduler scheduler, EventExecutor executor,
+											   Consumer<Object> sendPacket, Runnable onExhausted) {
 		this.pubrelRetransmissionHandler.setHandle((fixedHeader, originalMessage) ->
 				sendPacket.accept(new MqttMessage(fixedHeader, originalMessage.variableHeader())));
-		this.pubrelRetransmissionHandler.start(eventLoop);
+		this.pubrelRetransmissionHandler.setExhaustedHandler(onExhausted);
+		this.pubrelRetransmissionHandler.start(scheduler, executor);
 	}
 
 	public void onPubcompReceived() {
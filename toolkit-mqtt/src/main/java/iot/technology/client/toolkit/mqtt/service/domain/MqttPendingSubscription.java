@@ -15,10 +15,11 @@
  */
 package iot.technology.client.toolkit.mqtt.service.domain;
 
-import io.netty.channel.EventLoop;
 import io.netty.handler.codec.mqtt.MqttSubscribeMessage;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Promise;
 import iot.technology.client.toolkit.mqtt.service.PendingOperation;
+import iot.technology.client.toolkit.mqtt.service.core.MqttRetransmissionScheduler;
 import iot.technology.client.toolkit.mqtt.service.handler.MqttHandler;
 import iot.technology.client.toolkit.mqtt.service.handler.RetransmissionHandler;
 
@@ -80,11 +81,13 @@ public final class MqttPendingSubscription {
 		return handlers;
 	}
 
-	public void startRetransmitTimer(EventLoop eventLoop, Consumer<Object> sendPacket) {
+	public void startRetransmitTimer(MqttRetransmissionScheduler scheduler, EventExecutor executor, Consumer<Object> sendPacket,
+									Runnable onExhausted) {
 		if (this.sent) { //If the packet is sent, we can start the retransmit timer
 			this.retransmissionHandler.setHandle((fixedHeader, originalMessage) ->
 					sendPacket.accept(new MqttSubscribeMessage(fixedHeader, originalMessage.variableHeader(), originalMessage.payload())));
-			this.retransmissionHandler.start(eventLoop);
+			this.retransmissionHandler.setExhaustedHandler(onExhausted);
+			this.retransmissionHandler.start(scheduler, executor);
 		}
 	}
 
@@ -15,10 +15,11 @@
  */
 package iot.technology.client.toolkit.mqtt.service.domain;
 
-import io.netty.channel.EventLoop;
 import io.netty.handler.codec.mqtt.MqttUnsubscribeMessage;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Promise;
 import iot.technology.client.toolkit.mqtt.service.PendingOperation;
+import iot.technology.client.toolkit.mqtt.service.core.MqttRetransmissionScheduler;
 import iot.technology.client.toolkit.mqtt.service.handler.RetransmissionHandler;
 
 import java.util.function.Consumer;
@@ -52,10 +53,12 @@ public final class MqttPendingUnsubscription {
 		return topic;
 	}
 
-	public void startRetransmissionTimer(EventLoop eventLoop, Consumer<Object> sendPacket) {
+	public void startRetransmissionTimer(MqttRetransmissionScheduler scheduler, EventExecutor executor,
+										 Consumer<Object> sendPacket, Runnable onExhausted) {
 		this.retransmissionHandler.setHandle((fixedHeader, originalMessage) ->
 				sendPacket.accept(new MqttUnsubscribeMessage(fixedHeader, originalMessage.variableHeader(), originalMessage.payload())));
-		this.retransmissionHandler.start(eventLoop);
+		this.retransmissionHandler.setExhaustedHandler(onExhausted);
+		this.retransmissionHandler.start(scheduler, executor);
 	}
 
 	public void onUnsubackReceived() {
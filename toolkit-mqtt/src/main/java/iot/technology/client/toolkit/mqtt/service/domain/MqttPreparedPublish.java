@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * A PUBLISH encoded once and sent many times, for devices that repeat the same topic and payload.
+ * <p>
+ * The whole packet lives in one pooled direct buffer, written without {@link io.netty.handler.codec.mqtt.MqttEncoder}.
+ * A QoS 0 send is a {@link ByteBuf#retainedDuplicate()} of it, which allocates nothing but a recycled wrapper.
+ * Packets with a packet identifier cannot patch the shared buffer while earlier sends may still be queued
+ * in the channel, so they get a pooled copy of the few header bytes with the identifier and DUP flag set,
+ * followed by a slice of the shared payload. Topic aliases are not applied to prepared packets.
+ *
+ * @author mushuwei
+ */
+public final class MqttPreparedPublish {
+
+	private final String topic;
+	private final MqttQoS qos;
+	private final boolean retain;
+	private final ByteBuf frame;
+	private final int headerLength;
+	/**
+	 * -1 for QoS 0, which has no packet identifier
+	 */
+	private final int packetIdOffset;
+
+	private MqttPreparedPublish(String topic, MqttQoS qos, boolean retain, ByteBuf frame, int headerLength, int packetIdOffset) {
+		this.topic = topic;
+		this.qos = qos;
+		this.retain = retain;
+		this.frame = frame;
+		this.headerLength = headerLength;
+		this.packetIdOffset = packetIdOffset;
+	}
+
+	/**
+	 * Encodes the packet and releases the payload.
+	 *
+	 * @param mqtt5 whether the header needs the (empty) MQTT 5 property section
+	 */
+	public static MqttPreparedPublish encode(String topic, ByteBuf payload, MqttQoS qos, boolean retain, boolean mqtt5) {
+		try {
+			int topicLength = ByteBufUtil.utf8Bytes(topic);
+			int variableLength = 2 + topicLength + (qos != MqttQoS.AT_MOST_ONCE ? 2 : 0) + (mqtt5 ? 1 : 0);
+			long remainingLength = (long) variableLength + payload.readableBytes();
+			if (remainingLength > MqttFilePayload.MAX_REMAINING_LENGTH) {
+				throw new IllegalArgumentException("PUBLISH to " + topic + " is larger than the MQTT limit of "
+						+ MqttFilePayload.MAX_REMAINING_LENGTH + " bytes");
+			}
+			ByteBuf frame = ByteBufAllocator.DEFAULT.directBuffer(1 + 4 + (int) remainingLength);
+			frame.writeByte(0x30 | qos.value() << 1 | (retain ? 0x01 : 0));
+			MqttFilePayload.writeRemainingLength(frame, (int) remainingLength);
+			frame.writeShort(topicLength);
+			ByteBufUtil.writeUtf8(frame, topic);
+			int packetIdOffset = -1;
+			if (qos != MqttQoS.AT_MOST_ONCE) {
+				packetIdOffset = frame.writerIndex();
+				frame.writeShort(0);
+			}
+			if (mqtt5) {
+				// property length 0
+				frame.writeByte(0);
+			}
+			int headerLength = frame.writerIndex();
+			frame.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+			return new MqttPreparedPublish(topic, qos, retain, frame, headerLength, packetIdOffset);
+		} finally {
+			payload.release();
+		}
+	}
+
+	/**
+	 * @return the complete packet for one send, owned by the caller
+	 */
+	public ByteBuf packet(int packetId, boolean dup) {
+		if (packetIdOffset < 0) {
+			return frame.retainedDuplicate();
+		}
+		ByteBuf header = frame.alloc().directBuffer(headerLength);
+		header.writeBytes(frame, 0, headerLength);
+		header.setShort(packetIdOffset, packetId);
+		if (dup) {
+			header.setByte(0, header.getByte(0) | 0x08);
+		}
+		return Unpooled.wrappedBuffer(header, frame.retainedSlice(headerLength, payloadLength()));
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public MqttQoS getQos() {
+		return qos;
+	}
+
+	public boolean isRetain() {
+		return retain;
+	}
+
+	public int payloadLength() {
+		return frame.writerIndex() - headerLength;
+	}
+
+	/**
+	 * @return the encoded size of one packet
+	 */
+	public int packetLength() {
+		return frame.writerIndex();
+	}
+
+	/**
+	 * @return the payload as a slice holding its own reference, which keeps the packet alive after {@link #release()}
+	 */
+	public ByteBuf retainedPayload() {
+		return frame.retainedSlice(headerLength, payloadLength());
+	}
+
+	/**
+	 * Frees the encoded packet. Sends still in flight keep their own reference and are not affected.
+	 */
+	public void release() {
+		frame.release();
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * One message of a {@code publishBatch} call.
+ *
+ * @author mushuwei
+ */
+public final class MqttPublishRequest {
+
+	private final String topic;
+	private final ByteBuf payload;
+	private final MqttQoS qos;
+	private final boolean retain;
+
+	public MqttPublishRequest(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
+		this.topic = topic;
+		this.payload = payload;
+		this.qos = qos;
+		this.retain = retain;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public ByteBuf getPayload() {
+		return payload;
+	}
+
+	public MqttQoS getQos() {
+		return qos;
+	}
+
+	public boolean isRetain() {
+		return retain;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * Failure reported by the broker with an MQTT 5 reason code (0x80 and above), or by the client on its behalf.
+ *
+ * @author mushuwei
+ */
+public class MqttReasonCodeException extends RuntimeException {
+
+	private static final long serialVersionUID = 5823409162758136294L;
+
+	public static final int UNSPECIFIED_ERROR = 0x80;
+	public static final int PACKET_TOO_LARGE = 0x95;
+
+	private final int reasonCode;
+
+	public MqttReasonCodeException(int reasonCode, String message) {
+		super(message + " (reason code 0x" + Integer.toHexString(reasonCode) + ")");
+		this.reasonCode = reasonCode;
+	}
+
+	public int getReasonCode() {
+		return reasonCode;
+	}
+
+	/**
+	 * @return true if the reason code reports a failure
+	 */
+	public static boolean isFailure(int reasonCode) {
+		return (reasonCode & 0xff) >= UNSPECIFIED_ERROR;
+	}
+}
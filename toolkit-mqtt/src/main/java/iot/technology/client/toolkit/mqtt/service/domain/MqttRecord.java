@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * A received message read back from a recording.
+ *
+ * @author mushuwei
+ */
+public final class MqttRecord {
+
+	private final long receivedMicros;
+	private final String topic;
+	private final MqttQoS qos;
+	private final boolean retain;
+	private final ByteBuf payload;
+
+	public MqttRecord(long receivedMicros, String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		this.receivedMicros = receivedMicros;
+		this.topic = topic;
+		this.qos = qos;
+		this.retain = retain;
+		this.payload = payload;
+	}
+
+	/**
+	 * @return receive time in microseconds since the epoch
+	 */
+	public long getReceivedMicros() {
+		return receivedMicros;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public MqttQoS getQos() {
+		return qos;
+	}
+
+	public boolean isRetain() {
+		return retain;
+	}
+
+	/**
+	 * @return the payload, a view of the mapped segment that needs no release
+	 */
+	public ByteBuf getPayload() {
+		return payload;
+	}
+}
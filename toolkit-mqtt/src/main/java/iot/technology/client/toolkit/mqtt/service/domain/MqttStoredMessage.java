@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * An outbound QoS 1/2 message read back from a session store.
+ *
+ * @author mushuwei
+ */
+public final class MqttStoredMessage {
+
+	private final int packetId;
+	private final String topic;
+	private final MqttQoS qos;
+	private final boolean retain;
+	private final byte[] payload;
+	private final boolean released;
+
+	public MqttStoredMessage(int packetId, String topic, MqttQoS qos, boolean retain, byte[] payload, boolean released) {
+		this.packetId = packetId;
+		this.topic = topic;
+		this.qos = qos;
+		this.retain = retain;
+		this.payload = payload;
+		this.released = released;
+	}
+
+	public int getPacketId() {
+		return packetId;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public MqttQoS getQos() {
+		return qos;
+	}
+
+	public boolean isRetain() {
+		return retain;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return true if the broker already sent PUBREC and only the PUBREL is outstanding, the message itself is gone
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.domain;
+
+/**
+ * Netty transport used for MQTT connections.
+ *
+ * @author mushuwei
+ */
+public enum MqttTransport {
+
+	/**
+	 * epoll when available, otherwise NIO
+	 */
+	AUTO,
+
+	/**
+	 * JDK NIO selector, available everywhere
+	 */
+	NIO,
+
+	/**
+	 * Linux epoll, falls back to NIO elsewhere
+	 */
+	EPOLL,
+
+	/**
+	 * Linux io_uring through the Netty incubator module, falls back to NIO when the kernel doesn't support it
+	 */
+	IO_URING
+}
@@ -15,15 +15,17 @@
  */
 package iot.technology.client.toolkit.mqtt.service.handler;
 
-import com.google.common.collect.ImmutableSet;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.mqtt.*;
 import io.netty.util.CharsetUtil;
 import io.netty.util.concurrent.Promise;
+import iot.technology.client.toolkit.mqtt.service.MqttClientConfig;
 import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
+import iot.technology.client.toolkit.mqtt.service.core.MqttTopicTrie;
 import iot.technology.client.toolkit.mqtt.service.domain.*;
+import iot.technology.client.toolkit.mqtt.service.session.MqttSessionStore;
 
 /**
  * @author mushuwei
@@ -32,6 +34,7 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 
 	private final MqttClientService client;
 	private final Promise<MqttConnectResult> connectFuture;
+	private final MqttTopicTrie.Visitor<MqttPublishMessage> publishVisitor = this::invokeHandler;
 
 	public MqttChannelHandler(MqttClientService client, Promise<MqttConnectResult> connectFuture) {
 		this.client = client;
@@ -65,9 +68,21 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 			case PUBCOMP:
 				handlePubcomp(msg);
 				break;
+			case DISCONNECT:
+				// MQTT 5 brokers tell why they are about to close the connection
+				ctx.close();
+				break;
 		}
 	}
 
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isWritable()) {
+			this.client.getInflightWindow().signal();
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
 	@Override
 	public void channelActive(ChannelHandlerContext ctx) throws Exception {
 		super.channelActive(ctx);
@@ -85,7 +100,8 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 						: 0,
 				this.client.getClientConfig().getLastWill() != null,                // Has Will
 				this.client.getClientConfig().isCleanSession(),                     // Clean Session
-				this.client.getClientConfig().getTimeoutSeconds()                   // Timeout
+				this.client.getClientConfig().getTimeoutSeconds(),                  // Timeout
+				connectProperties()
 		);
 		MqttConnectPayload payload = new MqttConnectPayload(
 				this.client.getClientConfig().getClientId(),
@@ -99,33 +115,83 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 		ctx.channel().writeAndFlush(new MqttConnectMessage(fixedHeader, variableHeader, payload));
 	}
 
+	private MqttProperties connectProperties() {
+		MqttClientConfig config = this.client.getClientConfig();
+		if (config.getProtocolVersion() != MqttVersion.MQTT_5) {
+			return MqttProperties.NO_PROPERTIES;
+		}
+		MqttProperties properties = new MqttProperties();
+		long sessionExpiry = config.getSessionExpiryInterval();
+		if (sessionExpiry < 0) {
+			sessionExpiry = config.isCleanSession() ? 0 : 0xFFFFFFFFL;
+		}
+		if (sessionExpiry > 0) {
+			properties.add(new MqttProperties.IntegerProperty(
+					MqttProperties.MqttPropertyType.SESSION_EXPIRY_INTERVAL.value(), (int) sessionExpiry));
+		}
+		// the decoder rejects anything bigger anyway
+		properties.add(new MqttProperties.IntegerProperty(
+				MqttProperties.MqttPropertyType.MAXIMUM_PACKET_SIZE.value(), config.getMaxBytesInMessage()));
+		if (config.getTopicAliasMaximum() > 0) {
+			properties.add(new MqttProperties.IntegerProperty(
+					MqttProperties.MqttPropertyType.TOPIC_ALIAS_MAXIMUM.value(), config.getTopicAliasMaximum()));
+		}
+		return properties;
+	}
+
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
 		super.channelInactive(ctx);
 	}
 
-	private void invokeHandlersForIncomingPublish(MqttPublishMessage message) {
-		boolean handlerInvoked = false;
-		for (MqttSubscription subscription : ImmutableSet.copyOf(this.client.getSubscriptions().values())) {
-			if (subscription.matches(message.variableHeader().topicName())) {
-				if (subscription.isOnce() && subscription.isCalled()) {
-					continue;
-				}
-				message.payload().markReaderIndex();
-				subscription.setCalled(true);
-				subscription.getHandler()
-						.onMessage(message.variableHeader().topicName(), message.fixedHeader().qosLevel(), message.payload());
-				if (subscription.isOnce()) {
-					this.client.off(subscription.getTopic(), subscription.getHandler());
-				}
-				message.payload().resetReaderIndex();
-				handlerInvoked = true;
+	private void invokeHandlersForIncomingPublish(Channel channel, MqttPublishMessage message) {
+		invokeHandlersForIncomingPublish(channel, message, null);
+	}
+
+	/**
+	 * @param acknowledgement written once the handlers ran, so the broker never considers a message delivered that
+	 *                        is still queued in the dispatcher
+	 */
+	private void invokeHandlersForIncomingPublish(Channel channel, MqttPublishMessage message, MqttMessage acknowledgement) {
+		this.client.getDispatcher().dispatch(channel, message.variableHeader().topicName(),
+				message.fixedHeader().qosLevel() == MqttQoS.AT_MOST_ONCE, () -> {
+					try {
+						deliver(message);
+					} finally {
+						if (acknowledgement != null) {
+							channel.writeAndFlush(acknowledgement);
+						}
+					}
+				}, () -> message.payload().release());
+	}
+
+	private void deliver(MqttPublishMessage message) {
+		try {
+			int handlerInvoked = this.client.getSubscriptionTrie()
+					.match(message.variableHeader().topicName(), message, this.publishVisitor);
+			if (handlerInvoked == 0 && client.getDefaultHandler() != null) {
+				client.getDefaultHandler().onMessage(message.variableHeader().topicName(), message.fixedHeader().qosLevel(),
+						message.fixedHeader().isRetain(), message.payload());
 			}
+		} finally {
+			message.payload().release();
+		}
+	}
+
+	private boolean invokeHandler(MqttSubscription subscription, MqttPublishMessage message) {
+		if (subscription.isOnce() && subscription.isCalled()) {
+			return false;
 		}
-		if (!handlerInvoked && client.getDefaultHandler() != null) {
-			client.getDefaultHandler().onMessage(message.variableHeader().topicName(), message.fixedHeader().qosLevel(), message.payload());
+		message.payload().markReaderIndex();
+		subscription.setCalled(true);
+		subscription.getHandler()
+				.onMessage(message.variableHeader().topicName(), message.fixedHeader().qosLevel(),
+						message.fixedHeader().isRetain(), message.payload());
+		if (subscription.isOnce()) {
+			this.client.off(subscription.getTopic(), subscription.getHandler());
 		}
-		message.payload().release();
+		message.payload().resetReaderIndex();
+		return true;
 	}
 
 
@@ -134,6 +200,7 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 			case CONNECTION_ACCEPTED:
 				this.connectFuture.setSuccess(
 						new MqttConnectResult(true, MqttConnectReturnCode.CONNECTION_ACCEPTED, channel.closeFuture()));
+				this.client.applyConnAckProperties(message.variableHeader().properties());
 
 				this.client.getPendingSubscriptions().entrySet().stream().filter((e) -> !e.getValue().isSent()).forEach((e) -> {
 					channel.write(e.getValue().getSubscribeMessage());
@@ -141,27 +208,27 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 				});
 
 				this.client.getPendingPublishes().forEach((id, publish) -> {
-					if (publish.isSent()) {
+					if (publish.isSent() || publish.getFilePayload() != null || publish.getPreparedPublish() != null) {
 						return;
 					}
 					channel.write(publish.getMessage());
 					publish.setSent(true);
 					if (publish.getQos() == MqttQoS.AT_MOST_ONCE) {
-						publish.getFuture().setSuccess(null); //We don't get an ACK for QOS 0
+						// remove before completing, completion frees the packet id for reuse
 						this.client.getPendingPublishes().remove(publish.getMessageId());
+						publish.getPayload().release();
+						publish.getFuture().setSuccess(null); //We don't get an ACK for QOS 0
 					}
 				});
+				this.client.replaySession(message.variableHeader().isSessionPresent());
 				channel.flush();
 				if (this.client.isReconnect()) {
 					this.client.onSuccessfulReconnect();
 				}
 				break;
 
-			case CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD:
-			case CONNECTION_REFUSED_IDENTIFIER_REJECTED:
-			case CONNECTION_REFUSED_NOT_AUTHORIZED:
-			case CONNECTION_REFUSED_SERVER_UNAVAILABLE:
-			case CONNECTION_REFUSED_UNACCEPTABLE_PROTOCOL_VERSION:
+			default:
+				// 3.1.1 return codes and MQTT 5 reason codes alike
 				this.connectFuture.setSuccess(
 						new MqttConnectResult(false, message.variableHeader().connectReturnCode(), channel.closeFuture()));
 				channel.close();
@@ -176,10 +243,16 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 			return;
 		}
 		pendingSubscription.onSubackReceived();
+		int reasonCode = message.payload().reasonCodes().isEmpty() ? 0 : message.payload().reasonCodes().get(0);
+		if (MqttReasonCodeException.isFailure(reasonCode)) {
+			this.client.getPendingSubscribeTopics().remove(pendingSubscription.getTopic());
+			pendingSubscription.getFuture().tryFailure(
+					new MqttReasonCodeException(reasonCode, "Subscription to " + pendingSubscription.getTopic() + " rejected"));
+			return;
+		}
 		for (MqttPendingSubscription.MqttPendingHandler handler : pendingSubscription.getHandlers()) {
-			MqttSubscription subscription = new MqttSubscription(pendingSubscription.getTopic(), handler.getHandler(), handler.isOnce(), message.fixedHeader().qosLevel());
-			this.client.getSubscriptions().put(pendingSubscription.getTopic(), subscription);
-			this.client.getHandlerToSubscribtion().put(handler.getHandler(), subscription);
+			this.client.putSubscription(new MqttSubscription(pendingSubscription.getTopic(), handler.getHandler(), handler.isOnce(),
+					message.fixedHeader().qosLevel()));
 		}
 		this.client.getPendingSubscribeTopics().remove(pendingSubscription.getTopic());
 
@@ -191,18 +264,20 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 	}
 
 	private void handlePublish(Channel channel, MqttPublishMessage message) {
+		this.client.getMetrics().onPublishReceived(message.fixedHeader().qosLevel(), message.payload().readableBytes());
 		switch (message.fixedHeader().qosLevel()) {
 			case AT_MOST_ONCE:
-				invokeHandlersForIncomingPublish(message);
+				invokeHandlersForIncomingPublish(channel, message);
 				break;
 
 			case AT_LEAST_ONCE:
-				invokeHandlersForIncomingPublish(message);
+				MqttPubAckMessage pubAckMessage = null;
 				if (message.variableHeader().packetId() != -1) {
 					MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0);
 					MqttMessageIdVariableHeader variableHeader = MqttMessageIdVariableHeader.from(message.variableHeader().packetId());
-					channel.writeAndFlush(new MqttPubAckMessage(fixedHeader, variableHeader));
+					pubAckMessage = new MqttPubAckMessage(fixedHeader, variableHeader);
 				}
+				invokeHandlersForIncomingPublish(channel, message, pubAckMessage);
 				break;
 
 			case EXACTLY_ONCE:
@@ -227,8 +302,8 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 		}
 		unsubscription.onUnsubackReceived();
 		this.client.getServerSubscriptions().remove(unsubscription.getTopic());
-		unsubscription.getFuture().setSuccess(null);
 		this.client.getPendingServerUnsubscribes().remove(message.variableHeader().messageId());
+		unsubscription.getFuture().setSuccess(null);
 	}
 
 	private void handlePuback(MqttPubAckMessage message) {
@@ -236,46 +311,95 @@ public final class MqttChannelHandler extends SimpleChannelInboundHandler<MqttMe
 		if (pendingPublish == null) {
 			return;
 		}
-		pendingPublish.getFuture().setSuccess(null);
 		pendingPublish.onPubackReceived();
+		this.client.getMetrics().onPuback(pendingPublish.getSentNanos());
 		this.client.getPendingPublishes().remove(message.variableHeader().messageId());
+		removeFromSession(message.variableHeader().messageId());
 		pendingPublish.getPayload().release();
+		completePublish(pendingPublish, reasonCode(message.variableHeader()));
+	}
+
+	private void completePublish(MqttPendingPublish pendingPublish, int reasonCode) {
+		if (MqttReasonCodeException.isFailure(reasonCode)) {
+			pendingPublish.getFuture().setFailure(
+					new MqttReasonCodeException(reasonCode, "PUBLISH " + pendingPublish.getMessageId() + " rejected"));
+		} else {
+			pendingPublish.getFuture().setSuccess(null);
+		}
+	}
+
+	private static int reasonCode(MqttMessageIdVariableHeader variableHeader) {
+		return variableHeader instanceof MqttPubReplyMessageVariableHeader
+				? ((MqttPubReplyMessageVariableHeader) variableHeader).reasonCode() & 0xff
+				: 0;
 	}
 
 	private void handlePubrec(Channel channel, MqttMessage message) {
 		MqttPendingPublish pendingPublish =
 				this.client.getPendingPublishes().get(((MqttMessageIdVariableHeader) message.variableHeader()).messageId());
+		if (pendingPublish == null) {
+			return;
+		}
 		pendingPublish.onPubackReceived();
+		this.client.getMetrics().onPubrec(pendingPublish.getSentNanos());
+		int reasonCode = reasonCode((MqttMessageIdVariableHeader) message.variableHeader());
+		if (MqttReasonCodeException.isFailure(reasonCode)) {
+			// a rejected QoS 2 flow ends here, no PUBREL
+			this.client.getPendingPublishes().remove(pendingPublish.getMessageId());
+			removeFromSession(pendingPublish.getMessageId());
+			pendingPublish.getPayload().release();
+			completePublish(pendingPublish, reasonCode);
+			return;
+		}
+		MqttSessionStore store = this.client.getSessionStore();
+		if (store != null) {
+			store.storePubrel(pendingPublish.getMessageId());
+		}
 
 		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0);
-		MqttMessageIdVariableHeader variableHeader = (MqttMessageIdVariableHeader) message.variableHeader();
+		MqttMessageIdVariableHeader variableHeader = MqttMessageIdVariableHeader.from(pendingPublish.getMessageId());
 		MqttMessage pubrelMessage = new MqttMessage(fixedHeader, variableHeader);
 		channel.writeAndFlush(pubrelMessage);
 
 		pendingPublish.setPubrelMessage(pubrelMessage);
-		pendingPublish.startPubrelRetransmissionTimer(this.client.getEventLoop().next(), this.client::sendAndFlushPacket);
+		pendingPublish.startPubrelRetransmissionTimer(this.client.getRetransmissionScheduler(), channel.eventLoop(),
+				this.client::sendAndFlushPacket, () -> this.client.onRetransmissionExhausted(pendingPublish));
 	}
 
 	private void handlePubrel(Channel channel, MqttMessage message) {
+		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBCOMP, false, MqttQoS.AT_MOST_ONCE, false, 0);
+		MqttMessageIdVariableHeader variableHeader =
+				MqttMessageIdVariableHeader.from(((MqttMessageIdVariableHeader) message.variableHeader()).messageId());
+		MqttMessage pubcompMessage = new MqttMessage(fixedHeader, variableHeader);
 		if (this.client.getQos2PendingIncomingPublishes()
 				.containsKey(((MqttMessageIdVariableHeader) message.variableHeader()).messageId())) {
 			MqttIncomingQos2Publish incomingQos2Publish =
 					this.client.getQos2PendingIncomingPublishes().get(((MqttMessageIdVariableHeader) message.variableHeader()).messageId());
-			this.invokeHandlersForIncomingPublish(incomingQos2Publish.getIncomingPublish());
+			this.invokeHandlersForIncomingPublish(channel, incomingQos2Publish.getIncomingPublish(), pubcompMessage);
 			this.client.getQos2PendingIncomingPublishes().remove(incomingQos2Publish.getIncomingPublish().variableHeader().packetId());
+		} else {
+			channel.writeAndFlush(pubcompMessage);
 		}
-		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBCOMP, false, MqttQoS.AT_MOST_ONCE, false, 0);
-		MqttMessageIdVariableHeader variableHeader =
-				MqttMessageIdVariableHeader.from(((MqttMessageIdVariableHeader) message.variableHeader()).messageId());
-		channel.writeAndFlush(new MqttMessage(fixedHeader, variableHeader));
 	}
 
 	private void handlePubcomp(MqttMessage message) {
 		MqttMessageIdVariableHeader variableHeader = (MqttMessageIdVariableHeader) message.variableHeader();
 		MqttPendingPublish pendingPublish = this.client.getPendingPublishes().get(variableHeader.messageId());
-		pendingPublish.getFuture().setSuccess(null);
+		if (pendingPublish == null) {
+			return;
+		}
+		this.client.getMetrics().onPubcomp(pendingPublish.getSentNanos());
 		this.client.getPendingPublishes().remove(variableHeader.messageId());
+		removeFromSession(variableHeader.messageId());
 		pendingPublish.getPayload().release();
 		pendingPublish.onPubcompReceived();
+		pendingPublish.getFuture().setSuccess(null);
+	}
+
+	private void removeFromSession(int packetId) {
+		MqttSessionStore store = this.client.getSessionStore();
+		if (store != null) {
+			store.remove(packetId);
+		}
 	}
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.handler;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sits next to the socket and counts the flushes that reach it.
+ * Each one costs at least one write syscall, so flushes per message show how well writes are coalesced.
+ *
+ * @author mushuwei
+ */
+@ChannelHandler.Sharable
+public final class MqttFlushCounter extends ChannelOutboundHandlerAdapter {
+
+	public static final MqttFlushCounter INSTANCE = new MqttFlushCounter();
+
+	private final LongAdder flushes = new LongAdder();
+
+	private MqttFlushCounter() {
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		flushes.increment();
+		ctx.flush();
+	}
+
+	/**
+	 * @return flushes issued to the socket by all clients since start
+	 */
+	public long getFlushes() {
+		return flushes.sum();
+	}
+}
@@ -24,4 +24,11 @@ import io.netty.handler.codec.mqtt.MqttQoS;
 public interface MqttHandler {
 
 	void onMessage(String topic, MqttQoS qos, ByteBuf payload);
+
+	/**
+	 * Called for every received message, override to see the retain flag as well.
+	 */
+	default void onMessage(String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		onMessage(topic, qos, payload);
+	}
 }
@@ -25,6 +25,7 @@ import io.netty.handler.codec.mqtt.MqttMessageType;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttClientMetrics;
 
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -35,10 +36,13 @@ import java.util.concurrent.TimeUnit;
 public class MqttPingHandler extends ChannelInboundHandlerAdapter {
 
 	private final int keepaliveSeconds;
+	private final MqttClientMetrics metrics;
 	private ScheduledFuture<?> pingRespTimeout;
+	private long pingSentNanos;
 
-	public MqttPingHandler(int keepaliveSeconds) {
+	public MqttPingHandler(int keepaliveSeconds, MqttClientMetrics metrics) {
 		this.keepaliveSeconds = keepaliveSeconds;
+		this.metrics = metrics;
 	}
 
 	@Override
@@ -77,6 +81,7 @@ public class MqttPingHandler extends ChannelInboundHandlerAdapter {
 	private void sendPingReq(Channel channel) {
 		MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PINGREQ, false, MqttQoS.AT_MOST_ONCE, false, 0);
 		channel.writeAndFlush(new MqttMessage(fixedHeader));
+		this.pingSentNanos = System.nanoTime();
 
 		if (this.pingRespTimeout != null) {
 			this.pingRespTimeout = channel.eventLoop().schedule(() -> {
@@ -93,6 +98,10 @@ public class MqttPingHandler extends ChannelInboundHandlerAdapter {
 	}
 
 	private void handlePingResp() {
+		if (this.pingSentNanos != 0) {
+			this.metrics.onPingResponse(this.pingSentNanos);
+			this.pingSentNanos = 0;
+		}
 		if (this.pingRespTimeout != null && !this.pingRespTimeout.isCancelled() && !this.pingRespTimeout.isDone()) {
 			this.pingRespTimeout.cancel(true);
 			this.pingRespTimeout = null;
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.common.constants.StorageConstants;
+import iot.technology.client.toolkit.common.utils.ColorUtils;
+import iot.technology.client.toolkit.mqtt.service.record.MqttRecordWriter;
+
+import java.io.IOException;
+import java.util.ResourceBundle;
+
+/**
+ * Records every message to a {@link MqttRecordWriter} before passing it on. Recording stops at the first write error.
+ *
+ * @author mushuwei
+ */
+public class MqttRecordHandler implements MqttHandler {
+
+	private final MqttHandler delegate;
+	private final MqttRecordWriter writer;
+	private volatile boolean failed;
+
+	public MqttRecordHandler(MqttHandler delegate, MqttRecordWriter writer) {
+		this.delegate = delegate;
+		this.writer = writer;
+	}
+
+	@Override
+	public void onMessage(String topic, MqttQoS qos, ByteBuf payload) {
+		onMessage(topic, qos, false, payload);
+	}
+
+	@Override
+	public void onMessage(String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		if (!failed) {
+			try {
+				writer.append(topic, qos, retain, payload);
+			} catch (IOException e) {
+				failed = true;
+				writer.closeQuietly();
+				ResourceBundle bundle = ResourceBundle.getBundle(StorageConstants.LANG_MESSAGES);
+				System.out.println(ColorUtils.redError(String.format(bundle.getString("mqtt.record.failed"), e.getMessage())));
+			}
+		}
+		delegate.onMessage(topic, qos, retain, payload);
+	}
+}
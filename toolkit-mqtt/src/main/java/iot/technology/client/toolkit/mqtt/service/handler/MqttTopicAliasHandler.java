@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.handler;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.mqtt.*;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MQTT 5 topic aliases of one connection, between the codec and {@link MqttChannelHandler}.
+ * <p>
+ * Outbound, the first PUBLISH to a topic carries the full name plus an alias, later ones only the alias.
+ * Aliases live in an LRU table bounded by the smaller of our limit and the broker's Topic Alias Maximum;
+ * when it is full the least recently used topic hands its alias over to the new one.
+ * Running on the event loop in write order guarantees the broker learns an alias before it is used.
+ * <p>
+ * Inbound, aliases sent by the broker are resolved back to topic names before the message is dispatched.
+ *
+ * @author mushuwei
+ */
+public final class MqttTopicAliasHandler extends ChannelDuplexHandler {
+
+	/**
+	 * the topic alias property costs three bytes on every aliased PUBLISH
+	 */
+	private static final int ALIAS_PROPERTY_BYTES = 3;
+
+	private static final LongAdder HITS = new LongAdder();
+	private static final LongAdder MISSES = new LongAdder();
+	private static final LongAdder BYTES_SAVED = new LongAdder();
+
+	private final int limit;
+	private final Map<Integer, String> inbound = new HashMap<>();
+	private final LinkedHashMap<String, Integer> outbound = new LinkedHashMap<>(16, 0.75f, true);
+	private int outboundMaximum;
+
+	/**
+	 * @param limit aliases kept in each direction, also advertised to the broker in CONNECT
+	 */
+	public MqttTopicAliasHandler(int limit) {
+		this.limit = limit;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof MqttConnAckMessage) {
+			MqttProperties.MqttProperty<?> maximum = ((MqttConnAckMessage) msg).variableHeader().properties()
+					.getProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS_MAXIMUM.value());
+			// without the property the broker accepts no aliases at all
+			outboundMaximum = maximum == null ? 0 : Math.min(limit, (Integer) maximum.value());
+			outbound.clear();
+		} else if (msg instanceof MqttPublishMessage) {
+			try {
+				msg = resolve((MqttPublishMessage) msg);
+			} catch (DecoderException e) {
+				ReferenceCountUtil.release(msg);
+				throw e;
+			}
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (outboundMaximum > 0 && msg instanceof MqttPublishMessage) {
+			msg = alias((MqttPublishMessage) msg);
+		}
+		ctx.write(msg, promise);
+	}
+
+	private MqttPublishMessage resolve(MqttPublishMessage message) {
+		MqttPublishVariableHeader header = message.variableHeader();
+		MqttProperties.MqttProperty<?> property = header.properties().getProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value());
+		if (property == null) {
+			return message;
+		}
+		int alias = (Integer) property.value();
+		if (alias == 0 || alias > limit) {
+			throw new DecoderException("Topic alias " + alias + " exceeds the maximum of " + limit);
+		}
+		if (!header.topicName().isEmpty()) {
+			inbound.put(alias, header.topicName());
+			return message;
+		}
+		String topic = inbound.get(alias);
+		if (topic == null) {
+			throw new DecoderException("Unknown topic alias " + alias);
+		}
+		return new MqttPublishMessage(message.fixedHeader(),
+				new MqttPublishVariableHeader(topic, header.packetId(), header.properties()), message.payload());
+	}
+
+	private MqttPublishMessage alias(MqttPublishMessage message) {
+		MqttPublishVariableHeader header = message.variableHeader();
+		String topic = header.topicName();
+		if (topic.isEmpty() || header.properties().getProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value()) != null) {
+			return message;
+		}
+		Integer alias = outbound.get(topic);
+		String sentTopic;
+		if (alias != null) {
+			sentTopic = "";
+			HITS.increment();
+			BYTES_SAVED.add(ByteBufUtil.utf8Bytes(topic) - ALIAS_PROPERTY_BYTES);
+		} else {
+			alias = nextAlias();
+			outbound.put(topic, alias);
+			sentTopic = topic;
+			MISSES.increment();
+			BYTES_SAVED.add(-ALIAS_PROPERTY_BYTES);
+		}
+		MqttProperties properties = new MqttProperties();
+		for (MqttProperties.MqttProperty<?> property : header.properties().listAll()) {
+			properties.add(property);
+		}
+		properties.add(new MqttProperties.IntegerProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value(), alias));
+		return new MqttPublishMessage(message.fixedHeader(),
+				new MqttPublishVariableHeader(sentTopic, header.packetId(), properties), message.payload());
+	}
+
+	private int nextAlias() {
+		if (outbound.size() < outboundMaximum) {
+			return outbound.size() + 1;
+		}
+		Iterator<Integer> eldest = outbound.values().iterator();
+		int alias = eldest.next();
+		eldest.remove();
+		return alias;
+	}
+
+	/**
+	 * @return PUBLISH packets sent with an alias instead of the topic name, by all clients since start
+	 */
+	public static long getTotalHits() {
+		return HITS.sum();
+	}
+
+	/**
+	 * @return PUBLISH packets that had to carry the full topic name to set up an alias
+	 */
+	public static long getTotalMisses() {
+		return MISSES.sum();
+	}
+
+	/**
+	 * @return bytes saved by aliases, net of the alias property itself
+	 */
+	public static long getTotalBytesSaved() {
+		return BYTES_SAVED.sum();
+	}
+}
@@ -15,70 +15,112 @@
  */
 package iot.technology.client.toolkit.mqtt.service.handler;
 
-import io.netty.channel.EventLoop;
 import io.netty.handler.codec.mqtt.MqttFixedHeader;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttMessageType;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.EventExecutor;
 import iot.technology.client.toolkit.mqtt.service.PendingOperation;
+import iot.technology.client.toolkit.mqtt.service.core.MqttRetransmissionScheduler;
 
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 
 /**
+ * Resends a packet until it is acknowledged.
+ * <p>
+ * Timeouts fire on the shared wheel of {@link MqttRetransmissionScheduler} but run on the channel's event loop,
+ * where acknowledgements and the close of the channel stop the handler and release the payload, so a resend
+ * never races with either.
+ *
  * @author mushuwei
  */
 public final class RetransmissionHandler<T extends MqttMessage> {
 
 	private volatile boolean stopped;
 	private final PendingOperation pendingOperation;
-	private ScheduledFuture<?> timer;
-	private int timeout = 10;
+	private volatile Timeout timer;
+	private long delayMillis;
+	private int attempts;
 	private BiConsumer<MqttFixedHeader, T> handler;
+	private Runnable exhaustedHandler;
 	private T originalMessage;
+	/**
+	 * header of the resent packets, built on the first retransmission and reused for the following ones
+	 */
+	private MqttFixedHeader retransmitHeader;
 
 	public RetransmissionHandler(PendingOperation pendingOperation) {
 		this.pendingOperation = pendingOperation;
 	}
 
-	public void start(EventLoop eventLoop) {
-		if (eventLoop == null) {
-			throw new NullPointerException("eventLoop");
+	/**
+	 * @param executor the event loop of the channel the packet was sent on
+	 */
+	public void start(MqttRetransmissionScheduler scheduler, EventExecutor executor) {
+		if (scheduler == null) {
+			throw new NullPointerException("scheduler");
+		}
+		if (executor == null) {
+			throw new NullPointerException("executor");
 		}
 		if (this.handler == null) {
 			throw new NullPointerException("handler");
 		}
-		this.timeout = 10;
-		this.startTimer(eventLoop);
+		this.delayMillis = scheduler.initialDelay();
+		this.attempts = 0;
+		this.startTimer(scheduler, executor);
+	}
+
+	private void startTimer(MqttRetransmissionScheduler scheduler, EventExecutor executor) {
+		if (stopped || pendingOperation.isCanceled()) {
+			return;
+		}
+		this.timer = scheduler.schedule(timeout -> {
+			try {
+				executor.execute(() -> retransmit(scheduler, executor));
+			} catch (RejectedExecutionException e) {
+				// the event loop is shut down, and with it the channel the packet was waiting on
+			}
+		}, delayMillis);
 	}
 
-	private void startTimer(EventLoop eventLoop) {
+	private void retransmit(MqttRetransmissionScheduler scheduler, EventExecutor executor) {
 		if (stopped || pendingOperation.isCanceled()) {
 			return;
 		}
-		this.timer = eventLoop.schedule(() -> {
-			this.timeout += 5;
-			boolean isDup = this.originalMessage.fixedHeader().isDup();
-			if (this.originalMessage.fixedHeader().messageType() == MqttMessageType.PUBLISH
-					&& this.originalMessage.fixedHeader().qosLevel() != MqttQoS.AT_MOST_ONCE) {
-				isDup = true;
+		if (!scheduler.canRetransmit(attempts)) {
+			scheduler.onExhausted();
+			if (exhaustedHandler != null) {
+				exhaustedHandler.run();
 			}
-			MqttFixedHeader fixedHeader = new MqttFixedHeader(
-					this.originalMessage.fixedHeader().messageType(),
-					isDup,
-					this.originalMessage.fixedHeader().qosLevel(),
-					this.originalMessage.fixedHeader().isRetain(),
-					this.originalMessage.fixedHeader().remainingLength());
-			handler.accept(fixedHeader, originalMessage);
-			startTimer(eventLoop);
-		}, timeout, TimeUnit.SECONDS);
+			return;
+		}
+		this.attempts++;
+		this.delayMillis = scheduler.nextDelay(delayMillis);
+		if (this.retransmitHeader == null) {
+			this.retransmitHeader = retransmitHeader(this.originalMessage.fixedHeader());
+		}
+		scheduler.onRetransmit();
+		handler.accept(retransmitHeader, originalMessage);
+		startTimer(scheduler, executor);
+	}
+
+	private static MqttFixedHeader retransmitHeader(MqttFixedHeader original) {
+		boolean isDup = original.isDup();
+		if (original.messageType() == MqttMessageType.PUBLISH && original.qosLevel() != MqttQoS.AT_MOST_ONCE) {
+			isDup = true;
+		}
+		return new MqttFixedHeader(original.messageType(), isDup, original.qosLevel(), original.isRetain(),
+				original.remainingLength());
 	}
 
 	public void stop() {
 		stopped = true;
-		if (this.timer != null) {
-			this.timer.cancel(true);
+		Timeout timeout = this.timer;
+		if (timeout != null) {
+			timeout.cancel();
 		}
 	}
 
@@ -86,6 +128,13 @@ public final class RetransmissionHandler<T extends MqttMessage> {
 		this.handler = runnable;
 	}
 
+	/**
+	 * Called once on the event loop when the retransmission limit is reached without an acknowledgement.
+	 */
+	public void setExhaustedHandler(Runnable exhaustedHandler) {
+		this.exhaustedHandler = exhaustedHandler;
+	}
+
 	public void setOriginalMessage(T originalMessage) {
 		this.originalMessage = originalMessage;
 	}
@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.metrics;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters and round-trip histograms of one client.
+ * <p>
+ * Recording happens on event loops and publishing threads, so counters are striped {@link LongAdder}s and
+ * latencies go to HdrHistogram {@link Recorder}s, both wait-free for writers. Gauges such as the in-flight maps
+ * are read from the client only when a snapshot is taken. {@link #aggregate()} sums all live clients.
+ *
+ * @author mushuwei
+ */
+public final class MqttClientMetrics {
+
+	private static final Set<MqttClientMetrics> LIVE = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	private static final int PUBACK = 0;
+	private static final int PUBREC = 1;
+	private static final int PUBCOMP = 2;
+	private static final int PING = 3;
+	private static final String[] LATENCY_NAMES = {"puback", "pubrec", "pubcomp", "ping"};
+	private static final String[] QOS_NAMES = {"qos0", "qos1", "qos2"};
+
+	private final MqttClientService client;
+	private final LongAdder[] messagesOut = adders();
+	private final LongAdder[] bytesOut = adders();
+	private final LongAdder[] messagesIn = adders();
+	private final LongAdder[] bytesIn = adders();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder tlsHandshakes = new LongAdder();
+	private final LongAdder tlsResumed = new LongAdder();
+
+	/**
+	 * round trips in microseconds; created on first use, since a histogram costs tens of kilobytes and
+	 * short-lived clients, e.g. of a connect churn run, often never record one
+	 */
+	private final AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<>(LATENCY_NAMES.length);
+	private final Histogram[] intervals = new Histogram[LATENCY_NAMES.length];
+	private final Histogram[] totals = new Histogram[LATENCY_NAMES.length];
+
+	private final Supplier<Map<String, Object>> mbeanSource = this::snapshot;
+	private volatile ObjectName mbean;
+
+	private MqttClientMetrics(MqttClientService client) {
+		this.client = client;
+	}
+
+	/**
+	 * Creates the metrics of a client and adds them to {@link #aggregate()}, call once the client is constructed.
+	 */
+	public static MqttClientMetrics forClient(MqttClientService client) {
+		MqttClientMetrics metrics = new MqttClientMetrics(client);
+		LIVE.add(metrics);
+		return metrics;
+	}
+
+	public void onPublishSent(MqttQoS qos, long bytes) {
+		messagesOut[qos.value()].increment();
+		bytesOut[qos.value()].add(bytes);
+	}
+
+	public void onPublishReceived(MqttQoS qos, long bytes) {
+		messagesIn[qos.value()].increment();
+		bytesIn[qos.value()].add(bytes);
+	}
+
+	/**
+	 * A publish refused by the in-flight window or for lack of a packet identifier.
+	 */
+	public void onPublishRejected() {
+		rejected.increment();
+	}
+
+	/**
+	 * A completed TLS handshake.
+	 *
+	 * @param resumed whether an earlier session was resumed instead of running a full handshake
+	 */
+	public void onTlsHandshake(boolean resumed) {
+		tlsHandshakes.increment();
+		if (resumed) {
+			tlsResumed.increment();
+		}
+	}
+
+	public void onPuback(long sentNanos) {
+		record(PUBACK, sentNanos);
+	}
+
+	public void onPubrec(long sentNanos) {
+		record(PUBREC, sentNanos);
+	}
+
+	public void onPubcomp(long sentNanos) {
+		record(PUBCOMP, sentNanos);
+	}
+
+	public void onPingResponse(long sentNanos) {
+		record(PING, sentNanos);
+	}
+
+	private void record(int index, long sentNanos) {
+		Recorder recorder = recorders.get(index);
+		if (recorder == null) {
+			recorders.compareAndSet(index, null, new Recorder(3));
+			recorder = recorders.get(index);
+		}
+		recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentNanos)));
+	}
+
+	/**
+	 * @return metric name to value, numbers are cumulative since the client was created
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("clientId", client.getClientConfig().getClientId());
+		snapshot.put("connected", client.isConnected());
+		counters(snapshot);
+		latencies(snapshot, sample());
+		return snapshot;
+	}
+
+	/**
+	 * Exposes {@link #snapshot()} as an MBean named after the client until {@link #unregisterMBean()}.
+	 * The MBean server holds a strong reference to the client while it is registered.
+	 */
+	public void registerMBean(String name) throws JMException {
+		this.mbean = MqttMetricsMBean.register(name, mbeanSource);
+	}
+
+	/**
+	 * Called when the client disconnects for good, so it can be garbage collected and leaves {@link #aggregate()}.
+	 */
+	public void unregisterMBean() {
+		ObjectName objectName = this.mbean;
+		if (objectName != null) {
+			this.mbean = null;
+			MqttMetricsMBean.unregister(objectName, mbeanSource);
+		}
+	}
+
+	/**
+	 * @return the sum of all clients that are still referenced, latencies are merged
+	 */
+	public static Map<String, Object> aggregate() {
+		List<MqttClientMetrics> live;
+		synchronized (LIVE) {
+			live = new ArrayList<>(LIVE);
+		}
+		Map<String, Object> aggregate = new LinkedHashMap<>();
+		aggregate.put("clients", (long) live.size());
+		aggregate.put("connected", live.stream().filter(m -> m.client.isConnected()).count());
+		Histogram[] merged = new Histogram[LATENCY_NAMES.length];
+		for (int i = 0; i < merged.length; i++) {
+			merged[i] = new Histogram(3);
+		}
+		for (MqttClientMetrics metrics : live) {
+			Map<String, Object> counters = new LinkedHashMap<>();
+			metrics.counters(counters);
+			counters.forEach((name, value) -> aggregate.merge(name, value, (a, b) -> (Long) a + (Long) b));
+			Histogram[] histograms = metrics.sample();
+			for (int i = 0; i < merged.length; i++) {
+				merged[i].add(histograms[i]);
+			}
+		}
+		latencies(aggregate, merged);
+		return aggregate;
+	}
+
+	private void counters(Map<String, Object> into) {
+		for (int qos = 0; qos < QOS_NAMES.length; qos++) {
+			into.put("messages.out." + QOS_NAMES[qos], messagesOut[qos].sum());
+			into.put("bytes.out." + QOS_NAMES[qos], bytesOut[qos].sum());
+		}
+		for (int qos = 0; qos < QOS_NAMES.length; qos++) {
+			into.put("messages.in." + QOS_NAMES[qos], messagesIn[qos].sum());
+			into.put("bytes.in." + QOS_NAMES[qos], bytesIn[qos].sum());
+		}
+		into.put("retransmits", client.getRetransmissionScheduler().getRetransmits());
+		into.put("inflight.publishes", (long) client.getPendingPublishes().size());
+		into.put("inflight.subscriptions", (long) client.getPendingSubscriptions().size());
+		into.put("inflight.unsubscriptions", (long) client.getPendingServerUnsubscribes().size());
+		into.put("inflight.qos2Incoming", (long) client.getQos2PendingIncomingPublishes().size());
+		into.put("inflight.window", (long) client.getInflightWindow().getInflight());
+		into.put("inflight.queued", (long) client.getInflightWindow().getQueued());
+		into.put("dispatch.queued", (long) client.getDispatcher().getQueued());
+		into.put("reconnects", client.getTotalReconnectAttempts());
+		into.put("reconnects.failed", client.getReconnectsFailed());
+		into.put("tls.handshakes", tlsHandshakes.sum());
+		into.put("tls.resumed", tlsResumed.sum());
+		into.put("dropped.in", client.getDispatcher().getDropped());
+		into.put("dropped.out.rejected", rejected.sum());
+		into.put("dropped.out.exhausted", client.getRetransmissionScheduler().getExhausted());
+	}
+
+	private static void latencies(Map<String, Object> into, Histogram[] histograms) {
+		for (int i = 0; i < LATENCY_NAMES.length; i++) {
+			Histogram histogram = histograms[i];
+			String name = LATENCY_NAMES[i] + ".rtt";
+			into.put(name + ".count", histogram.getTotalCount());
+			into.put(name + ".p50.ms", millis(histogram, 50));
+			into.put(name + ".p99.ms", millis(histogram, 99));
+			into.put(name + ".max.ms", histogram.getTotalCount() == 0 ? 0.0 : histogram.getMaxValue() / 1000.0);
+		}
+	}
+
+	private static double millis(Histogram histogram, double percentile) {
+		return histogram.getTotalCount() == 0 ? 0.0 : histogram.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	/**
+	 * Moves recorded values into the running totals.
+	 *
+	 * @return copies of the totals
+	 */
+	private synchronized Histogram[] sample() {
+		Histogram[] copies = new Histogram[LATENCY_NAMES.length];
+		for (int i = 0; i < LATENCY_NAMES.length; i++) {
+			Recorder recorder = recorders.get(i);
+			if (recorder != null) {
+				intervals[i] = recorder.getIntervalHistogram(intervals[i]);
+				if (totals[i] == null) {
+					totals[i] = new Histogram(3);
+				}
+				totals[i].add(intervals[i]);
+			}
+			copies[i] = totals[i] == null ? new Histogram(3) : totals[i].copy();
+		}
+		return copies;
+	}
+
+	private static LongAdder[] adders() {
+		LongAdder[] adders = new LongAdder[QOS_NAMES.length];
+		for (int i = 0; i < adders.length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Read-only MBean exposing every entry of a metrics snapshot as an attribute.
+ *
+ * @author mushuwei
+ */
+public final class MqttMetricsMBean implements DynamicMBean {
+
+	private static final String DOMAIN = "iot.technology.toolkit";
+
+	/**
+	 * MBeans registered by this class, so a client only unregisters the MBean it registered itself
+	 */
+	private static final Map<ObjectName, MqttMetricsMBean> REGISTERED = new HashMap<>();
+
+	private final Supplier<Map<String, Object>> source;
+
+	public MqttMetricsMBean(Supplier<Map<String, Object>> source) {
+		this.source = source;
+	}
+
+	/**
+	 * Registers the source on the platform MBean server as {@code iot.technology.toolkit:type=MqttClient,name=<name>},
+	 * replacing an MBean already registered under that name.
+	 */
+	public static synchronized ObjectName register(String name, Supplier<Map<String, Object>> source) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=MqttClient,name=" + ObjectName.quote(name));
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		MqttMetricsMBean mbean = new MqttMetricsMBean(source);
+		server.registerMBean(mbean, objectName);
+		REGISTERED.put(objectName, mbean);
+		return objectName;
+	}
+
+	/**
+	 * Unregisters the MBean of the source, unless another source replaced it under the same name in the meantime.
+	 */
+	public static synchronized void unregister(ObjectName objectName, Supplier<Map<String, Object>> source) {
+		MqttMetricsMBean mbean = REGISTERED.get(objectName);
+		if (mbean == null || mbean.source != source) {
+			return;
+		}
+		REGISTERED.remove(objectName);
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// unregistered by someone else already
+		}
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Map<String, Object> snapshot = source.get();
+		if (!snapshot.containsKey(attribute)) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return snapshot.get(attribute);
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Object> snapshot = source.get();
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			if (snapshot.containsKey(attribute)) {
+				list.add(new Attribute(attribute, snapshot.get(attribute)));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		Map<String, Object> snapshot = source.get();
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+		int i = 0;
+		for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+			attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(),
+					true, false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "MQTT client metrics", attributes, null, null, null);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.metrics;
+
+import iot.technology.client.toolkit.common.utils.JsonUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Appends metrics snapshots to a file as newline-delimited JSON, one object per snapshot and interval,
+ * each with a {@code timestamp} in epoch milliseconds.
+ *
+ * @author mushuwei
+ */
+public final class MqttMetricsReporter implements Closeable {
+
+	private final BufferedWriter writer;
+	private final Supplier<List<Map<String, Object>>> source;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "toolkit-mqtt-metrics");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public MqttMetricsReporter(Path file, long intervalSeconds, Supplier<List<Map<String, Object>>> source) throws IOException {
+		if (intervalSeconds <= 0) {
+			throw new IllegalArgumentException("intervalSeconds must be > 0");
+		}
+		this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		this.source = source;
+		scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	private synchronized void report() {
+		long timestamp = System.currentTimeMillis();
+		try {
+			for (Map<String, Object> snapshot : source.get()) {
+				Map<String, Object> line = new LinkedHashMap<>();
+				line.put("timestamp", timestamp);
+				line.putAll(snapshot);
+				writer.write(JsonUtils.object2Json(line));
+				writer.newLine();
+			}
+			writer.flush();
+		} catch (IOException e) {
+			// the file went away, stop instead of failing every interval
+			scheduler.shutdown();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		scheduler.shutdownNow();
+		writer.close();
+	}
+}
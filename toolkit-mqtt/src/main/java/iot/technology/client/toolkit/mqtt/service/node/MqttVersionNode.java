@@ -23,7 +23,8 @@ public class MqttVersionNode implements TkNode {
 		String data = context.getData();
 		if (StringUtils.isBlank(data)
 				|| data.equals(MqttVersionEnum.MQTT_3_1.getCode())
-				|| data.equals(MqttVersionEnum.MQTT_3_1_1.getCode())) {
+				|| data.equals(MqttVersionEnum.MQTT_3_1_1.getCode())
+				|| data.equals(MqttVersionEnum.MQTT_5_0.getCode())) {
 			context.setCheck(true);
 			return true;
 		}
@@ -56,6 +57,9 @@ public class MqttVersionNode implements TkNode {
 		if (data.equals(MqttVersionEnum.MQTT_3_1.getCode())) {
 			return MqttVersionEnum.MQTT_3_1.getValue();
 		}
+		if (data.equals(MqttVersionEnum.MQTT_5_0.getCode())) {
+			return MqttVersionEnum.MQTT_5_0.getValue();
+		}
 		return MqttVersionEnum.MQTT_3_1_1.getValue();
 	}
 
@@ -63,5 +67,6 @@ public class MqttVersionNode implements TkNode {
 	public void prePrompt(NodeContext context) {
 		System.out.format(ColorUtils.greenItalic("(1) 3.1") + "%n");
 		System.out.format(ColorUtils.greenItalic("(2) 3.1.1 * ") + "%n");
+		System.out.format(ColorUtils.greenItalic("(3) 5.0") + "%n");
 	}
 }
@@ -38,7 +38,7 @@ public class DisconnectProcessor implements TkProcessor {
     public void handle(ProcessContext context) {
         MqttProcessContext mqttProcessContext = (MqttProcessContext) context;
         MqttShellModeDomain domain = mqttProcessContext.getDomain();
-        domain.getClient().disconnect(1);
+        domain.disconnect();
         System.out.println(String.format(ColorUtils.redError("clientId:%s close!"), domain.getSettings().getInfo().getClientId()));
         throw new EndOfFileException("client: " + domain.getSettings().getInfo().getClientId() + " close!");
     }
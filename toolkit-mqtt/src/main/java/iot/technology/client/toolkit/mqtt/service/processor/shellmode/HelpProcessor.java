@@ -67,14 +67,16 @@ public class HelpProcessor implements TkProcessor {
             case "publish":
                 sb.append(ColorUtils.colorBold("Usage: ", "black")
                         + String.format("> %s %s <topic> %s <qos>  [%s <messageFromCommandline> | %s <messageFromFile> " +
-                                "| %s <hexFormatMessage> | %s <base64FormatMessage>]",
+                                "| %s <hexFormatMessage> | %s <base64FormatMessage> | %s <messageTemplate> [%s <count>]]",
                         ColorUtils.colorBold("pub", "green"),
                         ColorUtils.colorBold("-t", "green"),
                         ColorUtils.colorBold("-q", "green"),
                         ColorUtils.colorBold("-m", "green"),
                         ColorUtils.colorBold("-mf", "green"),
                         ColorUtils.colorBold("-mh", "green"),
-                        ColorUtils.colorBold("-mb", "green")));
+                        ColorUtils.colorBold("-mb", "green"),
+                        ColorUtils.colorBold("-mt", "green"),
+                        ColorUtils.colorBold("-n", "green")));
                 sb.append(StringUtils.lineSeparator());
                 sb.append(bundle.getString("mqtt.subCmd.pub.help")).append(StringUtils.lineSeparator());
                 sb.append(StringUtils.lineSeparator());
@@ -103,12 +105,20 @@ public class HelpProcessor implements TkProcessor {
                                 ColorUtils.colorBold("-mb, --message-base64 ", "green"),
                                 bundle.getString("mqtt.subCmd.pub.message-base64")))
                         .append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-mt, --message-template", "green"),
+                                bundle.getString("mqtt.subCmd.pub.message-template")))
+                        .append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-n, --count           ", "green"),
+                                bundle.getString("mqtt.subCmd.pub.count")))
+                        .append(StringUtils.lineSeparator());
                 System.out.print(sb);
                 break;
             case "sub":
             case "subscribe":
                 sb.append(ColorUtils.colorBold("Usage: ", "black")
-                        + String.format("> %s %s <topic> %s <qos> [-b64] [-hex] [-json]",
+                        + String.format("> %s %s <topic> %s <qos> [-b64] [-hex] [-json] [-r <file>]",
                         ColorUtils.colorBold("sub", "green"),
                         ColorUtils.colorBold("-t", "green"),
                         ColorUtils.colorBold("-q", "green")));
@@ -136,6 +146,30 @@ public class HelpProcessor implements TkProcessor {
                                 ColorUtils.colorBold("-json --json  ", "green"),
                                 bundle.getString("mqtt.subCmd.sub.json")))
                         .append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-r --record   ", "green"),
+                                bundle.getString("mqtt.subCmd.sub.record")))
+                        .append(StringUtils.lineSeparator());
+                System.out.print(sb);
+                break;
+            case "replay":
+                sb.append(ColorUtils.colorBold("Usage: ", "black")
+                        + String.format("> %s %s <file> [%s <speed>]",
+                        ColorUtils.colorBold("replay", "green"),
+                        ColorUtils.colorBold("-f", "green"),
+                        ColorUtils.colorBold("-s", "green")));
+                sb.append(StringUtils.lineSeparator());
+                sb.append(bundle.getString("mqtt.subCmd.replay.help")).append(StringUtils.lineSeparator());
+                sb.append(StringUtils.lineSeparator());
+                sb.append("Options:").append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-f --file  ", "green"),
+                                bundle.getString("mqtt.subCmd.replay.file")))
+                        .append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-s --speed ", "green"),
+                                bundle.getString("mqtt.subCmd.replay.speed")))
+                        .append(StringUtils.lineSeparator());
                 System.out.print(sb);
                 break;
             case "unsub":
@@ -154,6 +188,31 @@ public class HelpProcessor implements TkProcessor {
                         .append(StringUtils.lineSeparator());
                 System.out.print(sb);
                 break;
+            case "stats":
+                sb.append(ColorUtils.colorBold("Usage: ", "black")
+                        + String.format("> %s [%s <file> [%s <seconds>] | %s]",
+                        ColorUtils.colorBold("stats", "green"),
+                        ColorUtils.colorBold("-d", "green"),
+                        ColorUtils.colorBold("-i", "green"),
+                        ColorUtils.colorBold("-x", "green")));
+                sb.append(StringUtils.lineSeparator());
+                sb.append(bundle.getString("mqtt.subCmd.stats.help")).append(StringUtils.lineSeparator());
+                sb.append(StringUtils.lineSeparator());
+                sb.append("Options:").append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-d --dump     ", "green"),
+                                bundle.getString("mqtt.subCmd.stats.dump")))
+                        .append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-i --interval ", "green"),
+                                bundle.getString("mqtt.subCmd.stats.interval")))
+                        .append(StringUtils.lineSeparator());
+                sb.append(String.format("%s %s",
+                                ColorUtils.colorBold("-x --stop     ", "green"),
+                                bundle.getString("mqtt.subCmd.stats.stop")))
+                        .append(StringUtils.lineSeparator());
+                System.out.print(sb);
+                break;
             case "dis":
             case "disconnect":
                 sb.append(ColorUtils.colorBold("Usage:  ", "black")
@@ -172,7 +231,7 @@ public class HelpProcessor implements TkProcessor {
         StringBuilder sb = new StringBuilder();
         sb.append("").append(StringUtils.lineSeparator());
         sb.append(ColorUtils.colorBold("Usage:", "black") + ColorUtils.colorBold(" > ", "green")
-                + "{ pub | sub | unsub | dis | list | exit }").append(StringUtils.lineSeparator());
+                + "{ pub | sub | unsub | replay | stats | dis | list | exit }").append(StringUtils.lineSeparator());
         sb.append("").append(StringUtils.lineSeparator());
         sb.append(bundle.getString("mqtt.shellmode.help")).append(StringUtils.lineSeparator());
         sb.append("").append(StringUtils.lineSeparator());
@@ -182,6 +241,8 @@ public class HelpProcessor implements TkProcessor {
         sb.append(ColorUtils.colorBold("  pub, publish        ", "green")).append(bundle.getString("mqtt.subCmd.pub.help")).append(StringUtils.lineSeparator());
         sb.append(ColorUtils.colorBold("  sub, subscribe      ", "green")).append(bundle.getString("mqtt.subCmd.sub.help")).append(StringUtils.lineSeparator());
         sb.append(ColorUtils.colorBold("  unsub, unsubscribe  ", "green")).append(bundle.getString("mqtt.subCmd.unsub.help")).append(StringUtils.lineSeparator());
+        sb.append(ColorUtils.colorBold("  replay              ", "green")).append(bundle.getString("mqtt.subCmd.replay.help")).append(StringUtils.lineSeparator());
+        sb.append(ColorUtils.colorBold("  stats               ", "green")).append(bundle.getString("mqtt.subCmd.stats.help")).append(StringUtils.lineSeparator());
         sb.append(ColorUtils.colorBold("  dis, disconnect     ", "green")).append(bundle.getString("mqtt.subCmd.dis.help")).append(StringUtils.lineSeparator());
         sb.append(ColorUtils.colorBold("  ls, list            ", "green")).append(bundle.getString("mqtt.subCmd.ls.help")).append(StringUtils.lineSeparator());
         sb.append(ColorUtils.colorBold("  exit                ", "green")).append(bundle.getString("general.subCommand.exit")).append(StringUtils.lineSeparator());
@@ -15,6 +15,7 @@
  */
 package iot.technology.client.toolkit.mqtt.service.processor.shellmode;
 
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import iot.technology.client.toolkit.common.constants.EmojiEnum;
@@ -25,10 +26,11 @@ import iot.technology.client.toolkit.common.rule.TkProcessor;
 import iot.technology.client.toolkit.common.utils.ColorUtils;
 import iot.technology.client.toolkit.common.utils.StringUtils;
 import iot.technology.client.toolkit.mqtt.config.MqttShellModeDomain;
+import iot.technology.client.toolkit.mqtt.service.template.MqttPayloadTemplate;
+import iot.technology.client.toolkit.mqtt.service.template.MqttTemplateContext;
 import org.apache.commons.cli.*;
 import org.eclipse.leshan.core.util.Hex;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -63,6 +65,8 @@ public class PublishProcessor extends TkAbstractProcessor implements TkProcessor
         Option messageFromFile = new Option("mf", "message-file", true, "The message read in from a file");
         Option messageHexFormat = new Option("mh", "message-hex", true, "The hex format message");
         Option messageBase64Format = new Option("mb", "message-base64", true, "The base64 format message");
+        Option messageTemplate = new Option("mt", "message-template", true, "The message template");
+        Option countOption = new Option("n", "count", true, "the number of messages rendered from the template");
 
         options.addOption(topicOption)
                 .addOption(qosOption)
@@ -70,6 +74,8 @@ public class PublishProcessor extends TkAbstractProcessor implements TkProcessor
                 .addOption(messageFromFile)
                 .addOption(messageHexFormat)
                 .addOption(messageBase64Format)
+                .addOption(messageTemplate)
+                .addOption(countOption)
                 .addOption(messageOption);
 
         try {
@@ -89,6 +95,11 @@ public class PublishProcessor extends TkAbstractProcessor implements TkProcessor
             }
             int messageConditions = 0;
             byte[] messageBytes = new byte[0];
+            // published straight from a memory mapping instead of being read onto the heap
+            Path messageFile = null;
+            // compiled once, rendered count times
+            MqttPayloadTemplate template = null;
+            int count = 1;
             // plaintext or json message
             if (cmd.hasOption(messageOption)) {
                 messageConditions++;
@@ -119,18 +130,29 @@ public class PublishProcessor extends TkAbstractProcessor implements TkProcessor
                     sb.append(ColorUtils.redError("File not found or not readable: " + fileName)).append(StringUtils.lineSeparator);
                     sb.append(ColorUtils.blackBold("detail usage please enter: help pub"));
                     System.out.println(sb);
+                    return;
                 }
+                messageFile = path;
+                message = fileName;
+            }
+            // The message rendered from a template
+            if (cmd.hasOption(messageTemplate)) {
+                messageConditions++;
                 try {
-                    messageBytes = Files.readAllBytes(path);
-                    message = fileName;
-                } catch (IOException e) {
-                    System.out.println(ColorUtils.redError("file convert message failed"));
+                    template = MqttPayloadTemplate.compile(cmd.getOptionValue(messageTemplate));
+                } catch (IllegalArgumentException e) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(ColorUtils.redError("template: " + e.getMessage())).append(StringUtils.lineSeparator);
+                    sb.append(ColorUtils.blackBold("detail usage please enter: help pub"));
+                    System.out.println(sb);
+                    return;
                 }
+                message = template.getSource();
             }
 
             if (messageConditions == 0 || messageConditions > 2) {
                 StringBuilder sb = new StringBuilder();
-                sb.append(ColorUtils.redError(String.format("-m、-mf、-mh or -mb not found or set multi")))
+                sb.append(ColorUtils.redError(String.format("-m、-mf、-mh、-mb or -mt not found or set multi")))
                         .append(StringUtils.lineSeparator);
                 sb.append(ColorUtils.blackBold("detail usage please enter: help pub"));
                 System.out.println(sb);
@@ -154,8 +176,29 @@ public class PublishProcessor extends TkAbstractProcessor implements TkProcessor
                 }
             }
 
+            if (cmd.hasOption(countOption)) {
+                String countStr = cmd.getOptionValue(countOption);
+                if (!validateParam(countStr) || Integer.parseInt(countStr) <= 0 || template == null) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(ColorUtils.redError(String.format("count: %s must be a positive number and needs -mt", countStr)))
+                            .append(StringUtils.lineSeparator);
+                    System.out.println(sb);
+                    return;
+                }
+                count = Integer.parseInt(countStr);
+            }
+
             MqttQoS qosLevel = MqttQoS.valueOf(qos);
-            domain.getClient().publish(topic, Unpooled.wrappedBuffer(messageBytes), qosLevel, retain);
+            if (template != null) {
+                MqttTemplateContext templateContext = domain.getTemplateContext();
+                for (int i = 0; i < count; i++) {
+                    domain.getClient().publish(topic, template.render(ByteBufAllocator.DEFAULT, templateContext), qosLevel, retain);
+                }
+            } else if (messageFile != null) {
+                domain.getClient().publishFile(topic, messageFile, qosLevel, retain);
+            } else {
+                domain.getClient().publish(topic, Unpooled.wrappedBuffer(messageBytes), qosLevel, retain);
+            }
             System.out.format(message + " " + bundle.getString("publishMessage.success") + String.format(EmojiEnum.successEmoji) + "%n");
 
         } catch (ParseException e) {
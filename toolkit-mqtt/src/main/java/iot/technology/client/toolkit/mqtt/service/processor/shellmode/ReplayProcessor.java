@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.processor.shellmode;
+
+import iot.technology.client.toolkit.common.rule.ProcessContext;
+import iot.technology.client.toolkit.common.rule.TkAbstractProcessor;
+import iot.technology.client.toolkit.common.rule.TkProcessor;
+import iot.technology.client.toolkit.common.utils.ColorUtils;
+import iot.technology.client.toolkit.common.utils.StringUtils;
+import iot.technology.client.toolkit.mqtt.config.MqttShellModeDomain;
+import iot.technology.client.toolkit.mqtt.service.record.MqttReplayService;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * @author mushuwei
+ */
+public class ReplayProcessor extends TkAbstractProcessor implements TkProcessor {
+
+    @Override
+    public boolean supports(ProcessContext context) {
+        return context.getData().startsWith("replay");
+    }
+
+    @Override
+    public void handle(ProcessContext context) {
+        MqttProcessContext mqttProcessContext = (MqttProcessContext) context;
+        MqttShellModeDomain domain = mqttProcessContext.getDomain();
+
+        Options options = new Options();
+        Option fileOption = new Option("f", "file", true, "the recording to replay");
+        Option speedOption = new Option("s", "speed", true, "replay speed, a multiplier or max");
+        options.addOption(fileOption)
+                .addOption(speedOption);
+
+        try {
+            CommandLineParser parser = new DefaultParser();
+            CommandLine cmd = parser.parse(options, convertCommandData(context.getData()));
+            String file = "";
+            double speed = 1;
+            if (cmd.hasOption(fileOption)) {
+                file = cmd.getOptionValue(fileOption);
+            }
+            if (StringUtils.isBlank(file)) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(ColorUtils.redError("file is empty")).append(StringUtils.lineSeparator);
+                sb.append(ColorUtils.blackBold("detail usage please enter: help replay"));
+                System.out.println(sb);
+                return;
+            }
+            if (cmd.hasOption(speedOption)) {
+                String speedStr = cmd.getOptionValue(speedOption);
+                try {
+                    speed = "max".equalsIgnoreCase(speedStr) ? 0 : Double.parseDouble(speedStr);
+                } catch (NumberFormatException e) {
+                    speed = -1;
+                }
+                if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed) || (speed == 0 && !"max".equalsIgnoreCase(speedStr))) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(ColorUtils.redError(String.format("speed: %s is error param", speedStr))).append(StringUtils.lineSeparator);
+                    sb.append(ColorUtils.blackBold("detail usage please enter: help replay"));
+                    System.out.println(sb);
+                    return;
+                }
+            }
+            String report = new MqttReplayService().replay(domain.getClient(), Paths.get(file), speed);
+            System.out.println(report);
+        } catch (ParseException e) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(ColorUtils.redError("command parse failed!")).append(StringUtils.lineSeparator);
+            System.out.println(sb);
+        } catch (IOException e) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(ColorUtils.redError(String.format("replay failed: %s", e.getMessage()))).append(StringUtils.lineSeparator);
+            System.out.println(sb);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.processor.shellmode;
+
+import iot.technology.client.toolkit.common.rule.ProcessContext;
+import iot.technology.client.toolkit.common.rule.TkAbstractProcessor;
+import iot.technology.client.toolkit.common.rule.TkProcessor;
+import iot.technology.client.toolkit.common.utils.ColorUtils;
+import iot.technology.client.toolkit.common.utils.StringUtils;
+import iot.technology.client.toolkit.mqtt.config.MqttShellModeDomain;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttClientMetrics;
+import iot.technology.client.toolkit.mqtt.service.metrics.MqttMetricsReporter;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author mushuwei
+ */
+public class StatsProcessor extends TkAbstractProcessor implements TkProcessor {
+
+    @Override
+    public boolean supports(ProcessContext context) {
+        return context.getData().startsWith("stats");
+    }
+
+    @Override
+    public void handle(ProcessContext context) {
+        MqttProcessContext mqttProcessContext = (MqttProcessContext) context;
+        MqttShellModeDomain domain = mqttProcessContext.getDomain();
+
+        Options options = new Options();
+        Option dumpOption = new Option("d", "dump", true, "append metrics to this file as NDJSON");
+        Option intervalOption = new Option("i", "interval", true, "seconds between dumps");
+        Option stopOption = new Option("x", "stop", false, "stop dumping metrics");
+        options.addOption(dumpOption)
+                .addOption(intervalOption)
+                .addOption(stopOption);
+
+        try {
+            CommandLineParser parser = new DefaultParser();
+            CommandLine cmd = parser.parse(options, convertCommandData(context.getData()));
+            if (cmd.hasOption(stopOption) || cmd.hasOption(dumpOption)) {
+                domain.closeMetricsReporter();
+            }
+            if (cmd.hasOption(stopOption)) {
+                return;
+            }
+            if (cmd.hasOption(dumpOption)) {
+                int interval = 10;
+                if (cmd.hasOption(intervalOption)) {
+                    String intervalStr = cmd.getOptionValue(intervalOption);
+                    if (!validateParam(intervalStr) || Integer.parseInt(intervalStr) <= 0) {
+                        StringBuilder sb = new StringBuilder();
+                        sb.append(ColorUtils.redError(String.format("interval: %s is error param", intervalStr))).append(StringUtils.lineSeparator);
+                        sb.append(ColorUtils.blackBold("detail usage please enter: help stats"));
+                        System.out.println(sb);
+                        return;
+                    }
+                    interval = Integer.parseInt(intervalStr);
+                }
+                MqttClientMetrics metrics = domain.getClient().getMetrics();
+                domain.setMetricsReporter(new MqttMetricsReporter(Paths.get(cmd.getOptionValue(dumpOption)), interval,
+                        () -> List.of(metrics.snapshot())));
+                return;
+            }
+            System.out.print(format(domain.getClient().getMetrics().snapshot()));
+        } catch (ParseException e) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(ColorUtils.redError("command parse failed!")).append(StringUtils.lineSeparator);
+            System.out.println(sb);
+        } catch (IOException e) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(ColorUtils.redError(String.format("dump file: %s can not be opened", e.getMessage()))).append(StringUtils.lineSeparator);
+            System.out.println(sb);
+        }
+    }
+
+    private static String format(Map<String, Object> snapshot) {
+        StringBuilder sb = new StringBuilder();
+        snapshot.forEach((name, value) -> sb.append(ColorUtils.colorBold(String.format("%-26s", name), "green")).append(" ").append(value)
+                .append(StringUtils.lineSeparator()));
+        return sb.toString();
+    }
+}
@@ -24,8 +24,11 @@ import iot.technology.client.toolkit.common.utils.ColorUtils;
 import iot.technology.client.toolkit.common.utils.StringUtils;
 import iot.technology.client.toolkit.mqtt.config.MqttShellModeDomain;
 import iot.technology.client.toolkit.mqtt.service.handler.*;
+import iot.technology.client.toolkit.mqtt.service.record.MqttRecordWriter;
 import org.apache.commons.cli.*;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ResourceBundle;
 
 /**
@@ -49,10 +52,12 @@ public class SubscribeProcessor extends TkAbstractProcessor implements TkProcess
         Option messageHexFormat = new Option("hex", "hex", false, "The hex format message");
         Option messageBase64Format = new Option("b64", "base64", false, "The base64 message");
         Option messageJsonFormat = new Option("json", "json", false, "The hex format message");
+        Option recordOption = new Option("r", "record", true, "record received messages to this file");
         options.addOption(topicOption)
                 .addOption(messageHexFormat)
                 .addOption(messageBase64Format)
                 .addOption(messageJsonFormat)
+                .addOption(recordOption)
                 .addOption(qosOption);
 
         try {
@@ -90,6 +95,7 @@ public class SubscribeProcessor extends TkAbstractProcessor implements TkProcess
                 }
             }
             MqttQoS qosLevel = MqttQoS.valueOf(qos);
+            MqttRecordWriter writer = null;
             MqttHandler mqttHandler = new MqttSubMessageHandler();
             int messageConditions = 0;
             if (cmd.hasOption(messageHexFormat)) {
@@ -112,6 +118,22 @@ public class SubscribeProcessor extends TkAbstractProcessor implements TkProcess
                 System.out.println(sb);
                 return;
             }
+            if (cmd.hasOption(recordOption)) {
+                try {
+                    writer = new MqttRecordWriter(Paths.get(cmd.getOptionValue(recordOption)),
+                            MqttRecordWriter.DEFAULT_SEGMENT_SIZE);
+                    mqttHandler = new MqttRecordHandler(mqttHandler, writer);
+                } catch (IOException e) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(ColorUtils.redError(String.format("record file: %s can not be created", e.getMessage())))
+                            .append(StringUtils.lineSeparator);
+                    System.out.println(sb);
+                    return;
+                }
+            }
+            if (writer != null) {
+                domain.putRecordWriter(topic, writer);
+            }
             domain.getClient().on(topic, mqttHandler, qosLevel);
         } catch (ParseException e) {
             StringBuilder sb = new StringBuilder();
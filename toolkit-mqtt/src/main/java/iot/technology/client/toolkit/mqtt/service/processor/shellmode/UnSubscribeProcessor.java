@@ -59,6 +59,7 @@ public class UnSubscribeProcessor extends TkAbstractProcessor implements TkProce
                 return;
             }
             domain.getClient().off(topic);
+            domain.closeRecordWriter(topic);
         } catch (ParseException e) {
             StringBuilder sb = new StringBuilder();
             sb.append(ColorUtils.redError("command parse failed!")).append(StringUtils.lineSeparator);
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.record;
+
+/**
+ * Layout of recording segments shared by {@link MqttRecordWriter} and {@link MqttRecordReader}.
+ * <pre>
+ * segment: magic(int) version(short) record*
+ * record:  length(int) receivedMicros(long) flags(byte) topicLength(short) topic(utf-8) payload
+ * </pre>
+ * {@code length} counts the bytes after itself, {@code flags} holds the QoS in bits 0-1 and retain in bit 2.
+ * A recording {@code capture} is stored as {@code capture.000000.rec}, {@code capture.000001.rec}, ...
+ *
+ * @author mushuwei
+ */
+final class MqttRecordFormat {
+
+	static final int MAGIC = 0x544b5243;
+	static final short VERSION = 1;
+	static final int SEGMENT_HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+	static final int RECORD_HEADER_LENGTH = Integer.BYTES + Long.BYTES + Byte.BYTES + Short.BYTES;
+	static final int RETAIN_FLAG = 0x04;
+	static final int QOS_MASK = 0x03;
+
+	private MqttRecordFormat() {
+	}
+
+	static String segmentName(String prefix, int index) {
+		return String.format("%s.%06d.rec", prefix, index);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.record;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static iot.technology.client.toolkit.mqtt.service.record.MqttRecordFormat.*;
+
+/**
+ * Reads a recording written by {@link MqttRecordWriter} in order, one memory-mapped segment at a time.
+ * A record cut short at the end of a segment, left by a recorder that did not shut down cleanly, is skipped.
+ *
+ * @author mushuwei
+ */
+public final class MqttRecordReader {
+
+	private final List<Path> segments = new ArrayList<>();
+	private int segment = -1;
+	private ByteBuffer current;
+
+	/**
+	 * @param prefix the path the recording was started with
+	 */
+	public MqttRecordReader(Path prefix) throws IOException {
+		Path absolute = prefix.toAbsolutePath();
+		for (int i = 0; ; i++) {
+			Path path = absolute.resolveSibling(segmentName(absolute.getFileName().toString(), i));
+			if (!Files.exists(path)) {
+				break;
+			}
+			segments.add(path);
+		}
+		if (segments.isEmpty()) {
+			throw new NoSuchFileException(absolute.resolveSibling(segmentName(absolute.getFileName().toString(), 0)).toString());
+		}
+	}
+
+	public List<Path> getSegments() {
+		return Collections.unmodifiableList(segments);
+	}
+
+	/**
+	 * @return the next record, or null at the end of the recording
+	 */
+	public MqttRecord next() throws IOException {
+		for (; ; ) {
+			if (current != null && current.remaining() >= RECORD_HEADER_LENGTH) {
+				int length = current.getInt();
+				if (length <= current.remaining()) {
+					return read(length);
+				}
+			}
+			if (++segment >= segments.size()) {
+				current = null;
+				return null;
+			}
+			current = map(segments.get(segment));
+		}
+	}
+
+	private MqttRecord read(int length) {
+		int end = current.position() + length;
+		long receivedMicros = current.getLong();
+		int flags = current.get();
+		byte[] topic = new byte[current.getShort() & 0xffff];
+		current.get(topic);
+		ByteBuffer payload = current.slice(current.position(), end - current.position());
+		current.position(end);
+		return new MqttRecord(receivedMicros, new String(topic, StandardCharsets.UTF_8), MqttQoS.valueOf(flags & QOS_MASK),
+				(flags & RETAIN_FLAG) != 0, Unpooled.wrappedBuffer(payload));
+	}
+
+	private static ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < SEGMENT_HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+				throw new IOException(path + " is not a recording");
+			}
+			return buffer;
+		}
+	}
+}
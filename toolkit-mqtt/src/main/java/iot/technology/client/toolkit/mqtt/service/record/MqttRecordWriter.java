@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.record;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static iot.technology.client.toolkit.mqtt.service.record.MqttRecordFormat.*;
+
+/**
+ * Appends received messages to a recording, see {@link MqttRecordFormat} for the layout.
+ * <p>
+ * Records are encoded into one direct buffer, payloads are copied straight from the {@link ByteBuf} and topic
+ * bytes are cached, so a message costs no String conversion and no allocation. The buffer is written to the
+ * {@link FileChannel} when full, at most every 100ms while messages arrive, by a shared background thread once no
+ * message arrived for 100ms, so a reader of the recording lags behind by no more than that, and on {@link #close()},
+ * which also runs on JVM shutdown. A new segment is started once the current one would exceed the segment size.
+ *
+ * @author mushuwei
+ */
+public final class MqttRecordWriter implements Closeable {
+
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final int TOPIC_CACHE_SIZE = 1024;
+
+	private static final ScheduledExecutorService FLUSHER =
+			Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("toolkit-mqtt-record", true));
+
+	private final Path directory;
+	private final String prefix;
+	private final long segmentSize;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final Map<String, byte[]> topics = new HashMap<>();
+	private final long startMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+	private final long startNanos = System.nanoTime();
+	private final Thread shutdownHook = new Thread(this::closeQuietly, "toolkit-mqtt-record-close");
+	private final ScheduledFuture<?> flushTask;
+
+	private FileChannel channel;
+	private int segment = -1;
+	private long segmentPosition;
+	private long lastFlushNanos = startNanos;
+	private long records;
+	private boolean closed;
+
+	/**
+	 * @param prefix      path of the recording, segments are created next to it
+	 * @param segmentSize bytes per segment before a new one is started
+	 * @throws java.nio.file.FileAlreadyExistsException if a recording with this prefix exists
+	 */
+	public MqttRecordWriter(Path prefix, long segmentSize) throws IOException {
+		if (segmentSize < BUFFER_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("segmentSize must be between " + BUFFER_SIZE + " and " + Integer.MAX_VALUE);
+		}
+		Path absolute = prefix.toAbsolutePath();
+		this.directory = absolute.getParent();
+		this.prefix = absolute.getFileName().toString();
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		rotate();
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		this.flushTask = FLUSHER.scheduleWithFixedDelay(this::flushIdle, FLUSH_INTERVAL_NANOS, FLUSH_INTERVAL_NANOS,
+				TimeUnit.NANOSECONDS);
+	}
+
+	public synchronized void append(String topic, MqttQoS qos, boolean retain, ByteBuf payload) throws IOException {
+		if (closed) {
+			return;
+		}
+		byte[] topicBytes = topicBytes(topic);
+		int payloadLength = payload.readableBytes();
+		int length = RECORD_HEADER_LENGTH + topicBytes.length + payloadLength;
+		if (segmentPosition + length > segmentSize && segmentPosition > SEGMENT_HEADER_LENGTH) {
+			rotate();
+		}
+		if (length > buffer.remaining()) {
+			flush();
+		}
+		// a record larger than the buffer is written on its own
+		ByteBuffer target = length > buffer.capacity() ? ByteBuffer.allocate(length) : buffer;
+		target.putInt(length - Integer.BYTES)
+				.putLong(startMicros + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos))
+				.put((byte) (qos.value() | (retain ? RETAIN_FLAG : 0)))
+				.putShort((short) topicBytes.length)
+				.put(topicBytes);
+		int limit = target.limit();
+		target.limit(target.position() + payloadLength);
+		payload.getBytes(payload.readerIndex(), target);
+		target.limit(limit);
+		segmentPosition += length;
+		records++;
+		if (target != buffer) {
+			target.flip();
+			write(target);
+		} else if (System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+			flush();
+		}
+	}
+
+	/**
+	 * @return messages recorded so far
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		flushTask.cancel(false);
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// already shutting down
+		}
+	}
+
+	public void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			// nothing left to do
+		}
+	}
+
+	/**
+	 * Writes out what is buffered once no message arrived for a flush interval.
+	 */
+	private synchronized void flushIdle() {
+		if (closed || buffer.position() == 0 || System.nanoTime() - lastFlushNanos < FLUSH_INTERVAL_NANOS) {
+			return;
+		}
+		try {
+			flush();
+		} catch (IOException e) {
+			// the next append or close reports it
+		}
+	}
+
+	private byte[] topicBytes(String topic) {
+		byte[] bytes = topics.get(topic);
+		if (bytes == null) {
+			if (topics.size() >= TOPIC_CACHE_SIZE) {
+				topics.clear();
+			}
+			bytes = topic.getBytes(StandardCharsets.UTF_8);
+			topics.put(topic, bytes);
+		}
+		return bytes;
+	}
+
+	private void rotate() throws IOException {
+		if (channel != null) {
+			flush();
+			channel.close();
+		}
+		segment++;
+		channel = FileChannel.open(directory.resolve(segmentName(prefix, segment)),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		buffer.putInt(MAGIC).putShort(VERSION);
+		segmentPosition = SEGMENT_HEADER_LENGTH;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		write(buffer);
+		buffer.clear();
+		lastFlushNanos = System.nanoTime();
+	}
+
+	private void write(ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			channel.write(source);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.record;
+
+import iot.technology.client.toolkit.mqtt.service.core.MqttClientService;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttRecord;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes a recording through a connected client, keeping the recorded gaps between messages.
+ *
+ * @author mushuwei
+ */
+public class MqttReplayService {
+
+	private static final long COMPLETION_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Blocks until the recording has been sent and acknowledged, the client disconnects or the thread is interrupted.
+	 *
+	 * @param speed 1 for the original timing, N to replay N times faster, 0 or less to send as fast as possible
+	 * @return a report of the achieved rate against the target rate
+	 */
+	public String replay(MqttClientService client, Path prefix, double speed) throws IOException {
+		MqttRecordReader reader = new MqttRecordReader(prefix);
+		LongAdder acked = new LongAdder();
+		LongAdder failed = new LongAdder();
+		long sent = 0;
+		long bytes = 0;
+		long firstMicros = -1;
+		long lastMicros = 0;
+		long maxLagNanos = 0;
+		long start = System.nanoTime();
+
+		for (MqttRecord record; (record = reader.next()) != null; ) {
+			if (firstMicros < 0) {
+				firstMicros = record.getReceivedMicros();
+			}
+			lastMicros = record.getReceivedMicros();
+			if (speed > 0) {
+				long due = start + (long) (TimeUnit.MICROSECONDS.toNanos(lastMicros - firstMicros) / speed);
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				} else {
+					maxLagNanos = Math.max(maxLagNanos, -wait);
+				}
+			}
+			if (!client.isConnected() || Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			sent++;
+			bytes += record.getPayload().readableBytes();
+			client.publish(record.getTopic(), record.getPayload(), record.getQos(), record.isRetain()).addListener(f -> {
+				if (f.isSuccess()) {
+					acked.increment();
+				} else {
+					failed.increment();
+				}
+			});
+		}
+		long elapsed = System.nanoTime() - start;
+		long deadline = System.nanoTime() + COMPLETION_TIMEOUT_NANOS;
+		while (acked.sum() + failed.sum() < sent && System.nanoTime() < deadline && client.isConnected()) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+
+		double seconds = Math.max(elapsed, 1) / 1e9;
+		double recordedSeconds = (lastMicros - firstMicros) / 1e6;
+		String target = speed <= 0 ? "max"
+				: recordedSeconds <= 0 ? String.format("%sx", speed)
+				: String.format("%.0f msg/s (%sx)", sent * speed / recordedSeconds, speed);
+		return String.format("replayed: %d messages, %d bytes from %d segments in %.1fs%n"
+						+ "rate: %.0f msg/s  target: %s  max lag: %.1fms%n"
+						+ "acked: %d  failed: %d  pending: %d",
+				sent, bytes, reader.getSegments().size(), seconds,
+				sent / seconds, target, maxLagNanos / 1e6,
+				acked.sum(), failed.sum(), sent - acked.sum() - failed.sum());
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import iot.technology.client.toolkit.common.constants.SystemConfigConst;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttStoredMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session store backed by an append-only journal in a memory-mapped file, one file per client id.
+ * <p>
+ * Each record is {@code [int length][byte type][short packet id][body]}; the length is written last, so a record
+ * torn by a crash reads as the end of the journal. Appends are plain memory copies into the mapping, and a shared
+ * background thread forces new records to disk every {@code syncIntervalMillis}, committing whatever was appended
+ * by all publishers in that window together. A crash of the process loses nothing, a crash of the machine loses at
+ * most one sync interval. When the file fills up, the live records are copied into a new file that replaces it.
+ * <p>
+ * A journal is locked through a {@code .lock} file next to it until the store is closed, so a second store on the
+ * same file, in this process or another one, fails to open instead of interleaving its records.
+ *
+ * @author mushuwei
+ */
+public final class MqttJournalSessionStore implements MqttSessionStore {
+
+	private static final byte TYPE_PUBLISH = 1;
+	private static final byte TYPE_PUBREL = 2;
+	private static final byte TYPE_REMOVE = 3;
+
+	/**
+	 * type and packet id, the part of a record covered by its length besides the body
+	 */
+	private static final int RECORD_HEADER = 1 + 2;
+	private static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+	private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+
+	private static final ScheduledExecutorService SYNCER =
+			Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("toolkit-mqtt-journal", true));
+
+	private final Path path;
+	private final Object lock = new Object();
+	/**
+	 * packet id to the offset of its latest PUBLISH or PUBREL record, in journal order
+	 */
+	private final Map<Integer, Integer> live = new LinkedHashMap<>();
+	private final FileChannel lockChannel;
+	private final ScheduledFuture<?> syncTask;
+	private MappedByteBuffer buffer;
+	private int position;
+	private int synced;
+	private boolean closed;
+
+	/**
+	 * Opens the journal of a client under {@link SystemConfigConst#SYS_MQTT_SESSION_PATH}.
+	 */
+	public static MqttJournalSessionStore forClient(String clientId) throws IOException {
+		String fileName = clientId.replaceAll("[^A-Za-z0-9._-]", "_") + ".journal";
+		return new MqttJournalSessionStore(Paths.get(SystemConfigConst.SYS_MQTT_SESSION_PATH, fileName),
+				DEFAULT_CAPACITY, DEFAULT_SYNC_INTERVAL_MILLIS);
+	}
+
+	public MqttJournalSessionStore(Path path, int capacity, long syncIntervalMillis) throws IOException {
+		this.path = path;
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		this.lockChannel = lock(path);
+		long existing = Files.exists(path) ? Files.size(path) : 0;
+		this.buffer = map(path, (int) Math.min(Math.max(capacity, existing), Integer.MAX_VALUE - 8));
+		recover();
+		this.syncTask = SYNCER.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void storePublish(int packetId, String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+		byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+		int payloadLength = payload.readableBytes();
+		int length = RECORD_HEADER + 1 + 1 + 2 + topicBytes.length + 4 + payloadLength;
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			int offset = reserve(length);
+			int index = offset + 4 + RECORD_HEADER;
+			buffer.put(index, (byte) qos.value());
+			buffer.put(index + 1, (byte) (retain ? 1 : 0));
+			buffer.putShort(index + 2, (short) topicBytes.length);
+			buffer.put(index + 4, topicBytes);
+			index += 4 + topicBytes.length;
+			buffer.putInt(index, payloadLength);
+			ByteBuffer target = buffer.duplicate();
+			target.limit(index + 4 + payloadLength).position(index + 4);
+			payload.getBytes(payload.readerIndex(), target);
+			commit(offset, length, TYPE_PUBLISH, packetId);
+		}
+	}
+
+	@Override
+	public void storePubrel(int packetId) {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			commit(reserve(RECORD_HEADER), RECORD_HEADER, TYPE_PUBREL, packetId);
+		}
+	}
+
+	@Override
+	public void remove(int packetId) {
+		synchronized (lock) {
+			if (!closed && live.containsKey(packetId)) {
+				commit(reserve(RECORD_HEADER), RECORD_HEADER, TYPE_REMOVE, packetId);
+			}
+		}
+	}
+
+	@Override
+	public List<MqttStoredMessage> load() {
+		synchronized (lock) {
+			List<MqttStoredMessage> messages = new ArrayList<>(live.size());
+			for (Map.Entry<Integer, Integer> entry : live.entrySet()) {
+				messages.add(read(entry.getKey(), entry.getValue()));
+			}
+			return messages;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			live.clear();
+			compact(0);
+		}
+	}
+
+	/**
+	 * Forces the journal to disk and releases its lock, records stored afterwards are ignored.
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		syncTask.cancel(false);
+		sync();
+		try {
+			// closing the channel releases the lock
+			lockChannel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to unlock session journal " + path, e);
+		}
+	}
+
+	/**
+	 * Forces records appended since the last sync to disk.
+	 */
+	private void sync() {
+		MappedByteBuffer target;
+		int from;
+		int to;
+		synchronized (lock) {
+			target = buffer;
+			from = synced;
+			to = position;
+		}
+		if (to <= from) {
+			return;
+		}
+		target.force(from, to - from);
+		synchronized (lock) {
+			if (buffer == target && synced < to) {
+				synced = to;
+			}
+		}
+	}
+
+	/**
+	 * @return the offset of a free record of the given length, compacting or growing the journal if needed
+	 */
+	private int reserve(int length) {
+		// keep room for the zero length that terminates the journal
+		if (position + 4 + length + 4 > buffer.capacity()) {
+			compact(4 + length);
+		}
+		return position;
+	}
+
+	/**
+	 * Writes the record header and the zero length after it, then its length, which makes the record visible to
+	 * recovery. The zero keeps recovery from reading the remains of a longer record torn by a crash at this offset
+	 * as the next record.
+	 */
+	private void commit(int offset, int length, byte type, int packetId) {
+		buffer.put(offset + 4, type);
+		buffer.putShort(offset + 5, (short) packetId);
+		buffer.putInt(offset + 4 + length, 0);
+		buffer.putInt(offset, length);
+		position = offset + 4 + length;
+		live.remove(packetId);
+		if (type != TYPE_REMOVE) {
+			live.put(packetId, offset);
+		}
+	}
+
+	private void recover() {
+		int offset = 0;
+		int capacity = buffer.capacity();
+		while (offset + 4 <= capacity) {
+			int length = buffer.getInt(offset);
+			if (length < RECORD_HEADER || offset + 4 + length > capacity) {
+				break;
+			}
+			byte type = buffer.get(offset + 4);
+			int packetId = buffer.getShort(offset + 5) & 0xffff;
+			if (type == TYPE_PUBLISH || type == TYPE_PUBREL) {
+				live.remove(packetId);
+				live.put(packetId, offset);
+			} else if (type == TYPE_REMOVE) {
+				live.remove(packetId);
+			} else {
+				break;
+			}
+			offset += 4 + length;
+		}
+		if (offset + 4 <= capacity) {
+			// a torn record may have left a length here that would outlive the next, shorter record
+			buffer.putInt(offset, 0);
+		}
+		position = offset;
+		synced = offset;
+	}
+
+	private MqttStoredMessage read(int packetId, int offset) {
+		if (buffer.get(offset + 4) == TYPE_PUBREL) {
+			return new MqttStoredMessage(packetId, null, MqttQoS.EXACTLY_ONCE, false, null, true);
+		}
+		int index = offset + 4 + RECORD_HEADER;
+		MqttQoS qos = MqttQoS.valueOf(buffer.get(index));
+		boolean retain = buffer.get(index + 1) != 0;
+		byte[] topic = new byte[buffer.getShort(index + 2) & 0xffff];
+		buffer.get(index + 4, topic);
+		index += 4 + topic.length;
+		byte[] payload = new byte[buffer.getInt(index)];
+		buffer.get(index + 4, payload);
+		return new MqttStoredMessage(packetId, new String(topic, StandardCharsets.UTF_8), qos, retain, payload, false);
+	}
+
+	/**
+	 * Copies the live records into a fresh file that atomically replaces the journal, growing it if the live
+	 * records and {@code needed} bytes would fill more than half of it.
+	 */
+	private void compact(int needed) {
+		long liveBytes = 0;
+		for (int offset : live.values()) {
+			liveBytes += 4 + buffer.getInt(offset);
+		}
+		long capacity = buffer.capacity();
+		while ((liveBytes + needed + 4) * 2 > capacity) {
+			capacity *= 2;
+		}
+		if (capacity > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Session journal " + path + " is full");
+		}
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			Files.deleteIfExists(tmp);
+			MappedByteBuffer target = map(tmp, (int) capacity);
+			int written = 0;
+			for (Map.Entry<Integer, Integer> entry : live.entrySet()) {
+				int offset = entry.getValue();
+				int size = 4 + buffer.getInt(offset);
+				target.put(written, buffer, offset, size);
+				entry.setValue(written);
+				written += size;
+			}
+			target.force();
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			buffer = target;
+			position = written;
+			synced = written;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to compact session journal " + path, e);
+		}
+	}
+
+	private static FileChannel lock(Path path) throws IOException {
+		Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+		FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock fileLock;
+		try {
+			fileLock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			fileLock = null;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		if (fileLock == null) {
+			channel.close();
+			throw new IOException("Session journal " + path + " is in use by another client");
+		}
+		return channel;
+	}
+
+	private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+	}
+}
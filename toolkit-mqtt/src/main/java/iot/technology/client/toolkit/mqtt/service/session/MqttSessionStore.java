@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import iot.technology.client.toolkit.mqtt.service.domain.MqttStoredMessage;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Keeps the outbound QoS 1/2 state of a persistent session ({@code cleanSession=false}) so it can be replayed
+ * after a reconnect or a restart. Calls come from event loops and the retransmission timer concurrently.
+ *
+ * @author mushuwei
+ */
+public interface MqttSessionStore extends Closeable {
+
+	/**
+	 * Records a PUBLISH that is about to be sent. The payload's reader index is left untouched.
+	 */
+	void storePublish(int packetId, String topic, MqttQoS qos, boolean retain, ByteBuf payload);
+
+	/**
+	 * Records that a QoS 2 PUBLISH was received by the broker and only its PUBREL is outstanding.
+	 */
+	void storePubrel(int packetId);
+
+	/**
+	 * Forgets the packet once it is acknowledged or given up on.
+	 */
+	void remove(int packetId);
+
+	/**
+	 * @return the outstanding messages in the order they were stored
+	 */
+	List<MqttStoredMessage> load();
+
+	void clear();
+
+	@Override
+	void close();
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.template;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A payload with placeholders, compiled once into literal byte chunks and typed generators, e.g.
+ * <pre>{"id":"{{deviceId}}","seq":{{seq}},"t":{{now}},"temp":{{gauss 20 2}}}</pre>
+ * Rendering writes straight into a {@link ByteBuf}, no Strings are built per message.
+ * <p>
+ * Placeholders, arguments separated by spaces, [optional]:
+ * <ul>
+ * <li>{@code deviceId}, {@code index}: the device of the {@link MqttTemplateContext}</li>
+ * <li>{@code seq [start]}: the message sequence of the device</li>
+ * <li>{@code now [ms|s]}: the wall clock time since the epoch</li>
+ * <li>{@code int min max}: a random integer, both ends included</li>
+ * <li>{@code uniform min max [decimals]}, {@code gauss mean stddev [decimals]}: random numbers, 2 decimals by default</li>
+ * <li>{@code choice a b ...}: one of the words, written as is</li>
+ * <li>{@code csv file column}: the values of a CSV column, by header name or index, in turn</li>
+ * </ul>
+ * A compiled template is immutable and can be shared by all devices.
+ *
+ * @author mushuwei
+ */
+public final class MqttPayloadTemplate {
+
+	private static final String OPEN = "{{";
+	private static final String CLOSE = "}}";
+
+	private final String source;
+	private final MqttTemplatePart[] parts;
+	private final int sizeHint;
+
+	private MqttPayloadTemplate(String source, MqttTemplatePart[] parts) {
+		this.source = source;
+		this.parts = parts;
+		this.sizeHint = Arrays.stream(parts).mapToInt(MqttTemplatePart::sizeHint).sum();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a placeholder is not closed, unknown or has invalid arguments
+	 */
+	public static MqttPayloadTemplate compile(String template) {
+		List<MqttTemplatePart> parts = new ArrayList<>();
+		int position = 0;
+		while (position < template.length()) {
+			int open = template.indexOf(OPEN, position);
+			if (open < 0) {
+				open = template.length();
+			}
+			if (open > position) {
+				parts.add(MqttTemplateGenerators.literal(template.substring(position, open).getBytes(StandardCharsets.UTF_8)));
+			}
+			if (open == template.length()) {
+				break;
+			}
+			int close = template.indexOf(CLOSE, open + OPEN.length());
+			if (close < 0) {
+				throw new IllegalArgumentException("Placeholder at " + open + " is not closed with " + CLOSE);
+			}
+			String[] tokens = template.substring(open + OPEN.length(), close).trim().split("\\s+");
+			if (tokens[0].isEmpty()) {
+				throw new IllegalArgumentException("Empty placeholder at " + open);
+			}
+			try {
+				parts.add(MqttTemplateGenerators.create(tokens[0], Arrays.asList(tokens).subList(1, tokens.length)));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Placeholder at " + open + ": " + e.getMessage(), e);
+			}
+			position = close + CLOSE.length();
+		}
+		return new MqttPayloadTemplate(template, parts.toArray(new MqttTemplatePart[0]));
+	}
+
+	/**
+	 * Renders the next message of the device into a new buffer owned by the caller.
+	 */
+	public ByteBuf render(ByteBufAllocator allocator, MqttTemplateContext context) {
+		ByteBuf out = allocator.buffer(sizeHint);
+		try {
+			render(out, context);
+			return out;
+		} catch (RuntimeException e) {
+			out.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the next message of the device to {@code out} and advances the device's sequence.
+	 */
+	public void render(ByteBuf out, MqttTemplateContext context) {
+		for (MqttTemplatePart part : parts) {
+			part.write(out, context);
+		}
+		context.next();
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the usual size of a rendered message
+	 */
+	public int sizeHint() {
+		return sizeHint;
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.template;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-device state of a {@link MqttPayloadTemplate}: the device id, its index and the message sequence.
+ * Not thread safe, each simulated device renders with its own context.
+ *
+ * @author mushuwei
+ */
+public final class MqttTemplateContext {
+
+	private final byte[] deviceId;
+	private final int index;
+	private long sequence;
+
+	public MqttTemplateContext(String deviceId, int index) {
+		this.deviceId = deviceId.getBytes(StandardCharsets.UTF_8);
+		this.index = index;
+	}
+
+	byte[] deviceIdBytes() {
+		return deviceId;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the sequence number of the next rendered message, starting at 0
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	void next() {
+		sequence++;
+	}
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.template;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The generators a template placeholder can name, and the number formatting they share.
+ * Numbers are written digit by digit into the output buffer, nothing is formatted through a String.
+ *
+ * @author mushuwei
+ */
+final class MqttTemplateGenerators {
+
+	private static final int DEFAULT_DECIMALS = 2;
+	private static final int MAX_DECIMALS = 9;
+	private static final byte[] LONG_MIN_DIGITS = "9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+	private static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private MqttTemplateGenerators() {
+	}
+
+	static MqttTemplatePart literal(byte[] bytes) {
+		return new Literal(bytes);
+	}
+
+	/**
+	 * @throws IllegalArgumentException for an unknown generator or invalid arguments
+	 */
+	static MqttTemplatePart create(String name, List<String> args) {
+		switch (name) {
+			case "deviceId":
+				arguments(name, args, 0, 0);
+				return new DeviceId();
+			case "index":
+				arguments(name, args, 0, 0);
+				return new Index();
+			case "seq":
+				arguments(name, args, 0, 1);
+				return new Sequence(args.isEmpty() ? 0 : parseLong(name, args.get(0)));
+			case "now":
+				arguments(name, args, 0, 1);
+				if (!args.isEmpty() && !args.get(0).equals("ms") && !args.get(0).equals("s")) {
+					throw new IllegalArgumentException("now takes the unit ms or s, not " + args.get(0));
+				}
+				return new Now(!args.isEmpty() && args.get(0).equals("s"));
+			case "int":
+				arguments(name, args, 2, 2);
+				long min = parseLong(name, args.get(0));
+				long max = parseLong(name, args.get(1));
+				if (min > max || max == Long.MAX_VALUE) {
+					throw new IllegalArgumentException("int needs min <= max < " + Long.MAX_VALUE);
+				}
+				return new RandomInt(min, max);
+			case "uniform":
+				arguments(name, args, 2, 3);
+				double low = parseDouble(name, args.get(0));
+				double high = parseDouble(name, args.get(1));
+				if (low > high) {
+					throw new IllegalArgumentException("uniform needs min <= max");
+				}
+				return new Uniform(low, high, decimals(name, args, 2));
+			case "gauss":
+				arguments(name, args, 2, 3);
+				double stddev = parseDouble(name, args.get(1));
+				if (stddev < 0) {
+					throw new IllegalArgumentException("gauss needs a standard deviation >= 0");
+				}
+				return new Gauss(parseDouble(name, args.get(0)), stddev, decimals(name, args, 2));
+			case "choice":
+				arguments(name, args, 1, Integer.MAX_VALUE);
+				return new Choice(args);
+			case "csv":
+				arguments(name, args, 2, 2);
+				return Csv.load(args.get(0), args.get(1));
+			default:
+				throw new IllegalArgumentException("Unknown template generator: " + name);
+		}
+	}
+
+	private static void arguments(String name, List<String> args, int min, int max) {
+		if (args.size() < min || args.size() > max) {
+			throw new IllegalArgumentException(name + " takes " + (min == max ? String.valueOf(min) : min + " to " + max)
+					+ " arguments, got " + args.size());
+		}
+	}
+
+	private static long parseLong(String name, String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + ": " + value + " is not an integer");
+		}
+	}
+
+	private static double parseDouble(String name, String value) {
+		try {
+			double parsed = Double.parseDouble(value);
+			if (Double.isNaN(parsed) || Double.isInfinite(parsed)) {
+				throw new NumberFormatException();
+			}
+			return parsed;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + ": " + value + " is not a number");
+		}
+	}
+
+	private static int decimals(String name, List<String> args, int position) {
+		if (args.size() <= position) {
+			return DEFAULT_DECIMALS;
+		}
+		long decimals = parseLong(name, args.get(position));
+		if (decimals < 0 || decimals > MAX_DECIMALS) {
+			throw new IllegalArgumentException(name + ": decimals must be between 0 and " + MAX_DECIMALS);
+		}
+		return (int) decimals;
+	}
+
+	static void writeLong(ByteBuf out, long value) {
+		if (value < 0) {
+			out.writeByte('-');
+			if (value == Long.MIN_VALUE) {
+				out.writeBytes(LONG_MIN_DIGITS);
+				return;
+			}
+			value = -value;
+		}
+		int digits = digits(value);
+		out.ensureWritable(digits);
+		int start = out.writerIndex();
+		for (int i = start + digits - 1; i >= start; i--) {
+			out.setByte(i, '0' + (int) (value % 10));
+			value /= 10;
+		}
+		out.writerIndex(start + digits);
+	}
+
+	/**
+	 * Writes {@code value} rounded half up to {@code decimals} places, without an exponent.
+	 */
+	static void writeDecimal(ByteBuf out, double value, int decimals) {
+		long scale = POWERS_OF_TEN[decimals];
+		long scaled = Math.round(value * scale);
+		if (scaled < 0) {
+			out.writeByte('-');
+			scaled = -scaled;
+		}
+		writeLong(out, scaled / scale);
+		if (decimals == 0) {
+			return;
+		}
+		out.writeByte('.');
+		long fraction = scaled % scale;
+		for (int i = digits(fraction); i < decimals; i++) {
+			out.writeByte('0');
+		}
+		writeLong(out, fraction);
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+			digits++;
+		}
+		return digits;
+	}
+
+	private static final class Literal implements MqttTemplatePart {
+
+		private final byte[] bytes;
+
+		Literal(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			out.writeBytes(bytes);
+		}
+
+		@Override
+		public int sizeHint() {
+			return bytes.length;
+		}
+	}
+
+	private static final class DeviceId implements MqttTemplatePart {
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			out.writeBytes(context.deviceIdBytes());
+		}
+
+		@Override
+		public int sizeHint() {
+			return 32;
+		}
+	}
+
+	private static final class Index implements MqttTemplatePart {
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			writeLong(out, context.getIndex());
+		}
+
+		@Override
+		public int sizeHint() {
+			return 10;
+		}
+	}
+
+	private static final class Sequence implements MqttTemplatePart {
+
+		private final long start;
+
+		Sequence(long start) {
+			this.start = start;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			writeLong(out, start + context.getSequence());
+		}
+
+		@Override
+		public int sizeHint() {
+			return 20;
+		}
+	}
+
+	private static final class Now implements MqttTemplatePart {
+
+		private final boolean seconds;
+
+		Now(boolean seconds) {
+			this.seconds = seconds;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			long millis = System.currentTimeMillis();
+			writeLong(out, seconds ? millis / 1000 : millis);
+		}
+
+		@Override
+		public int sizeHint() {
+			return 13;
+		}
+	}
+
+	private static final class RandomInt implements MqttTemplatePart {
+
+		private final long min;
+		private final long max;
+
+		RandomInt(long min, long max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			writeLong(out, ThreadLocalRandom.current().nextLong(min, max + 1));
+		}
+
+		@Override
+		public int sizeHint() {
+			return 20;
+		}
+	}
+
+	private static final class Uniform implements MqttTemplatePart {
+
+		private final double min;
+		private final double max;
+		private final int decimals;
+
+		Uniform(double min, double max, int decimals) {
+			this.min = min;
+			this.max = max;
+			this.decimals = decimals;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			double value = min == max ? min : ThreadLocalRandom.current().nextDouble(min, max);
+			writeDecimal(out, value, decimals);
+		}
+
+		@Override
+		public int sizeHint() {
+			return 12 + decimals;
+		}
+	}
+
+	private static final class Gauss implements MqttTemplatePart {
+
+		private final double mean;
+		private final double stddev;
+		private final int decimals;
+
+		Gauss(double mean, double stddev, int decimals) {
+			this.mean = mean;
+			this.stddev = stddev;
+			this.decimals = decimals;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			writeDecimal(out, mean + stddev * ThreadLocalRandom.current().nextGaussian(), decimals);
+		}
+
+		@Override
+		public int sizeHint() {
+			return 12 + decimals;
+		}
+	}
+
+	private static final class Choice implements MqttTemplatePart {
+
+		private final byte[][] values;
+		private final int sizeHint;
+
+		Choice(List<String> args) {
+			this.values = new byte[args.size()][];
+			int longest = 0;
+			for (int i = 0; i < values.length; i++) {
+				values[i] = args.get(i).getBytes(StandardCharsets.UTF_8);
+				longest = Math.max(longest, values[i].length);
+			}
+			this.sizeHint = longest;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			out.writeBytes(values[ThreadLocalRandom.current().nextInt(values.length)]);
+		}
+
+		@Override
+		public int sizeHint() {
+			return sizeHint;
+		}
+	}
+
+	/**
+	 * One column of a CSV file, loaded once. The first line is the header; device {@code i} renders row
+	 * {@code (i + sequence) % rows}, so devices walk the file from different offsets.
+	 */
+	private static final class Csv implements MqttTemplatePart {
+
+		private final byte[][] values;
+		private final int sizeHint;
+
+		private Csv(byte[][] values, int sizeHint) {
+			this.values = values;
+			this.sizeHint = sizeHint;
+		}
+
+		static Csv load(String file, String column) {
+			List<String> lines;
+			try {
+				lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Cannot read CSV file " + file + ": " + e.getMessage(), e);
+			}
+			lines.removeIf(String::isEmpty);
+			if (lines.size() < 2) {
+				throw new IllegalArgumentException("CSV file " + file + " needs a header line and at least one row");
+			}
+			List<String> header = split(lines.get(0));
+			int columnIndex = header.indexOf(column);
+			if (columnIndex < 0) {
+				try {
+					columnIndex = Integer.parseInt(column);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("CSV file " + file + " has no column " + column);
+				}
+			}
+			if (columnIndex < 0 || columnIndex >= header.size()) {
+				throw new IllegalArgumentException("CSV file " + file + " has no column " + column);
+			}
+			byte[][] values = new byte[lines.size() - 1][];
+			int longest = 0;
+			for (int i = 1; i < lines.size(); i++) {
+				List<String> fields = split(lines.get(i));
+				String value = columnIndex < fields.size() ? fields.get(columnIndex) : "";
+				values[i - 1] = value.getBytes(StandardCharsets.UTF_8);
+				longest = Math.max(longest, values[i - 1].length);
+			}
+			return new Csv(values, longest);
+		}
+
+		/**
+		 * Splits one line on commas; fields may be quoted with {@code "}, a doubled quote inside stands for one.
+		 */
+		private static List<String> split(String line) {
+			List<String> fields = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (quoted) {
+					if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else if (c == '"') {
+						quoted = false;
+					} else {
+						field.append(c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					fields.add(field.toString().trim());
+					field.setLength(0);
+				} else {
+					field.append(c);
+				}
+			}
+			fields.add(field.toString().trim());
+			return fields;
+		}
+
+		@Override
+		public void write(ByteBuf out, MqttTemplateContext context) {
+			out.writeBytes(values[(int) ((context.getIndex() + context.getSequence()) % values.length)]);
+		}
+
+		@Override
+		public int sizeHint() {
+			return sizeHint;
+		}
+	}
+}
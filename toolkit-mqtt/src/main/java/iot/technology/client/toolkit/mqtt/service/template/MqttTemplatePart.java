@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2019-2023 The Toolkit Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package iot.technology.client.toolkit.mqtt.service.template;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * One compiled piece of a {@link MqttPayloadTemplate}, a literal or a generator.
+ *
+ * @author mushuwei
+ */
+interface MqttTemplatePart {
+
+	void write(ByteBuf out, MqttTemplateContext context);
+
+	/**
+	 * @return the usual upper bound of the written bytes, used to size the output buffer
+	 */
+	int sizeHint();
+}